@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Generates manager core jars to run the benchmarks against. The entries contain words picked at random from a
+ * small vocabulary, so they compress roughly as well as class files do.
+ */
+final class CoreJars {
+    private static final String[] WORDS = {
+            "org", "jboss", "eap", "microprofile", "config", "metrics", "health", "jwt", "openapi", "opentracing",
+            "fault", "tolerance", "rest", "client", "Ljava/lang/String;", "Ljava/lang/Object;", "<init>", "()V",
+            "Code", "LineNumberTable", "StackMapTable", "SourceFile", "invokevirtual", "getstatic"
+    };
+
+    private CoreJars() {
+    }
+
+    static Path create(int entries, int entrySize) throws IOException {
+        Path jar = Files.createTempFile("benchmark-core", ".jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        Random random = new Random(entries * 31L + entrySize);
+        try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(jar)), manifest)) {
+            for (int i = 0; i < entries; i++) {
+                out.putNextEntry(new ZipEntry("org/jboss/benchmark/p" + (i % 50) + "/Entry" + i + ".class"));
+                out.write(content(random, entrySize));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static byte[] content(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 32);
+        while (sb.length() < size) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append((char) ('a' + random.nextInt(26)));
+        }
+        sb.setLength(size);
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static void delete(Path path) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
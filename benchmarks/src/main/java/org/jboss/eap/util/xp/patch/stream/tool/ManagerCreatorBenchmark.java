@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the phases of {@link ManagerCreator#createManager()} which touch every entry of the core. The
+ * {@link Counters} report the bytes and entries processed per second next to the operations per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ManagerCreatorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int entries;
+
+    @Param({"1024", "65536"})
+    public int entrySize;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path core;
+    private Path outputDir;
+    private Path unzipped;
+    private ManagerCreator creator;
+    private long coreBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        core = CoreJars.create(entries, entrySize);
+        coreBytes = (long) entries * entrySize;
+        outputDir = Files.createTempDirectory("benchmark-output");
+        creator = new ManagerCreator(new ManagerSettings.Builder()
+                .managerCore(core, false)
+                .outputDir(outputDir)
+                .threads(threads)
+                .staging(StagingArea.disk(null))
+                .compression(CompressionPolicy.defaults())
+                .build());
+        unzipped = creator.unzipManagerCore();
+        creator.useUnzippedCore(unzipped);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CoreJars.delete(unzipped);
+        CoreJars.delete(outputDir);
+        Files.deleteIfExists(core);
+    }
+
+    @Benchmark
+    public void unzipManagerCore(Counters counters) throws Exception {
+        Path dir = creator.unzipManagerCore();
+        try {
+            counters.count(coreBytes, entries);
+        } finally {
+            CoreJars.delete(dir);
+        }
+    }
+
+    @Benchmark
+    public void addManifestLayers(Counters counters) throws Exception {
+        creator.addManifestLayers();
+        counters.count(0, 1);
+    }
+
+    @Benchmark
+    public void zipManager(Counters counters) throws Exception {
+        creator.zipManager();
+        counters.count(coreBytes, entries);
+    }
+
+    /**
+     * Uncompressed bytes and entries handled by the benchmark, reported by JMH as rates per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+        public long entries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            entries = 0;
+        }
+
+        void count(long bytes, long entries) {
+            this.bytes += bytes;
+            this.entries += entries;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the time from launching the tool jar in a new JVM to its first output, with and without the class
+ * data sharing archive built by the {@code cds} profile of the tool. Without it the JVM still uses the default archive of the JDK,
+ * so the difference is what the archive of the tool saves. The manager is built with {@code --report}, which
+ * is printed once the manager has been built.
+ * <p>
+ * The jar and archive are looked up in the directory given by the {@code manager.tool.dir} system property,
+ * {@code ../target} by default, and are launched with the JVM running the benchmark, which has to be the one
+ * which created the archive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+public class StartupBenchmark {
+    private static final String JAR_PREFIX = "jboss-eap-xp-patch-stream-manager-tool-";
+
+    @Param({"false", "true"})
+    public boolean cds;
+
+    @Param({"help", "create-config", "manager"})
+    public String command;
+
+    private List<String> commandLine;
+    private Path core;
+    private Path config;
+    private Path outputDir;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path jar = findJar(Paths.get(System.getProperty("manager.tool.dir", "../target")).toAbsolutePath().normalize());
+        String name = jar.getFileName().toString();
+        Path archive = jar.resolveSibling(name.substring(0, name.length() - ".jar".length()) + ".jsa");
+
+        commandLine = new ArrayList<>();
+        commandLine.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (cds) {
+            if (!Files.exists(archive)) {
+                throw new IllegalStateException("No class data sharing archive " + archive + ", build the tool with -Pcds");
+            }
+            // Fails rather than silently starting without the archive if this JVM did not create it
+            commandLine.add("-XX:SharedArchiveFile=" + archive);
+            commandLine.add("-Xshare:on");
+        }
+        commandLine.add("-cp");
+        commandLine.add(jar.toString());
+        commandLine.add(ManagerCreatorMain.class.getName());
+
+        outputDir = Files.createTempDirectory("benchmark-startup");
+        switch (command) {
+            case "help":
+                commandLine.add("--help");
+                break;
+            case "create-config":
+                commandLine.add(ManagerCreatorMain.CREATE_CONFIG);
+                commandLine.add("2.0.0.GA,2.0.1.GA");
+                commandLine.add(outputDir.toString());
+                break;
+            case "manager":
+                core = CoreJars.create(100, 1024);
+                config = Files.createTempFile("benchmark-startup", ".xml");
+                Files.write(config, "<server xmlns=\"urn:jboss:domain:10.0\"><profile/></server>".getBytes(StandardCharsets.UTF_8));
+                commandLine.add(ManagerCreatorMain.MANAGER_CORE + "=" + core);
+                commandLine.add(ManagerCreatorMain.ADDED_CONFIGS + "=" + config);
+                commandLine.add(ManagerCreatorMain.OUTPUT_DIR + "=" + outputDir);
+                commandLine.add(ManagerCreatorMain.REPORT);
+                break;
+            default:
+                throw new IllegalArgumentException(command);
+        }
+    }
+
+    private static Path findJar(Path dir) throws IOException {
+        try (DirectoryStream<Path> jars = Files.newDirectoryStream(dir, JAR_PREFIX + "*.jar")) {
+            for (Path jar : jars) {
+                return jar;
+            }
+        }
+        throw new IllegalStateException("No " + JAR_PREFIX + "*.jar in " + dir + ", build the tool or set -Dmanager.tool.dir");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CoreJars.delete(outputDir);
+        CoreJars.delete(core);
+        CoreJars.delete(config);
+    }
+
+    @Benchmark
+    public int firstOutput() throws IOException {
+        process = new ProcessBuilder(commandLine)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        InputStream out = process.getInputStream();
+        return out.read();
+    }
+
+    /**
+     * Lets the tool finish outside of the measured time, so that the next launch does not compete with it.
+     */
+    @TearDown(Level.Invocation)
+    public void awaitExit() throws IOException, InterruptedException {
+        InputStream out = process.getInputStream();
+        while (out.read() >= 0) {
+            // Drain the rest of the output, so that the tool does not block on a full pipe
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("The tool exited with " + process.exitValue() + ": " + commandLine);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.jboss.eap.util.xp.patch.stream.tool.ManagerToolException;
+import org.jboss.eap.util.xp.patch.stream.tool.PatchConfigBuilder;
+
+/**
+ * Creates the patch configs of JBoss EAP XP versions in the JVM of the Maven build, like {@code --create-config}.
+ */
+@Mojo(name = "create-config", defaultPhase = LifecyclePhase.GENERATE_RESOURCES, threadSafe = true)
+public class CreateConfigMojo extends AbstractMojo {
+    /**
+     * Comma-separated versions and ranges of versions such as {@code 2.0.0.GA..2.0.15.GA}.
+     */
+    @Parameter(property = "manager.versions", required = true)
+    private String versions;
+
+    @Parameter(property = "manager.configOutputDirectory", defaultValue = "${project.build.directory}/patch-configs")
+    private File outputDirectory;
+
+    @Parameter(property = "manager.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping the patch configs");
+            return;
+        }
+        List<Path> configs;
+        try {
+            configs = new PatchConfigBuilder().versions(versions).outputDir(outputDirectory.toPath()).build();
+        } catch (ManagerToolException e) {
+            throw new MojoFailureException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not create the patch configs: " + e.getLocalizedMessage(), e);
+        }
+        getLog().info("Created " + configs.size() + " patch configs in " + outputDirectory);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.jboss.eap.util.xp.patch.stream.tool.ManagerBuilder;
+import org.jboss.eap.util.xp.patch.stream.tool.ManagerResult;
+import org.jboss.eap.util.xp.patch.stream.tool.ManagerToolException;
+
+/**
+ * Builds a manager in the JVM of the Maven build, with the same settings as the options of the command line
+ * tool. Sizes are in megabytes, like on the command line, and relative paths are resolved against the
+ * directory of the project.
+ */
+@Mojo(name = "create-manager", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
+public class CreateManagerMojo extends AbstractMojo {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Parameter(defaultValue = "${project.basedir}", readonly = true)
+    private File basedir;
+
+    /**
+     * The path or {@code http(s)} URL of the mp-expansion-pack-core jar.
+     */
+    @Parameter(property = "manager.core", required = true)
+    private String managerCore;
+
+    @Parameter(property = "manager.coreSha256")
+    private String managerCoreSha256;
+
+    @Parameter(property = "manager.pipelined", defaultValue = "false")
+    private boolean pipelined;
+
+    /**
+     * Config files, directories of configs or globs to add to the manager.
+     */
+    @Parameter
+    private List<String> addedConfigs;
+
+    @Parameter(property = "manager.outputDirectory", defaultValue = "${project.build.directory}/manager")
+    private File outputDirectory;
+
+    @Parameter(property = "manager.streaming", defaultValue = "false")
+    private boolean streaming;
+
+    @Parameter(property = "manager.staging")
+    private String staging;
+
+    @Parameter(property = "manager.stagingDirectory")
+    private File stagingDirectory;
+
+    @Parameter(property = "manager.stagingMemoryThreshold")
+    private Long stagingMemoryThreshold;
+
+    @Parameter(property = "manager.threads")
+    private Integer threads;
+
+    @Parameter(property = "manager.compression")
+    private String compression;
+
+    @Parameter(property = "manager.minCompressionGain")
+    private Integer minCompressionGain;
+
+    @Parameter(property = "manager.deltaBaseline")
+    private File deltaBaseline;
+
+    @Parameter(property = "manager.maxMemory")
+    private Long maxMemory;
+
+    @Parameter(property = "manager.downloadConnections")
+    private Integer downloadConnections;
+
+    /**
+     * A properties file describing several managers to build from one read of the core, instead of the
+     * {@code addedConfigs} and {@code outputDirectory}.
+     */
+    @Parameter(property = "manager.batch")
+    private File batch;
+
+    @Parameter(property = "manager.artifactStore")
+    private File artifactStore;
+
+    @Parameter(property = "manager.artifactStoreMaxSize")
+    private Long artifactStoreMaxSize;
+
+    @Parameter(property = "manager.cacheDirectory")
+    private File cacheDirectory;
+
+    @Parameter(property = "manager.cacheMaxSize")
+    private Long cacheMaxSize;
+
+    @Parameter(property = "manager.report", defaultValue = "false")
+    private boolean report;
+
+    @Parameter(property = "manager.reportFile")
+    private File reportFile;
+
+    @Parameter(property = "manager.jfr")
+    private File jfr;
+
+    @Parameter(property = "manager.reproducible", defaultValue = "false")
+    private boolean reproducible;
+
+    /**
+     * The timestamp of the entries of reproducible managers, in seconds since the epoch or in ISO-8601. Without
+     * one, {@code SOURCE_DATE_EPOCH} is used as on the command line.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
+    @Parameter(property = "manager.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping the manager");
+            return;
+        }
+        ManagerBuilder builder = new ManagerBuilder()
+                .managerCore(isUrl(managerCore) ? managerCore : resolve(managerCore).toString())
+                .managerCoreSha256(managerCoreSha256)
+                .pipelined(pipelined)
+                .streaming(streaming)
+                .report(report)
+                .reproducible(reproducible);
+        if (addedConfigs != null) {
+            for (String sources : addedConfigs) {
+                for (String source : sources.split(",")) {
+                    if (!source.trim().isEmpty()) {
+                        builder.addedConfigs(resolve(source.trim()).toString());
+                    }
+                }
+            }
+        }
+        if (batch == null) {
+            builder.outputDir(outputDirectory.toPath());
+        } else {
+            builder.batch(batch.toPath());
+        }
+        if (staging != null) {
+            builder.staging(staging);
+        }
+        if (stagingDirectory != null) {
+            builder.stagingDir(stagingDirectory.toPath());
+        }
+        if (stagingMemoryThreshold != null) {
+            builder.stagingMemoryThreshold(stagingMemoryThreshold * MEGABYTE);
+        }
+        if (threads != null) {
+            builder.threads(threads);
+        }
+        if (compression != null) {
+            builder.compression(compression);
+        }
+        if (minCompressionGain != null) {
+            builder.minCompressionGain(minCompressionGain);
+        }
+        if (deltaBaseline != null) {
+            builder.deltaBaseline(deltaBaseline.toPath());
+        }
+        if (maxMemory != null) {
+            builder.maxMemory(maxMemory * MEGABYTE);
+        }
+        if (downloadConnections != null) {
+            builder.downloadConnections(downloadConnections);
+        }
+        if (artifactStore != null) {
+            builder.artifactStore(artifactStore.toPath());
+        }
+        if (artifactStoreMaxSize != null) {
+            builder.artifactStoreMaxSize(artifactStoreMaxSize * MEGABYTE);
+        }
+        if (cacheDirectory != null) {
+            builder.cacheDir(cacheDirectory.toPath());
+        }
+        if (cacheMaxSize != null) {
+            builder.cacheMaxSize(cacheMaxSize * MEGABYTE);
+        }
+        if (reportFile != null) {
+            builder.reportFile(reportFile.toPath());
+        }
+        if (jfr != null) {
+            builder.jfr(jfr.toPath());
+        }
+        if (reproducible) {
+            Long epochSeconds = parseOutputTimestamp(outputTimestamp);
+            if (epochSeconds != null) {
+                builder.sourceDateEpoch(epochSeconds);
+            }
+        }
+
+        ManagerResult result;
+        try {
+            result = builder.build();
+        } catch (ManagerToolException e) {
+            throw new MojoFailureException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not build the manager: " + e.getLocalizedMessage(), e);
+        }
+        for (Path manager : result.getManagers()) {
+            getLog().info("Built " + manager + " with SHA-256 " + result.getSha256(manager));
+        }
+        if (result.getDelta() != null) {
+            getLog().info("Wrote the delta against " + deltaBaseline + " to " + result.getDelta());
+        }
+    }
+
+    private Path resolve(String path) {
+        File file = new File(path);
+        return (file.isAbsolute() ? file : new File(basedir, path)).toPath();
+    }
+
+    private static boolean isUrl(String location) {
+        return location.startsWith("http://") || location.startsWith("https://");
+    }
+
+    /**
+     * Reads {@code project.build.outputTimestamp} the way the Maven archivers do. A single character, usually used
+     * to unset an inherited value, means no timestamp.
+     */
+    private static Long parseOutputTimestamp(String timestamp) throws MojoFailureException {
+        if (timestamp == null || timestamp.length() < 2) {
+            return null;
+        }
+        try {
+            if (timestamp.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(timestamp);
+            }
+            return OffsetDateTime.parse(timestamp).toEpochSecond();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new MojoFailureException(timestamp + " is not a number of seconds since the epoch or an ISO-8601 timestamp", e);
+        }
+    }
+}
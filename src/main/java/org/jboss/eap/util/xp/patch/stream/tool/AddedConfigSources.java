@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the comma-separated sources of the added configs. A source is either a file, a directory whose
+ * {@code .xml} files are all added, or a glob such as {@code configs/**&#47;standalone-*.xml}. Directories are
+ * walked in parallel. Symbolic links are followed, except those leading back to a directory being walked.
+ * <p>
+ * The configs are added under their file name, so files with the same name are compared, by size and then by
+ * a hash computed concurrently. Byte-identical files are added only once, from the first source listing them in
+ * the order of the sources and then of their paths, so that the manager does not grow with copies of the same
+ * config. Different files with the same name are rejected, since they would be installed as the same config.
+ */
+final class AddedConfigSources {
+    private static final String DIRECTORY_SUFFIX = ".xml";
+    private static final String GLOB_CHARS = "*?[{";
+
+    private AddedConfigSources() {
+    }
+
+    /**
+     * Resolves the sources.
+     *
+     * @param baseDir the directory against which relative sources are resolved, or {@code null} for the working directory
+     * @throws ManagerToolException if a source matches no files, or two different files have the same name
+     */
+    static List<Path> resolve(Path baseDir, String sources, String arg) throws IOException, ManagerToolException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Path> files = new ArrayList<>();
+            for (String source : sources.split(",")) {
+                source = source.trim();
+                if (source.isEmpty()) {
+                    continue;
+                }
+                files.addAll(find(baseDir, source, arg, pool));
+            }
+            return deduplicate(files, arg, pool);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<Path> find(Path baseDir, String source, String arg, ForkJoinPool pool)
+            throws IOException, InterruptedException, ManagerToolException {
+        int glob = indexOfGlob(source);
+        if (glob < 0) {
+            Path path = resolve(baseDir, source);
+            if (!Files.exists(path)) {
+                throw new ManagerToolException("File at " + path + " specified by argument " + arg + " does not exist");
+            }
+            if (Files.isDirectory(path)) {
+                List<Path> files = walk(path, file -> file.getFileName().toString().endsWith(DIRECTORY_SUFFIX), pool);
+                if (files.isEmpty()) {
+                    throw new ManagerToolException("Directory at " + path + " specified by argument " + arg + " contains no " + DIRECTORY_SUFFIX + " files");
+                }
+                return files;
+            }
+            if (!Files.isRegularFile(path)) {
+                throw new ManagerToolException("File at " + path + " specified by argument " + arg + " is not a file");
+            }
+            return Collections.singletonList(path);
+        }
+
+        // Walk from the deepest directory without wildcards, and match the rest of the pattern below it
+        int separator = Math.max(source.lastIndexOf('/', glob), source.lastIndexOf('\\', glob));
+        Path dir = resolve(baseDir, separator < 0 ? "." : source.substring(0, separator + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + source.substring(separator + 1));
+        List<Path> files = Files.isDirectory(dir) ? walk(dir, file -> matcher.matches(dir.relativize(file)), pool) : Collections.emptyList();
+        if (files.isEmpty()) {
+            throw new ManagerToolException("No files match " + source + " specified by argument " + arg);
+        }
+        return files;
+    }
+
+    private static int indexOfGlob(String source) {
+        for (int i = 0; i < source.length(); i++) {
+            if (GLOB_CHARS.indexOf(source.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Path resolve(Path baseDir, String source) {
+        Path path = Paths.get(source);
+        return baseDir == null ? path : baseDir.resolve(path);
+    }
+
+    private static List<Path> walk(Path dir, PathMatcher filter, ForkJoinPool pool) throws IOException {
+        try {
+            List<Path> files = pool.invoke(new Walk(dir, filter, Collections.singleton(dir.toRealPath())));
+            // Sorted, so that the files are added in the same order whichever thread found them
+            Collections.sort(files);
+            return files;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<Path> deduplicate(List<Path> files, String arg, ForkJoinPool pool)
+            throws IOException, InterruptedException, ManagerToolException {
+        Map<String, List<Path>> byName = new LinkedHashMap<>();
+        for (Path file : files) {
+            List<Path> sameName = byName.computeIfAbsent(file.getFileName().toString(), name -> new ArrayList<>());
+            // A file found by several sources is only added once
+            if (!sameName.contains(file.toAbsolutePath().normalize())) {
+                sameName.add(file.toAbsolutePath().normalize());
+            }
+        }
+
+        List<Path> colliding = byName.values().stream()
+                .filter(sameName -> sameName.size() > 1)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        Map<Path, String> hashes;
+        try {
+            hashes = pool.submit(() -> colliding.parallelStream().collect(Collectors.toConcurrentMap(file -> file, file -> {
+                try {
+                    return Files.size(file) + ":" + Digests.sha256(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }))).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+
+        List<Path> configs = new ArrayList<>();
+        for (List<Path> sameName : byName.values()) {
+            Path first = sameName.get(0);
+            for (Path other : sameName.subList(1, sameName.size())) {
+                if (!hashes.get(first).equals(hashes.get(other))) {
+                    throw new ManagerToolException("Files at " + first + " and " + other + " specified by argument " + arg
+                            + " have the same name but different content");
+                }
+            }
+            configs.add(first);
+        }
+        return configs;
+    }
+
+    /**
+     * Lists the files of a directory tree accepted by the filter, with the subdirectories listed in parallel.
+     */
+    private static final class Walk extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final PathMatcher filter;
+        // The real paths of this directory and of those above it, to detect links which loop back
+        private final Set<Path> ancestors;
+
+        Walk(Path dir, PathMatcher filter, Set<Path> ancestors) {
+            this.dir = dir;
+            this.filter = filter;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> files = new ArrayList<>();
+            List<Walk> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    if (Files.isDirectory(path)) {
+                        Path real = path.toRealPath();
+                        if (!ancestors.contains(real)) {
+                            Set<Path> below = new HashSet<>(ancestors);
+                            below.add(real);
+                            subdirs.add(new Walk(path, filter, below));
+                        }
+                    } else if (Files.isRegularFile(path) && filter.matches(path)) {
+                        files.add(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (Walk subdir : invokeAll(subdirs)) {
+                files.addAll(subdir.join());
+            }
+            return files;
+        }
+    }
+}
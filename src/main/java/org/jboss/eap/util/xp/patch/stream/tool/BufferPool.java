@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded pool of large direct buffers, shared by the reads and writes of a build. The buffers are allocated
+ * the first time they are needed and then reused, and once all of them are in use callers wait for one to be
+ * released, so that the memory used for I/O never goes beyond the size of the pool.
+ */
+final class BufferPool {
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    // One buffer for the output, and two to stream an entry through the deflater
+    private static final int MIN_BUFFERS = 4;
+
+    private final int bufferSize;
+    private final Semaphore available;
+    private final ConcurrentLinkedDeque<ByteBuffer> free = new ConcurrentLinkedDeque<>();
+
+    BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.available = new Semaphore(maxBuffers);
+    }
+
+    /**
+     * Creates a pool of {@link #BUFFER_SIZE} buffers using at most the given amount of memory.
+     */
+    static BufferPool withMemory(long maxMemory) {
+        return new BufferPool(BUFFER_SIZE, (int) Math.max(MIN_BUFFERS, Math.min(Integer.MAX_VALUE, maxMemory / BUFFER_SIZE)));
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, waiting for one to be released if they are all in use.
+     */
+    ByteBuffer acquire() throws IOException {
+        try {
+            available.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            try {
+                buffer = ByteBuffer.allocateDirect(bufferSize);
+            } catch (OutOfMemoryError e) {
+                available.release();
+                throw e;
+            }
+        }
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer != null) {
+            buffer.clear();
+            free.addFirst(buffer);
+            available.release();
+        }
+    }
+}
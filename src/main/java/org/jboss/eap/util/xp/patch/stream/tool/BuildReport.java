@@ -0,0 +1,302 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the wall time, bytes read and written and number of entries of each phase of a build. The report is
+ * printed as a table once the build is done, and can also be written as JSON for CI to collect. Phases run more
+ * than once, for example by several threads, are added up under the same name. For the phases which compress or
+ * decompress entries the ratio of the bytes written to the bytes read is reported as well. Every phase is also
+ * recorded as a {@link ToolEvents.PhaseEvent}, whether the report was asked for or not. The entries which the
+ * {@link CompressionPolicy} stored rather than deflated are summed up after the phases.
+ */
+final class BuildReport {
+    static final String DOWNLOAD = "download";
+    static final String UNZIP = "unzip";
+    static final String VALIDATE_CONFIGS = "validate-configs";
+    static final String MANIFEST = "manifest";
+    static final String COPY_CONFIGS = "copy-configs";
+    static final String ZIP = "zip";
+    static final String STREAM = "stream";
+    static final String VERIFY = "verify";
+    static final String ARTIFACT_STORE = "artifact-store";
+    static final String DELTA = "delta";
+    static final String APPLY_DELTA = "apply-delta";
+    static final String CLEANUP = "cleanup";
+
+    private static final Set<String> COMPRESSING = new HashSet<>(Arrays.asList(UNZIP, ZIP, STREAM));
+
+    private final boolean enabled;
+    private final Path jsonFile;
+    private final long start = System.nanoTime();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private volatile boolean failed;
+    private long storedEntries;
+    private long storedBytes;
+    private long storedBytesSaved;
+    private long skippedBytes;
+    private long sampledBytes;
+    private long sampledNanos;
+    private long wastedSampleNanos;
+
+    BuildReport(boolean enabled, Path jsonFile) {
+        this.enabled = enabled || jsonFile != null;
+        this.jsonFile = jsonFile;
+    }
+
+    /**
+     * Starts timing a phase, which stops when the returned phase is closed.
+     */
+    Phase start(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Counts an entry stored rather than deflated by the {@link CompressionPolicy}.
+     *
+     * @param skippedBytes the bytes of the entry which were not deflated at all
+     * @param bytesSaved the estimated bytes saved by not deflating the entry, negative if it made the manager larger
+     */
+    synchronized void stored(long size, long skippedBytes, long bytesSaved) {
+        storedEntries++;
+        storedBytes += size;
+        this.skippedBytes += skippedBytes;
+        storedBytesSaved += bytesSaved;
+    }
+
+    /**
+     * Counts the time spent deflating a sample of an entry, from which the time saved by not deflating the stored
+     * entries is estimated.
+     *
+     * @param wasted whether the sample has to be deflated again with its entry
+     */
+    synchronized void sampled(long bytes, long nanos, boolean wasted) {
+        sampledBytes += bytes;
+        sampledNanos += nanos;
+        if (wasted) {
+            wastedSampleNanos += nanos;
+        }
+    }
+
+    private synchronized long storedNanosSaved() {
+        return (sampledBytes == 0 ? 0 : (long) ((double) sampledNanos * skippedBytes / sampledBytes)) - wastedSampleNanos;
+    }
+
+    void failed() {
+        failed = true;
+    }
+
+    /**
+     * Prints the summary and writes the JSON report, if they were asked for.
+     */
+    void finish() {
+        if (!enabled) {
+            return;
+        }
+        long wallNanos = System.nanoTime() - start;
+        List<Totals> totals = totals();
+        System.out.print(summary(totals, wallNanos));
+        if (jsonFile != null) {
+            try (Writer writer = Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8)) {
+                writer.write(json(totals, wallNanos));
+            } catch (IOException e) {
+                System.err.println("Could not write the build report to " + jsonFile + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the wall time of each phase so far in milliseconds, in the order the phases were first run.
+     */
+    synchronized Map<String, Long> phaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Phase phase : phases.values()) {
+            millis.put(phase.name, TimeUnit.NANOSECONDS.toMillis(phase.nanos));
+        }
+        return millis;
+    }
+
+    private synchronized List<Totals> totals() {
+        List<Totals> totals = new ArrayList<>();
+        for (Phase phase : phases.values()) {
+            totals.add(new Totals(phase));
+        }
+        return totals;
+    }
+
+    private synchronized void add(Phase phase) {
+        Phase existing = phases.get(phase.name);
+        if (existing == null) {
+            phases.put(phase.name, phase);
+        } else {
+            existing.nanos += phase.nanos;
+            existing.bytesRead += phase.bytesRead;
+            existing.bytesWritten += phase.bytesWritten;
+            existing.entries += phase.entries;
+        }
+    }
+
+    private String summary(List<Totals> totals, long wallNanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-16s %10s %12s %12s %8s %7s %10s%n", "Phase", "Time (ms)", "Read", "Written", "Entries", "Ratio", "MB/s"));
+        for (Totals phase : totals) {
+            sb.append(String.format(Locale.ROOT, "%-16s %10d %12d %12d %8d %7s %10s%n", phase.name, phase.millis, phase.bytesRead,
+                    phase.bytesWritten, phase.entries, phase.ratio < 0 ? "-" : String.format(Locale.ROOT, "%.3f", phase.ratio),
+                    phase.throughput < 0 ? "-" : String.format(Locale.ROOT, "%.1f", phase.throughput)));
+        }
+        sb.append(String.format(Locale.ROOT, "%-16s %10d%n", failed ? "total (failed)" : "total", TimeUnit.NANOSECONDS.toMillis(wallNanos)));
+        synchronized (this) {
+            if (storedEntries > 0) {
+                sb.append(String.format(Locale.ROOT, "Stored %d entries (%d bytes) without deflating them, saving %d ms and %d bytes%n",
+                        storedEntries, storedBytes, TimeUnit.NANOSECONDS.toMillis(storedNanosSaved()), storedBytesSaved));
+            }
+        }
+        return sb.toString();
+    }
+
+    private String json(List<Totals> totals, long wallNanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"success\": ").append(!failed).append(",\n");
+        sb.append("  \"wallTimeMillis\": ").append(TimeUnit.NANOSECONDS.toMillis(wallNanos)).append(",\n");
+        sb.append("  \"phases\": [");
+        for (int i = 0; i < totals.size(); i++) {
+            Totals phase = totals.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"name\": \"").append(phase.name).append('"');
+            sb.append(", \"timeMillis\": ").append(phase.millis);
+            sb.append(", \"bytesRead\": ").append(phase.bytesRead);
+            sb.append(", \"bytesWritten\": ").append(phase.bytesWritten);
+            sb.append(", \"entries\": ").append(phase.entries);
+            if (phase.ratio >= 0) {
+                sb.append(", \"compressionRatio\": ").append(String.format(Locale.ROOT, "%.4f", phase.ratio));
+            }
+            if (phase.throughput >= 0) {
+                sb.append(", \"megabytesPerSecond\": ").append(String.format(Locale.ROOT, "%.2f", phase.throughput));
+            }
+            sb.append('}');
+        }
+        sb.append(totals.isEmpty() ? "]" : "\n  ]");
+        synchronized (this) {
+            if (storedEntries > 0) {
+                sb.append(",\n  \"stored\": {\"entries\": ").append(storedEntries);
+                sb.append(", \"bytes\": ").append(storedBytes);
+                sb.append(", \"bytesSaved\": ").append(storedBytesSaved);
+                sb.append(", \"timeSavedMillis\": ").append(TimeUnit.NANOSECONDS.toMillis(storedNanosSaved())).append('}');
+            }
+        }
+        sb.append('\n');
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * A phase being timed. The counters are only updated by the thread running the phase, and added to the
+     * report when it is closed.
+     */
+    final class Phase implements AutoCloseable {
+        private final String name;
+        private final ToolEvents.PhaseEvent event;
+        private final long start = System.nanoTime();
+        private String target;
+        private long nanos;
+        private long bytesRead;
+        private long bytesWritten;
+        private long entries;
+
+        private Phase(String name) {
+            this.name = name;
+            this.event = ToolEvents.forPhase(name);
+            event.begin();
+        }
+
+        /**
+         * Names what the phase works on, for its flight recorder event.
+         */
+        Phase target(Object target) {
+            this.target = String.valueOf(target);
+            return this;
+        }
+
+        Phase read(long bytes) {
+            bytesRead += bytes;
+            return this;
+        }
+
+        Phase written(long bytes) {
+            bytesWritten += bytes;
+            return this;
+        }
+
+        Phase entries(long count) {
+            entries += count;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            nanos = System.nanoTime() - start;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.target = target;
+                event.bytesRead = bytesRead;
+                event.bytesWritten = bytesWritten;
+                event.entries = entries;
+                event.commit();
+            }
+            add(this);
+        }
+    }
+
+    private static final class Totals {
+        final String name;
+        final long millis;
+        final long bytesRead;
+        final long bytesWritten;
+        final long entries;
+        final double ratio;
+        final double throughput;
+
+        Totals(Phase phase) {
+            this.name = phase.name;
+            this.millis = TimeUnit.NANOSECONDS.toMillis(phase.nanos);
+            this.bytesRead = phase.bytesRead;
+            this.bytesWritten = phase.bytesWritten;
+            this.entries = phase.entries;
+            this.ratio = COMPRESSING.contains(name) && bytesRead > 0 && bytesWritten > 0 ? (double) bytesWritten / bytesRead : -1;
+            long bytes = Math.max(bytesRead, bytesWritten);
+            this.throughput = phase.nanos > 0 && bytes > 0 ? bytes / (1024.0 * 1024.0) / (phase.nanos / 1e9) : -1;
+        }
+    }
+}
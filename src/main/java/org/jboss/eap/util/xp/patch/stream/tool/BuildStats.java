@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the daemon's {@link BuildStatsMBean}. The parse phase covers argument checking and downloading
+ * the core, the build phase covers creating the manager or patch config. The build phase is further broken down
+ * into the phases timed by each build's {@link BuildReport}.
+ */
+class BuildStats implements BuildStatsMBean {
+    static final String OBJECT_NAME = "org.jboss.eap.util.xp.patch.stream.tool:type=BuildStats";
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong activeRequests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong totalParseMillis = new AtomicLong();
+    private final AtomicLong maxParseMillis = new AtomicLong();
+    private final AtomicLong totalBuildMillis = new AtomicLong();
+    private final AtomicLong maxBuildMillis = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> totalPhaseMillis = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> maxPhaseMillis = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> phaseCounts = new ConcurrentHashMap<>();
+
+    void requestStarted() {
+        requests.incrementAndGet();
+        activeRequests.incrementAndGet();
+    }
+
+    void requestFinished(boolean failed) {
+        activeRequests.decrementAndGet();
+        if (failed) {
+            failedRequests.incrementAndGet();
+        }
+    }
+
+    void requestRejected() {
+        rejectedRequests.incrementAndGet();
+    }
+
+    void addBytes(long in, long out) {
+        bytesIn.addAndGet(in);
+        bytesOut.addAndGet(out);
+    }
+
+    void parsed(long millis) {
+        totalParseMillis.addAndGet(millis);
+        maxParseMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    void built(long millis) {
+        totalBuildMillis.addAndGet(millis);
+        maxBuildMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    void phases(Map<String, Long> millis) {
+        for (Map.Entry<String, Long> phase : millis.entrySet()) {
+            totalPhaseMillis.computeIfAbsent(phase.getKey(), name -> new AtomicLong()).addAndGet(phase.getValue());
+            maxPhaseMillis.computeIfAbsent(phase.getKey(), name -> new AtomicLong()).accumulateAndGet(phase.getValue(), Math::max);
+            phaseCounts.computeIfAbsent(phase.getKey(), name -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public long getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    @Override
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    @Override
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public long getTotalParseMillis() {
+        return totalParseMillis.get();
+    }
+
+    @Override
+    public long getMaxParseMillis() {
+        return maxParseMillis.get();
+    }
+
+    @Override
+    public long getTotalBuildMillis() {
+        return totalBuildMillis.get();
+    }
+
+    @Override
+    public long getMaxBuildMillis() {
+        return maxBuildMillis.get();
+    }
+
+    @Override
+    public Map<String, Long> getTotalPhaseMillis() {
+        return snapshot(totalPhaseMillis);
+    }
+
+    @Override
+    public Map<String, Long> getMaxPhaseMillis() {
+        return snapshot(maxPhaseMillis);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        return snapshot(phaseCounts);
+    }
+
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            snapshot.put(counter.getKey(), counter.getValue().get());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder phases = new StringBuilder();
+        Map<String, Long> max = getMaxPhaseMillis();
+        Map<String, Long> counts = getPhaseCounts();
+        for (Map.Entry<String, Long> total : getTotalPhaseMillis().entrySet()) {
+            String name = total.getKey();
+            phases.append("phase.").append(name).append(".count=").append(counts.getOrDefault(name, 0L)).append('\n');
+            phases.append("phase.").append(name).append(".total-millis=").append(total.getValue()).append('\n');
+            phases.append("phase.").append(name).append(".max-millis=").append(max.getOrDefault(name, 0L)).append('\n');
+        }
+        return "requests=" + getRequests() + "\n"
+                + "active-requests=" + getActiveRequests() + "\n"
+                + "failed-requests=" + getFailedRequests() + "\n"
+                + "rejected-requests=" + getRejectedRequests() + "\n"
+                + "bytes-in=" + getBytesIn() + "\n"
+                + "bytes-out=" + getBytesOut() + "\n"
+                + "total-parse-millis=" + getTotalParseMillis() + "\n"
+                + "max-parse-millis=" + getMaxParseMillis() + "\n"
+                + "total-build-millis=" + getTotalBuildMillis() + "\n"
+                + "max-build-millis=" + getMaxBuildMillis() + "\n"
+                + phases;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.util.Map;
+
+/**
+ * Live counters of the builds run by the daemon, exposed through JMX.
+ */
+public interface BuildStatsMBean {
+    long getRequests();
+
+    long getActiveRequests();
+
+    long getFailedRequests();
+
+    long getRejectedRequests();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getTotalParseMillis();
+
+    long getMaxParseMillis();
+
+    long getTotalBuildMillis();
+
+    long getMaxBuildMillis();
+
+    /**
+     * The wall time spent in each phase of the {@link BuildReport}, summed over all builds.
+     */
+    Map<String, Long> getTotalPhaseMillis();
+
+    /**
+     * The longest wall time spent in each phase of the {@link BuildReport} by a single build.
+     */
+    Map<String, Long> getMaxPhaseMillis();
+
+    /**
+     * The number of builds which ran each phase of the {@link BuildReport}.
+     */
+    Map<String, Long> getPhaseCounts();
+}
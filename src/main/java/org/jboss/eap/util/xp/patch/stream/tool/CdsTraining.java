@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * The training run for the class data sharing archive of the tool. It builds a manager from a small generated
+ * core, both staged and streamed, and creates patch configs, so that the classes loaded by the usual runs of
+ * the tool are listed in the {@code -XX:DumpLoadedClassList} of this JVM and end up in the archive.
+ */
+final class CdsTraining {
+    private static final String CONFIG = "<?xml version=\"1.0\"?>\n<server xmlns=\"urn:jboss:domain:10.0\">\n  <profile/>\n</server>\n";
+
+    private CdsTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("cds-training");
+        try {
+            Path core = createCore(dir.resolve("core.jar"));
+            Path config = dir.resolve("standalone-training.xml");
+            Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+            String[] common = {ManagerCreatorMain.MANAGER_CORE + "=" + core, ManagerCreatorMain.ADDED_CONFIGS + "=" + config};
+            run(common, ManagerCreatorMain.OUTPUT_DIR + "=" + dir.resolve("staged"));
+            run(common, ManagerCreatorMain.OUTPUT_DIR + "=" + dir.resolve("streamed"), ManagerCreatorMain.STREAMING);
+            ManagerCreatorMain.main(new String[]{ManagerCreatorMain.CREATE_CONFIG, "2.0.0.GA,2.0.1.GA", dir.resolve("configs").toString()});
+        } finally {
+            Janitor.discard(dir).join();
+        }
+    }
+
+    private static void run(String[] common, String... args) throws Exception {
+        String[] all = new String[common.length + args.length];
+        System.arraycopy(common, 0, all, 0, common.length);
+        System.arraycopy(args, 0, all, common.length, args.length);
+        ManagerCreatorMain.main(all);
+    }
+
+    /**
+     * A core with compressible text entries and an incompressible one, so that both the deflated and the
+     * stored entries are written.
+     */
+    private static Path createCore(Path jar) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        Random random = new Random(0);
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file, manifest)) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 64; i++) {
+                text.append("org.jboss.eap.xp.training").append(i).append('\n');
+            }
+            for (int i = 0; i < 16; i++) {
+                out.putNextEntry(new ZipEntry("modules/training/main/Entry" + i + ".class"));
+                out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+            byte[] binary = new byte[CompressionPolicy.SAMPLE_SIZE * 2];
+            random.nextBytes(binary);
+            out.putNextEntry(new ZipEntry("modules/training/main/training.jar"));
+            out.write(binary);
+            out.closeEntry();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how each entry of the manager is compressed. The level and strategy of the {@link Deflater} are
+ * chosen by the first rule whose glob matches the name of the entry, and entries which barely shrink, such as
+ * nested jars and images, are stored rather than deflated. Whether an entry shrinks is found by deflating its
+ * first {@link #SAMPLE_SIZE} bytes on their own: if they gain less than the minimum, the rest of the entry is not
+ * deflated at all. The sample alone decides, whether the entry is held in memory or is too large to be, so that
+ * the manager does not depend on the memory and threads it is built with. For entries no larger than the sample,
+ * the deflated sample is the data of the entry, so it is not wasted.
+ * <p>
+ * A glob without a {@code /} is matched against the file name of the entry, and one with a {@code /} against
+ * its whole name, where {@code *} matches within a directory and {@code **} across directories.
+ */
+final class CompressionPolicy {
+    static final int DEFAULT_MIN_GAIN_PERCENT = 5;
+    static final int SAMPLE_SIZE = 64 * 1024;
+    static final String STORE = "store";
+
+    private static final String[] STRATEGIES = {"default", "filtered", "huffman"};
+    private static final int[] STRATEGY_VALUES = {Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY};
+    private static final Rule DEFAULT_RULE = new Rule("**", Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+
+    private final List<Rule> rules;
+    private final int minGainPercent;
+
+    private CompressionPolicy(List<Rule> rules, int minGainPercent) {
+        this.rules = rules;
+        this.minGainPercent = minGainPercent;
+    }
+
+    static CompressionPolicy defaults() {
+        return new CompressionPolicy(new ArrayList<>(), DEFAULT_MIN_GAIN_PERCENT);
+    }
+
+    /**
+     * Parses comma-separated rules of the form {@code <glob>=<level>[:<strategy>]}, where the level is
+     * {@code 1} to {@code 9}, or {@code 0} or {@code store} to always store the entries, and the strategy is one
+     * of {@code default}, {@code filtered} or {@code huffman}.
+     *
+     * @throws ManagerToolException if the rules are invalid
+     */
+    static CompressionPolicy parse(String rules, int minGainPercent, String arg) throws ManagerToolException {
+        List<Rule> parsed = new ArrayList<>();
+        if (rules != null) {
+            for (String rule : rules.split(",")) {
+                rule = rule.trim();
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                int equals = rule.lastIndexOf('=');
+                if (equals <= 0) {
+                    throw new ManagerToolException(rule + " in argument " + arg + " is not of the form <glob>=<level>[:<strategy>]");
+                }
+                String[] settings = rule.substring(equals + 1).split(":", 2);
+                int level = parseLevel(settings[0]);
+                int strategy = settings.length == 1 ? Deflater.DEFAULT_STRATEGY : parseStrategy(settings[1]);
+                if (level < 0 || strategy < 0) {
+                    throw new ManagerToolException(rule + " in argument " + arg + " does not have a level of " + STORE
+                            + " or 0 to 9 and a strategy of " + String.join(", ", STRATEGIES));
+                }
+                parsed.add(new Rule(rule.substring(0, equals), level, strategy));
+            }
+        }
+        return new CompressionPolicy(parsed, minGainPercent);
+    }
+
+    private static int parseLevel(String level) {
+        if (STORE.equals(level)) {
+            return Deflater.NO_COMPRESSION;
+        }
+        try {
+            int value = Integer.parseInt(level);
+            return value >= Deflater.NO_COMPRESSION && value <= Deflater.BEST_COMPRESSION ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int parseStrategy(String strategy) {
+        for (int i = 0; i < STRATEGIES.length; i++) {
+            if (STRATEGIES[i].equals(strategy.toLowerCase(Locale.ROOT))) {
+                return STRATEGY_VALUES[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compresses an entry held in memory.
+     */
+    RawZipWriter.CompressedEntry compress(String name, byte[] data, int length, long dosTime, BuildReport report) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        Rule rule = rule(name);
+        if (rule.level == Deflater.NO_COMPRESSION) {
+            report.stored(length, length, 0);
+            return new RawZipWriter.CompressedEntry(name, RawZipFile.STORED, crc.getValue(), length, data, length, dosTime);
+        }
+        int sampleLength = Math.min(length, SAMPLE_SIZE);
+        ByteArrayOutputStream sample = sample(rule, data, sampleLength, length, report);
+        if (sample == null) {
+            return new RawZipWriter.CompressedEntry(name, RawZipFile.STORED, crc.getValue(), length, data, length, dosTime);
+        }
+        ByteArrayOutputStream compressed = sampleLength == length ? sample : deflate(rule, data, length);
+        return new RawZipWriter.CompressedEntry(name, RawZipFile.DEFLATED, crc.getValue(), length, compressed.toByteArray(), compressed.size(), dosTime);
+    }
+
+    /**
+     * Decides whether an entry too large to be held in memory is stored, from a sample read at the start of the
+     * channel, which is then moved back to where it was. The decision is the one {@link #compress} makes for
+     * the same entry.
+     */
+    boolean shouldStore(String name, SeekableByteChannel in, long size, BuildReport report) throws IOException {
+        Rule rule = rule(name);
+        if (rule.level == Deflater.NO_COMPRESSION) {
+            report.stored(size, size, 0);
+            return true;
+        }
+        long position = in.position();
+        ByteBuffer sample = ByteBuffer.allocate((int) Math.min(size, SAMPLE_SIZE));
+        while (sample.hasRemaining() && in.read(sample) >= 0) {
+            // Fill the sample
+        }
+        in.position(position);
+        return sample(rule, sample.array(), sample.position(), size, report) == null;
+    }
+
+    /**
+     * Deflates the sample of an entry on its own, with the deflater of its rule.
+     *
+     * @return the deflated sample, or {@code null} if the entry is stored
+     */
+    private ByteArrayOutputStream sample(Rule rule, byte[] data, int sampleLength, long size, BuildReport report) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream sample = deflate(rule, data, sampleLength);
+        boolean store = !gains(sampleLength, sample.size());
+        // Unless the entry is stored or is the sample, the sample is deflated again with the rest of the entry
+        report.sampled(sampleLength, System.nanoTime() - start, !store && sampleLength < size);
+        if (store) {
+            report.stored(size, size - sampleLength, estimate(sample.size(), sampleLength, size) - size);
+            return null;
+        }
+        return sample;
+    }
+
+    private static ByteArrayOutputStream deflate(Rule rule, byte[] data, int length) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 2));
+        byte[] buffer = new byte[8192];
+        Deflater deflater = rule.newDeflater();
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buffer);
+                compressed.write(buffer, 0, len);
+            }
+        } finally {
+            deflater.end();
+        }
+        return compressed;
+    }
+
+    Deflater newDeflater(String name) {
+        return rule(name).newDeflater();
+    }
+
+    private boolean gains(long size, long compressedSize) {
+        return (size - compressedSize) * 100 >= (long) minGainPercent * size && compressedSize < size;
+    }
+
+    private static long estimate(long sampleValue, long sampleSize, long size) {
+        return sampleSize == 0 ? 0 : (long) ((double) sampleValue * size / sampleSize);
+    }
+
+    private Rule rule(String name) {
+        for (Rule rule : rules) {
+            if (rule.matches(name)) {
+                return rule;
+            }
+        }
+        return DEFAULT_RULE;
+    }
+
+    /**
+     * The rules and minimum gain, which change the output and so are part of the key of stored managers.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Rule rule : rules) {
+            sb.append(rule.glob).append('=').append(rule.level).append(':').append(rule.strategy).append(',');
+        }
+        return sb.append("min-gain=").append(minGainPercent).toString();
+    }
+
+    private static final class Rule {
+        private final String glob;
+        private final Pattern pattern;
+        private final boolean fileName;
+        private final int level;
+        private final int strategy;
+
+        Rule(String glob, int level, int strategy) {
+            this.glob = glob;
+            this.pattern = Pattern.compile(toRegex(glob));
+            this.fileName = glob.indexOf('/') < 0;
+            this.level = level;
+            this.strategy = strategy;
+        }
+
+        boolean matches(String name) {
+            return pattern.matcher(fileName ? name.substring(name.lastIndexOf('/') + 1) : name).matches();
+        }
+
+        Deflater newDeflater() {
+            Deflater deflater = new Deflater(level, true);
+            deflater.setStrategy(strategy);
+            return deflater;
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
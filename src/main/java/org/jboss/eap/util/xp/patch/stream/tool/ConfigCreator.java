@@ -18,19 +18,21 @@
 
 package org.jboss.eap.util.xp.patch.stream.tool;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
@@ -39,46 +41,46 @@ class ConfigCreator {
     private static final String H = "-h";
     private static final String HELP = "--help";
 
-    private static final Pattern MP_VERSION_PATTERN = Pattern.compile("\\d+\\.\\d+\\.\\d+\\.GA");
+    // At most 9 digits per part, so that every part fits in an int
+    private static final Pattern MP_VERSION_PATTERN = Pattern.compile("\\d{1,9}\\.\\d{1,9}\\.\\d{1,9}\\.GA");
     private static final Pattern MAJOR_VERSION_PATTERN = Pattern.compile("[1-9]+\\.0\\.0\\.GA");
 
     private static final String PATCH_STREAM_BASE_NAME = "jboss-eap-xp-";
-
-    private static final String APPLIES_TO_VERSON_MARKER = "${applies.to.version}";
-    private static final String EXPANSION_PACK_VERSION_MARKER = "${expansion.pack.version}";
-    private static final String EXPANSION_PACK_PATCH_STREAM_NAME_MARKER = "${xp.patch.stream.name}";
+    private static final String RANGE_SEPARATOR = "..";
 
     private final String appliesToVersion;
     private final String xpVersionRoot;
     private final String patchStreamName;
     private final String outputDir;
 
-    private ConfigCreator(String appliesToVersion, String xpVersionRoot, String patchStreamName, String outputDir) {
+    ConfigCreator(String appliesToVersion, String xpVersionRoot, String patchStreamName, String outputDir) {
         this.appliesToVersion = appliesToVersion;
         this.xpVersionRoot = xpVersionRoot;
         this.patchStreamName = patchStreamName;
         this.outputDir = outputDir;
     }
 
-    static Path generate(final String... args) throws Exception{
+    static List<Path> generate(final String... args) throws Exception{
 
         String outputDir = null;
-        String xpVersion = null;
+        Set<String> xpVersions = null;
         for (int i = 0; i < args.length; i++) {
             final String arg = args[i];
             try {
                 if (HELP.equals(arg) || H.equalsIgnoreCase(arg)) {
                     usage();
-                    System.exit(1);
+                    return null;
                 } else if (arg.equals(ManagerCreatorMain.CREATE_CONFIG)) {
                     i++;
                     if (i > args.length) {
                         usage();
                         return null;
                     }
-                    xpVersion = args[i];
-                    if (!MP_VERSION_PATTERN.matcher(xpVersion).matches()) {
-                        System.err.println(xpVersion + " does not look like a valid JBoss EAP XP version. Examples:\n\t1.0.0.GA\n\t1.0.1.GA\n\t1.0.2.GA");
+                    // Validate all the versions before creating anything
+                    try {
+                        xpVersions = parseVersions(args[i]);
+                    } catch (ManagerToolException e) {
+                        System.err.println(e.getMessage());
                         usage();
                         return null;
                     }
@@ -89,16 +91,69 @@ class ConfigCreator {
                 } else {
                     ToolLogger.argumentExpected(arg);
                     usage();
-                    System.exit(1);
+                    return null;
                 }
             } catch (IndexOutOfBoundsException e) {
                 ToolLogger.argumentExpected(arg);
                 usage();
-                System.exit(1);
+                return null;
             }
         }
 
+        return create(xpVersions, outputDir);
+    }
+
+    /**
+     * Creates the patch config of each version, in the output directory or in the working directory if it is
+     * {@code null}.
+     */
+    static List<Path> create(Set<String> xpVersions, String outputDir) throws IOException {
+        if (xpVersions.size() == 1) {
+            return Collections.singletonList(forVersion(xpVersions.iterator().next(), outputDir).createPatchConfigXml());
+        }
+        return createPatchConfigXmls(xpVersions, outputDir);
+    }
 
+    /**
+     * Parses a comma-separated list of versions and ranges of versions such as {@code 1.0.0.GA..1.0.20.GA},
+     * which include all the micro versions between the two ends.
+     *
+     * @throws ManagerToolException if a version or range is invalid
+     */
+    static Set<String> parseVersions(String arg) throws ManagerToolException {
+        Set<String> versions = new LinkedHashSet<>();
+        for (String part : arg.split(",")) {
+            int separator = part.indexOf(RANGE_SEPARATOR);
+            if (separator < 0) {
+                checkVersion(part);
+                versions.add(part);
+                continue;
+            }
+            String first = part.substring(0, separator);
+            String last = part.substring(separator + RANGE_SEPARATOR.length());
+            checkVersion(first);
+            checkVersion(last);
+            String[] firstParts = first.split("\\.");
+            String[] lastParts = last.split("\\.");
+            int firstMicro = Integer.parseInt(firstParts[2]);
+            int lastMicro = Integer.parseInt(lastParts[2]);
+            if (!firstParts[0].equals(lastParts[0]) || !firstParts[1].equals(lastParts[1]) || firstMicro > lastMicro) {
+                throw new ManagerToolException(part + " is not a valid range of JBoss EAP XP versions. Both ends must have the same major and minor version, with the lowest first, for example 2.0.0.GA" + RANGE_SEPARATOR + "2.0.15.GA");
+            }
+            for (int micro = firstMicro; micro <= lastMicro; micro++) {
+                versions.add(firstParts[0] + "." + firstParts[1] + "." + micro + ".GA");
+            }
+        }
+        return versions;
+    }
+
+    private static void checkVersion(String xpVersion) throws ManagerToolException {
+        if (!MP_VERSION_PATTERN.matcher(xpVersion).matches()) {
+            throw new ManagerToolException(xpVersion + " does not look like a valid JBoss EAP XP version. Examples:\n\t1.0.0.GA\n\t1.0.1.GA\n\t1.0.2.GA");
+        }
+    }
+
+    private static ConfigCreator forVersion(String xpVersion, String outputDir) {
         String appliesToVersion = "0.0.0";
         if (!MAJOR_VERSION_PATTERN.matcher(xpVersion).matches()) {
             // Figure out the last version
@@ -128,19 +183,64 @@ class ConfigCreator {
         String majorVersion = xpVersion.substring(0, xpVersion.indexOf("."));
         String patchStreamName = PATCH_STREAM_BASE_NAME + majorVersion + ".0";
         
-        ConfigCreator configCreator = new ConfigCreator(appliesToVersion, xpVersionRoot, patchStreamName, outputDir);
-        return configCreator.createPatchConfigXml();
+        return new ConfigCreator(appliesToVersion, xpVersionRoot, patchStreamName, outputDir);
+    }
+
+    private static List<Path> createPatchConfigXmls(Set<String> xpVersions, String outputDir) throws IOException {
+        long start = System.currentTimeMillis();
+        if (outputDir != null) {
+            Files.createDirectories(Paths.get(outputDir));
+        }
+        // The template is shared by all the threads, each one only renders and writes its own files
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(Runtime.getRuntime().availableProcessors(), xpVersions.size()));
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (String xpVersion : xpVersions) {
+                ConfigCreator configCreator = forVersion(xpVersion, outputDir);
+                futures.add(executor.submit(configCreator::writePatchConfigXml));
+            }
+            List<Path> files = new ArrayList<>();
+            for (Future<Path> future : futures) {
+                try {
+                    files.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while creating the patch configs", e);
+                }
+            }
+            Path dir = outputDir == null ? Paths.get("") : Paths.get(outputDir);
+            System.out.println("Created " + files.size() + " patch configs in " + dir.toAbsolutePath() + " in " + (System.currentTimeMillis() - start) + "ms");
+            return files;
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     private static void usage() {
         System.err.println("USAGE:");
-        System.err.println(ManagerCreatorMain.getJavaCommand(ConfigCreator.class) + " --create-config <microprofile-expansion-pack-version> [<output-dir>]");
+        System.err.println(ManagerCreatorMain.getJavaCommand(ConfigCreator.class) + " --create-config <microprofile-expansion-pack-versions> [<output-dir>]");
         System.err.println();
         System.err.println("this will create a patch-config-[microprofile-expansion-pack-version].xml adjusted for the EAP CP and MP Expansion Pack versions");
+        System.err.println("for each of the comma-separated versions. Ranges of versions such as 2.0.0.GA" + RANGE_SEPARATOR + "2.0.15.GA include all the micro versions between both ends");
     }
 
-    private Path createPatchConfigXml() throws Exception {
-        String xml = readBundledPatchConfigXml();
+    private Path createPatchConfigXml() throws IOException {
+        Path file = writePatchConfigXml();
+        System.out.println("Created patch config at " + file.toAbsolutePath());
+        return file;
+    }
+
+    private Path writePatchConfigXml() throws IOException {
+        ToolEvents.PatchConfig event = new ToolEvents.PatchConfig();
+        event.begin();
         Path file = Paths.get("patch-config-" + xpVersionRoot + ".xml");
         if (outputDir != null) {
             Path dir = Paths.get(outputDir);
@@ -149,49 +249,19 @@ class ConfigCreator {
             }
             file = dir.resolve(file);
         }
-        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
-        System.out.println("Created patch config at " + file.toAbsolutePath());
+        PatchConfigTemplate.bundled().write(file, appliesToVersion, xpVersionRoot, patchStreamName);
+        event.end();
+        if (event.shouldCommit()) {
+            event.version = xpVersionRoot;
+            event.file = file.toString();
+            event.size = Files.size(file);
+            event.commit();
+        }
         return file;
     }
 
-    private String readBundledPatchConfigXml() throws Exception {
-        URL url = ConfigCreator.class.getProtectionDomain().getCodeSource().getLocation();
-        if (!url.toString().contains(".jar")) {
-            throw new IllegalStateException("The Template Creator must be run from the distributed jar. It should not be unzipped!");
-        }
-
-        File file = new File(url.toURI());
-        String contents = null;
-        try (ZipInputStream zin = new ZipInputStream(new BufferedInputStream(new FileInputStream(file)))) {
-            ZipEntry entry = zin.getNextEntry();
-            while (entry != null)
-                try {
-                    if (entry.isDirectory()) {
-                        continue;
-                    }
-                    if (entry.getName().equals("patch-config.xml")) {
-                        BufferedReader reader = new BufferedReader(new InputStreamReader(zin));
-                        StringBuffer sb = new StringBuffer();
-                        String line = reader.readLine();
-                        while (line != null) {
-                            line = line.replace(APPLIES_TO_VERSON_MARKER, appliesToVersion);
-                            line = line.replace(EXPANSION_PACK_VERSION_MARKER, xpVersionRoot);
-                            line = line.replace(EXPANSION_PACK_PATCH_STREAM_NAME_MARKER, patchStreamName);
-                            sb.append(line);
-                            sb.append("\n");
-                            line = reader.readLine();
-                        }
-                        contents = sb.toString();
-                    }
-                } finally {
-                    zin.closeEntry();
-                    entry = zin.getNextEntry();
-                }
-        }
-        if (contents == null) {
-            throw new IllegalStateException("Could not find patch-config.xml");
-        }
-        return contents;
+    String readBundledPatchConfigXml() {
+        return StandardCharsets.UTF_8.decode(PatchConfigTemplate.bundled().render(appliesToVersion, xpVersionRoot, patchStreamName)).toString();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,191 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Checks that the added configs are server configurations while the core is being unpacked, so that a broken
+ * config fails the build rather than the boot of the patched server. Every config is read to the end with a
+ * {@link XMLStreamReader} on a pool of worker threads, which checks that it is well-formed without holding the
+ * document in memory, and its root element has to be a {@code server} in a {@code urn:jboss:domain:} namespace.
+ */
+final class ConfigValidator implements Closeable {
+    private static final String ROOT_ELEMENT = "server";
+    private static final String NAMESPACE_PREFIX = "urn:jboss:domain:";
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private final ExecutorService pool;
+    private final CompletionService<Void> completion;
+    private final BuildReport report;
+    private int pending;
+
+    private ConfigValidator(int threads, BuildReport report) {
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.completion = new ExecutorCompletionService<>(pool);
+        this.report = report;
+    }
+
+    /**
+     * Starts validating the configs in the background.
+     */
+    static ConfigValidator start(Collection<Path> configs, int threads, BuildReport report) {
+        // The same config may be added to several variants
+        Set<Path> unique = new LinkedHashSet<>(configs);
+        ConfigValidator validator = new ConfigValidator(Math.max(1, Math.min(threads, unique.size())), report);
+        for (Path config : unique) {
+            validator.completion.submit(() -> {
+                validator.validate(config);
+                return null;
+            });
+            validator.pending++;
+        }
+        return validator;
+    }
+
+    /**
+     * Waits for the validation to complete. The first invalid config found cancels the validation of the others.
+     *
+     * @throws InvalidConfigException if a config is invalid
+     */
+    synchronized void await() throws IOException, InterruptedException {
+        for (; pending > 0; pending--) {
+            complete(completion.take());
+        }
+    }
+
+    /**
+     * Fails if a config has been found invalid so far, without waiting for the others. It is called between the
+     * entries of the core, so that a broken config stops the build before the whole core is unpacked.
+     *
+     * @throws InvalidConfigException if a config is invalid
+     */
+    synchronized void check() throws IOException {
+        Future<Void> done;
+        while (pending > 0 && (done = completion.poll()) != null) {
+            pending--;
+            try {
+                complete(done);
+            } catch (InterruptedException e) {
+                // The future is done, so this cannot happen
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private void complete(Future<Void> done) throws IOException, InterruptedException {
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void validate(Path config) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.VALIDATE_CONFIGS);
+             InputStream in = new BufferedInputStream(Files.newInputStream(config))) {
+            phase.target(config).read(Files.size(config)).entries(1);
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(config.toUri().toString(), in);
+            try {
+                while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    if (reader.getEventType() == XMLStreamConstants.DTD) {
+                        throw new InvalidConfigException(config, reader.getLocation(), "document type declarations are not allowed");
+                    }
+                }
+                if (!ROOT_ELEMENT.equals(reader.getLocalName())) {
+                    throw new InvalidConfigException(config, reader.getLocation(),
+                            "the root element is <" + reader.getLocalName() + ">, not <" + ROOT_ELEMENT + ">");
+                }
+                String namespace = reader.getNamespaceURI();
+                if (namespace == null || !namespace.startsWith(NAMESPACE_PREFIX)) {
+                    throw new InvalidConfigException(config, reader.getLocation(),
+                            "the namespace of <" + ROOT_ELEMENT + "> is " + (namespace == null ? "missing" : namespace) + ", not " + NAMESPACE_PREFIX + "*");
+                }
+                while (reader.getEventType() != XMLStreamConstants.END_DOCUMENT) {
+                    reader.next();
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new InvalidConfigException(config, e.getLocation(), parseError(e));
+        }
+    }
+
+    /**
+     * The message of a parse error, without the location which the JDK parser puts in front of it.
+     */
+    private static String parseError(XMLStreamException e) {
+        String message = String.valueOf(e.getMessage());
+        int index = message.indexOf("Message: ");
+        return index < 0 ? message : message.substring(index + "Message: ".length());
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        // The configs are only checked, so nothing outside them is ever read
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Thrown for an added config which is not a valid server configuration, with the file and line of the problem.
+     */
+    static final class InvalidConfigException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        InvalidConfigException(Path config, Location location, String message) {
+            super(config + (location == null || location.getLineNumber() < 0 ? "" : ":" + location.getLineNumber() + ":" + location.getColumnNumber())
+                    + ": invalid server configuration: " + message);
+        }
+    }
+}
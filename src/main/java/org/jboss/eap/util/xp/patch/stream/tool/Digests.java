@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashing helpers used to identify downloaded cores and built managers by their content.
+ */
+final class Digests {
+    static final String SHA_256 = "SHA-256";
+    static final String SHA_512 = "SHA-512";
+
+    private Digests() {
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String sha256(Path path) throws IOException {
+        MessageDigest digest = newDigest(SHA_256);
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static String sha256(byte[] bytes) {
+        return toHex(newDigest(SHA_256).digest(bytes));
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The SHA-256 and SHA-512 of a file, written next to it as {@code .sha256} and {@code .sha512} files in the
+     * format of {@code sha256sum} and {@code sha512sum}, so that the file can be checked where it is installed.
+     */
+    static final class Sidecars {
+        private final MessageDigest sha256 = newDigest(SHA_256);
+        private final MessageDigest sha512 = newDigest(SHA_512);
+        private String sha256Hex;
+        private String sha512Hex;
+
+        /**
+         * Digests a file which was not digested while it was written.
+         */
+        static Sidecars of(Path path) throws IOException {
+            Sidecars sidecars = new Sidecars();
+            try (InputStream in = Files.newInputStream(path)) {
+                byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    sidecars.update(ByteBuffer.wrap(buffer, 0, len));
+                }
+            }
+            return sidecars;
+        }
+
+        void update(ByteBuffer bytes) {
+            sha256.update(bytes.duplicate());
+            sha512.update(bytes);
+        }
+
+        /**
+         * The SHA-256 in hexadecimal. Nothing can be added to the digests once it has been read.
+         */
+        String sha256() {
+            if (sha256Hex == null) {
+                sha256Hex = toHex(sha256.digest());
+            }
+            return sha256Hex;
+        }
+
+        String sha512() {
+            if (sha512Hex == null) {
+                sha512Hex = toHex(sha512.digest());
+            }
+            return sha512Hex;
+        }
+
+        void write(Path path) throws IOException {
+            String name = path.getFileName().toString();
+            Files.write(path.resolveSibling(name + ".sha256"), (sha256() + "  " + name + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.write(path.resolveSibling(name + ".sha512"), (sha512() + "  " + name + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
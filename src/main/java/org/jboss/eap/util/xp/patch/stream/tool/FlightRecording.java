@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * A flight recording covering one run of the tool, written to a file when it is stopped. It uses the JDK's
+ * {@code profile} settings, so that the {@link ToolEvents} can be analysed together with the method samples
+ * and allocations in JMC.
+ */
+final class FlightRecording {
+    private final Recording recording;
+    private final Path file;
+
+    private FlightRecording(Recording recording, Path file) {
+        this.recording = recording;
+        this.file = file;
+    }
+
+    static FlightRecording start(Path file) throws IOException {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration("profile");
+        } catch (ParseException e) {
+            throw new IOException("Could not read the flight recorder settings", e);
+        }
+        Recording recording = new Recording(configuration);
+        recording.setName("jboss-eap-xp-manager-tool");
+        recording.setToDisk(true);
+        recording.setDestination(file);
+        recording.start();
+        return new FlightRecording(recording, file);
+    }
+
+    /**
+     * Stops the recording and writes it to its file.
+     */
+    void stop() {
+        try {
+            recording.stop();
+            System.out.println("Flight recording written to " + file.toAbsolutePath());
+        } catch (IllegalStateException e) {
+            System.err.println("Could not write the flight recording to " + file + ": " + e.getLocalizedMessage());
+        } finally {
+            recording.close();
+        }
+    }
+}
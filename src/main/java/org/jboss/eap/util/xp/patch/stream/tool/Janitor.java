@@ -0,0 +1,260 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deletes the staging directories and downloaded cores of the builds without making them wait. An artifact is
+ * first renamed into a trash directory next to it, which is atomic, and is then deleted in parallel by a pool of
+ * daemon threads. Exiting does not wait for these deletes: whatever is still in the trash then, or was left by a
+ * build which crashed, is swept by {@link #sweep(Path)} when a later build starts.
+ * <p>
+ * The names of the artifacts contain the pid of the process which created them, so that the sweep leaves the
+ * artifacts of running builds alone. As the directory may be shared with builds in other pid namespaces, such as
+ * containers, whose pids mean nothing here, artifacts are also only swept once they have not been modified for
+ * an hour. The partial files of downloads are kept for a day so that the download can be resumed, and are only
+ * swept if no download holds their lock.
+ */
+final class Janitor {
+    static final String STAGING_PREFIX = "mp-manager";
+    static final String DOWNLOAD_PREFIX = "jboss-eap-xp-manager";
+    static final String DOWNLOAD_SUFFIX = ".jar";
+    static final String PARTIAL_SUFFIX = ".part";
+    static final String LOCK_SUFFIX = ".lock";
+    static final String PROGRESS_SUFFIX = ".progress";
+
+    private static final String TRASH_DIR = STAGING_PREFIX + "-trash";
+    // The pid is missing from the names given by older versions of the tool
+    private static final Pattern STAGING_NAME = Pattern.compile(Pattern.quote(STAGING_PREFIX) + "(?:(\\d+)-)?\\d+");
+    private static final Pattern DOWNLOAD_NAME = Pattern.compile(Pattern.quote(DOWNLOAD_PREFIX) + "(?:(\\d+)-)?\\d+(?:" + Pattern.quote(DOWNLOAD_SUFFIX) + "|" + Pattern.quote(PARTIAL_SUFFIX) + ")");
+    // The resumable partial file of a URL and the files next to it, see RangedDownloader
+    private static final Pattern PARTIAL_NAME = Pattern.compile("(" + Pattern.quote(DOWNLOAD_PREFIX) + "-[0-9a-f]{64}" + Pattern.quote(PARTIAL_SUFFIX) + ")"
+            + "(?:" + Pattern.quote(LOCK_SUFFIX) + "|" + Pattern.quote(PROGRESS_SUFFIX) + "(?:\\.tmp)?)?");
+    // The pid of an artifact may be reused, or belong to another pid namespace, so it must be this old as well
+    private static final long SWEEP_GRACE_PERIOD = TimeUnit.HOURS.toMillis(1);
+    private static final long PARTIAL_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+    private static final int FILES_PER_TASK = 64;
+
+    // The worker threads of a ForkJoinPool are daemon threads, so they never keep the JVM alive
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private static final Set<Path> SWEPT = ConcurrentHashMap.newKeySet();
+
+    private Janitor() {
+    }
+
+    /**
+     * The prefix of the names of the artifacts created by this process.
+     */
+    static String prefix(String prefix) {
+        return prefix + ProcessHandle.current().pid() + "-";
+    }
+
+    /**
+     * Moves a file or directory to the trash and deletes it in the background.
+     */
+    static ForkJoinTask<?> discard(Path path) {
+        Path target = path;
+        Path trash = path.toAbsolutePath().getParent().resolve(TRASH_DIR);
+        try {
+            Files.createDirectories(trash);
+            target = Files.move(path, trash.resolve(path.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // It could not be renamed, for example because the trash is on another file store, so delete it in place
+        }
+        return POOL.submit(new DeleteTree(target));
+    }
+
+    /**
+     * Deletes in the background the artifacts left in a directory by builds which are no longer running. Each
+     * directory is only swept once per JVM, later calls for it return without touching the file system.
+     */
+    static void sweep(Path dir) {
+        Path absolute = dir.toAbsolutePath().normalize();
+        if (!SWEPT.add(absolute) || !Files.isDirectory(absolute)) {
+            return;
+        }
+        POOL.execute(() -> {
+            try {
+                sweepArtifacts(absolute, false);
+                Path trash = absolute.resolve(TRASH_DIR);
+                if (Files.isDirectory(trash)) {
+                    sweepArtifacts(trash, true);
+                }
+            } catch (IOException e) {
+                System.err.println("Problems sweeping leftover artifacts from " + absolute + ": " + e.getLocalizedMessage());
+            }
+        });
+    }
+
+    private static void sweepArtifacts(Path dir, boolean trash) throws IOException {
+        List<DeleteTree> tasks = new ArrayList<>();
+        Set<String> partials = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                Matcher partial = PARTIAL_NAME.matcher(name);
+                if (!trash && partial.matches()) {
+                    partials.add(partial.group(1));
+                } else if (isAbandoned(path, name, trash)) {
+                    tasks.add(new DeleteTree(path));
+                }
+            }
+        }
+        ForkJoinTask.invokeAll(tasks);
+        for (String partial : partials) {
+            sweepPartial(dir.resolve(partial));
+        }
+    }
+
+    private static boolean isAbandoned(Path path, String name, boolean trash) {
+        Matcher matcher = STAGING_NAME.matcher(name);
+        if (!matcher.matches()) {
+            matcher = DOWNLOAD_NAME.matcher(name);
+            if (!matcher.matches()) {
+                return false;
+            }
+        }
+        if (matcher.group(1) != null && ProcessHandle.of(Long.parseLong(matcher.group(1))).map(ProcessHandle::isAlive).orElse(false)) {
+            return false;
+        }
+        // Nothing uses what is in the trash any more
+        return trash || isOlderThan(path, SWEEP_GRACE_PERIOD);
+    }
+
+    /**
+     * Deletes the partial file of a download which has not progressed for {@link #PARTIAL_MAX_AGE}, with its
+     * progress and lock files. The lock is held meanwhile, so that the partial file of a running download is left
+     * alone.
+     */
+    private static void sweepPartial(Path part) {
+        Path progress = part.resolveSibling(part.getFileName() + PROGRESS_SUFFIX);
+        Path progressTmp = part.resolveSibling(progress.getFileName() + ".tmp");
+        if (!isOlderThan(part, PARTIAL_MAX_AGE) || !isOlderThan(progress, PARTIAL_MAX_AGE)) {
+            return;
+        }
+        Path lockFile = part.resolveSibling(part.getFileName() + LOCK_SUFFIX);
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                return;
+            }
+            Files.deleteIfExists(part);
+            Files.deleteIfExists(progress);
+            Files.deleteIfExists(progressTmp);
+            Files.deleteIfExists(lockFile);
+        } catch (OverlappingFileLockException e) {
+            // Downloading in this JVM
+        } catch (IOException e) {
+            System.err.println("Problems deleting the partial download " + part + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Whether the file was last modified longer ago than the given age, or does not exist.
+     */
+    private static boolean isOlderThan(Path path, long age) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis() < System.currentTimeMillis() - age;
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a tree, with its subdirectories and batches of its files deleted in parallel. Files which are
+     * already gone were deleted by the sweep of another build, and are ignored.
+     */
+    private static final class DeleteTree extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+        private final List<Path> files;
+
+        DeleteTree(Path path) {
+            this(path, null);
+        }
+
+        private DeleteTree(Path path, List<Path> files) {
+            this.path = path;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (files != null) {
+                    for (Path file : files) {
+                        Files.deleteIfExists(file);
+                    }
+                    return;
+                }
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    List<DeleteTree> tasks = new ArrayList<>();
+                    List<Path> batch = new ArrayList<>();
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                        for (Path child : stream) {
+                            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                                tasks.add(new DeleteTree(child));
+                            } else {
+                                batch.add(child);
+                                if (batch.size() == FILES_PER_TASK) {
+                                    tasks.add(new DeleteTree(path, batch));
+                                    batch = new ArrayList<>();
+                                }
+                            }
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        tasks.add(new DeleteTree(path, batch));
+                    }
+                    invokeAll(tasks);
+                }
+                Files.deleteIfExists(path);
+            } catch (NoSuchFileException e) {
+                // Deleted concurrently
+            } catch (IOException e) {
+                System.err.println("Problems deleting " + path + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+}
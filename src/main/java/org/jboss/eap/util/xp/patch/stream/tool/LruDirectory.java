@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A directory of files which is kept below a maximum size by deleting the least recently used files. The
+ * modification time of a file doubles as its last access time, so users call {@link #touch(Path)} when they use it.
+ */
+class LruDirectory {
+    // Files used within this period are never evicted, since another invocation may be about to open them
+    private static final long EVICTION_GRACE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+    // File locks are held per JVM, so threads of the same JVM need to be serialized separately
+    private static final ConcurrentMap<Path, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final String suffix;
+    private final Path evictionLock;
+    private final long maxSize;
+
+    LruDirectory(Path dir, String suffix, Path evictionLock, long maxSize) throws IOException {
+        this.dir = dir;
+        this.suffix = suffix;
+        this.evictionLock = evictionLock;
+        this.maxSize = maxSize;
+        Files.createDirectories(dir);
+    }
+
+    Path resolve(String name) {
+        return dir.resolve(name + suffix);
+    }
+
+    static void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Deletes the least recently used files until the directory fits within its maximum size.
+     */
+    void evict() throws IOException {
+        synchronized (lockFor(evictionLock)) {
+            try (FileChannel channel = FileChannel.open(evictionLock, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.tryLock()) {
+                if (lock == null) {
+                    // Another invocation is evicting already
+                    return;
+                }
+                List<Path> paths;
+                try (Stream<Path> stream = Files.list(dir)) {
+                    paths = stream.filter(p -> p.getFileName().toString().endsWith(suffix)).collect(Collectors.toList());
+                }
+                List<LruFile> files = new ArrayList<>();
+                long total = 0;
+                for (Path path : paths) {
+                    try {
+                        LruFile file = new LruFile(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+                        files.add(file);
+                        total += file.size;
+                    } catch (NoSuchFileException e) {
+                        // Removed in the meantime
+                    }
+                }
+                files.sort(Comparator.comparingLong(file -> file.lastUsed));
+                long cutoff = System.currentTimeMillis() - EVICTION_GRACE_PERIOD;
+                for (LruFile file : files) {
+                    if (total <= maxSize || file.lastUsed > cutoff) {
+                        break;
+                    }
+                    Files.deleteIfExists(file.path);
+                    total -= file.size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Monitor to hold, along with a {@link FileLock} on the given file, to serialize access to it across threads
+     * and processes.
+     */
+    static Object lockFor(Path lockFile) {
+        return JVM_LOCKS.computeIfAbsent(lockFile.toAbsolutePath(), k -> new Object());
+    }
+
+    private static class LruFile {
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        LruFile(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
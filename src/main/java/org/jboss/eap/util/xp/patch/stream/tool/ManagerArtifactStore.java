@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Local store of previously built managers, keyed by a digest of everything that goes into a manager: the tool
+ * version, whether the manager was streamed or staged, the core, the manifest layers and the name and content of
+ * each added config. When the same inputs
+ * are built again, the stored manager is copied to the output instead of being rebuilt. The store and the outputs
+ * never share a file, so that changing a manager where it was written, for example by signing it, cannot change
+ * what later builds restore, and the stored managers are read-only. The least recently used managers are evicted
+ * once the store grows beyond its maximum size.
+ */
+class ManagerArtifactStore {
+    static final long DEFAULT_MAX_SIZE = 2048L * 1024 * 1024;
+
+    private static final String SUFFIX = ".jar";
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final String TOOL_VERSION = toolVersion();
+
+    private final Path storeDir;
+    private final LruDirectory artifacts;
+
+    ManagerArtifactStore(Path storeDir, long maxSize) throws IOException {
+        this.storeDir = storeDir;
+        this.artifacts = new LruDirectory(storeDir, SUFFIX, storeDir.resolve("eviction.lock"), maxSize);
+    }
+
+    /**
+     * Computes the key of a manager from the SHA-256 of its core and its added configs, whether it is streamed or
+     * staged, and the reproducible output and compression settings.
+     */
+    static String key(String coreSha256, List<Path> addedConfigFiles, boolean streaming, ReproducibleOutput reproducible,
+                      CompressionPolicy compression) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("tool-version=").append(TOOL_VERSION).append('\n');
+        sb.append("mode=").append(streaming ? "streaming" : "staged").append('\n');
+        sb.append("core=").append(coreSha256).append('\n');
+        sb.append("layers=").append(ManagerCreator.DEFAULT_LAYERS).append('\n');
+        if (reproducible != null) {
+            sb.append("reproducible=").append(reproducible.getEpochSeconds()).append('\n');
+        }
+        sb.append("compression=").append(compression).append('\n');
+        if (addedConfigFiles != null) {
+            for (Path config : addedConfigFiles) {
+                sb.append("config=").append(config.getFileName()).append(':').append(Digests.sha256(config)).append('\n');
+            }
+        }
+        return Digests.sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The version of the tool, along with the SHA-256 of its jar for snapshots, whose code changes without their
+     * version changing.
+     */
+    private static String toolVersion() {
+        String version = ManagerArtifactStore.class.getPackage().getImplementationVersion();
+        if (version != null && !version.endsWith("-SNAPSHOT")) {
+            return version;
+        }
+        try {
+            Path jar = Paths.get(ManagerArtifactStore.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isRegularFile(jar)) {
+                return version + ":" + Digests.sha256(jar);
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // Not loaded from a jar which can be read
+        }
+        return version == null ? "unknown" : version;
+    }
+
+    /**
+     * Copies the manager stored under the key to the output path, if there is one.
+     *
+     * @return the digests of the restored manager, or {@code null} if it was not found in the store
+     */
+    Digests.Sidecars restore(String key, Path output) throws IOException {
+        Path stored = artifacts.resolve(key);
+        if (!Files.exists(stored)) {
+            return null;
+        }
+        LruDirectory.touch(stored);
+        Path tmp = output.resolveSibling(output.getFileName() + ".part");
+        Digests.Sidecars digests = new Digests.Sidecars();
+        try {
+            // Digested while it is copied, so that it need not be read again for its sidecars
+            try (FileChannel in = FileChannel.open(stored);
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    digests.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            Files.move(tmp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            // Evicted in the meantime
+            return null;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return digests;
+    }
+
+    /**
+     * Adds a copy of a freshly built manager to the store.
+     */
+    void store(String key, Path output) throws IOException {
+        Path tmp = storeDir.resolve(key + "-" + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(output, tmp);
+            if (!tmp.toFile().setReadOnly()) {
+                throw new IOException("Could not make " + tmp + " read-only");
+            }
+            Files.move(tmp, artifacts.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        artifacts.evict();
+    }
+}
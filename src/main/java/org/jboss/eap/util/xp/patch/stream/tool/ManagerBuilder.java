@@ -0,0 +1,488 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds managers from Java, for example from a build plugin, without starting a JVM per build. It has the same
+ * settings as the options of {@link ManagerCreatorMain}, and the same defaults. Invalid settings are reported
+ * as a {@link ManagerToolException} rather than printed, and the build returns the managers it wrote.
+ * <pre>
+ * ManagerResult result = new ManagerBuilder()
+ *         .managerCore("target/mp-expansion-pack-core.jar")
+ *         .addedConfigs("src/main/configs")
+ *         .outputDir(Paths.get("target/manager"))
+ *         .build();
+ * </pre>
+ * A builder is not meant to be shared between threads while it is configured, but builds of different
+ * builders, or repeated builds of one builder, can run at the same time in the same JVM. Their staging
+ * directories and downloads are named apart, and the core cache and artifact store lock their entries for the
+ * threads of the JVM as well as for other processes.
+ */
+public final class ManagerBuilder {
+    private static final String HTTP = "http://";
+    private static final String HTTPS = "https://";
+
+    private String managerCore;
+    private String managerCoreSha256;
+    private boolean pipelined;
+    private final List<String> addedConfigs = new ArrayList<>();
+    private Path outputDir;
+    private boolean streaming;
+    private String stagingMode = StagingArea.AUTO;
+    private Path stagingDir;
+    private long stagingMemoryThreshold = StagingArea.DEFAULT_MEMORY_THRESHOLD;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String compression;
+    private int minCompressionGain = CompressionPolicy.DEFAULT_MIN_GAIN_PERCENT;
+    private Path deltaBaseline;
+    private Path applyDelta;
+    private long maxMemory = ManagerCreator.DEFAULT_MAX_MEMORY;
+    private int downloadConnections = RangedDownloader.DEFAULT_CONNECTIONS;
+    private Path batch;
+    private Path artifactStore;
+    private long artifactStoreMaxSize = ManagerArtifactStore.DEFAULT_MAX_SIZE;
+    private Path cacheDir;
+    private long cacheMaxSize = ManagerCoreCache.DEFAULT_MAX_SIZE;
+    private boolean report;
+    private Path reportFile;
+    private Path jfr;
+    private boolean reproducible;
+    private Long sourceDateEpoch;
+
+    /**
+     * The path or {@code http(s)} URL of the manager core.
+     */
+    public ManagerBuilder managerCore(String location) {
+        this.managerCore = location;
+        return this;
+    }
+
+    public ManagerBuilder managerCoreSha256(String sha256) {
+        this.managerCoreSha256 = sha256;
+        return this;
+    }
+
+    public ManagerBuilder pipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    /**
+     * Adds comma-separated config files, directories or globs, resolved against the working directory.
+     */
+    public ManagerBuilder addedConfigs(String sources) {
+        this.addedConfigs.add(sources);
+        return this;
+    }
+
+    public ManagerBuilder outputDir(Path outputDir) {
+        this.outputDir = outputDir;
+        return this;
+    }
+
+    public ManagerBuilder streaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    /**
+     * One of {@code auto}, {@code disk}, {@code memory} or {@code off-heap}.
+     */
+    public ManagerBuilder staging(String mode) {
+        this.stagingMode = mode;
+        return this;
+    }
+
+    public ManagerBuilder stagingDir(Path stagingDir) {
+        this.stagingDir = stagingDir;
+        return this;
+    }
+
+    public ManagerBuilder stagingMemoryThreshold(long bytes) {
+        this.stagingMemoryThreshold = bytes;
+        return this;
+    }
+
+    public ManagerBuilder threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Comma-separated {@code <glob>=<level>[:<strategy>]} rules.
+     */
+    public ManagerBuilder compression(String rules) {
+        this.compression = rules;
+        return this;
+    }
+
+    public ManagerBuilder minCompressionGain(int percent) {
+        this.minCompressionGain = percent;
+        return this;
+    }
+
+    public ManagerBuilder deltaBaseline(Path baseline) {
+        this.deltaBaseline = baseline;
+        return this;
+    }
+
+    /**
+     * Rebuilds the manager from this delta and the {@link #deltaBaseline(Path)} instead of building it from a core.
+     */
+    public ManagerBuilder applyDelta(Path delta) {
+        this.applyDelta = delta;
+        return this;
+    }
+
+    public ManagerBuilder maxMemory(long bytes) {
+        this.maxMemory = bytes;
+        return this;
+    }
+
+    public ManagerBuilder downloadConnections(int connections) {
+        this.downloadConnections = connections;
+        return this;
+    }
+
+    /**
+     * A properties file describing several managers to build from one read of the core.
+     */
+    public ManagerBuilder batch(Path descriptor) {
+        this.batch = descriptor;
+        return this;
+    }
+
+    public ManagerBuilder artifactStore(Path dir) {
+        this.artifactStore = dir;
+        return this;
+    }
+
+    public ManagerBuilder artifactStoreMaxSize(long bytes) {
+        this.artifactStoreMaxSize = bytes;
+        return this;
+    }
+
+    public ManagerBuilder cacheDir(Path dir) {
+        this.cacheDir = dir;
+        return this;
+    }
+
+    public ManagerBuilder cacheMaxSize(long bytes) {
+        this.cacheMaxSize = bytes;
+        return this;
+    }
+
+    /**
+     * Prints the report of the phases of the build once it is done.
+     */
+    public ManagerBuilder report(boolean report) {
+        this.report = report;
+        return this;
+    }
+
+    public ManagerBuilder reportFile(Path file) {
+        this.reportFile = file;
+        return this;
+    }
+
+    public ManagerBuilder jfr(Path file) {
+        this.jfr = file;
+        return this;
+    }
+
+    /**
+     * Builds a manager which only depends on its inputs, timestamped from {@code SOURCE_DATE_EPOCH} unless a
+     * {@link #sourceDateEpoch(long)} is given.
+     */
+    public ManagerBuilder reproducible(boolean reproducible) {
+        this.reproducible = reproducible;
+        return this;
+    }
+
+    /**
+     * Builds a reproducible manager whose entries have this timestamp.
+     */
+    public ManagerBuilder sourceDateEpoch(long epochSeconds) {
+        this.reproducible = true;
+        this.sourceDateEpoch = epochSeconds;
+        return this;
+    }
+
+    /**
+     * Builds the manager, or the managers of the batch.
+     *
+     * @throws ManagerToolException if the settings or inputs are invalid
+     * @throws IOException if the build fails
+     */
+    public ManagerResult build() throws ManagerToolException, IOException {
+        if (applyDelta != null) {
+            return applyDelta();
+        }
+        ManagerCreator creator = creator();
+        try {
+            return creator.createManager();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building the manager", e);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    boolean isApplyingDelta() {
+        return applyDelta != null;
+    }
+
+    /**
+     * Checks the settings, and resolves or downloads the inputs of the build.
+     */
+    ManagerCreator creator() throws ManagerToolException, IOException {
+        if (managerCore == null) {
+            throw new ManagerToolException("Missing required argument(s): [" + ManagerCreatorMain.MANAGER_CORE + "]");
+        }
+        checkSettings();
+        List<Path> addedConfigFiles = new ArrayList<>();
+        if (!addedConfigs.isEmpty()) {
+            // Resolved together, so that the same config given twice is added once and clashing names are found
+            String sources = String.join(",", addedConfigs);
+            addedConfigFiles.addAll(AddedConfigSources.resolve(null, sources, ManagerCreatorMain.ADDED_CONFIGS + "=" + sources));
+        }
+        checkDirectory(outputDir, ManagerCreatorMain.OUTPUT_DIR);
+        checkDirectory(stagingDir, ManagerCreatorMain.STAGING_DIR);
+        checkDirectory(artifactStore, ManagerCreatorMain.ARTIFACT_STORE);
+        checkDirectory(cacheDir, ManagerCreatorMain.CACHE_DIR);
+        checkNotDirectory(reportFile, ManagerCreatorMain.REPORT);
+        checkNotDirectory(jfr, ManagerCreatorMain.JFR);
+        if (deltaBaseline != null) {
+            checkFile(deltaBaseline, ManagerCreatorMain.DELTA_BASELINE);
+        }
+        List<ManagerVariant> variants = null;
+        if (batch != null) {
+            checkFile(batch, ManagerCreatorMain.BATCH);
+            variants = ManagerVariant.load(batch, ManagerCreatorMain.BATCH + "=" + batch);
+            if (addedConfigs.size() > 0 || outputDir != null) {
+                throw new ManagerToolException(ManagerCreatorMain.BATCH + " cannot be combined with " + ManagerCreatorMain.ADDED_CONFIGS + " or " + ManagerCreatorMain.OUTPUT_DIR);
+            }
+            if (deltaBaseline != null) {
+                throw new ManagerToolException(ManagerCreatorMain.BATCH + " cannot be combined with " + ManagerCreatorMain.DELTA_BASELINE);
+            }
+        }
+        if (pipelined && (!isUrl(managerCore) || batch != null || reproducible)) {
+            throw new ManagerToolException(ManagerCreatorMain.PIPELINED + " needs a " + ManagerCreatorMain.MANAGER_CORE + " URL, and cannot be combined with " + ManagerCreatorMain.BATCH + " or " + ManagerCreatorMain.REPRODUCIBLE);
+        }
+        CompressionPolicy compressionPolicy = CompressionPolicy.parse(compression, minCompressionGain, ManagerCreatorMain.COMPRESSION + "=" + compression);
+        ReproducibleOutput reproducibleOutput = null;
+        if (reproducible) {
+            reproducibleOutput = sourceDateEpoch != null ? new ReproducibleOutput(sourceDateEpoch) : ReproducibleOutput.fromEnvironment();
+        }
+
+        Path core = null;
+        boolean coreIsTemp = false;
+        PipelinedDownload pipeline = null;
+        FlightRecording recording = null;
+        boolean error = true;
+        try {
+            if (jfr != null) {
+                // Started before downloading, so that the recording covers the whole build
+                recording = FlightRecording.start(jfr);
+            }
+            BuildReport buildReport = new BuildReport(report, reportFile);
+            // Clear what crashed builds left behind, while this one runs. Only the first build of the JVM sweeps
+            // each directory, later ones return at once
+            Janitor.sweep(Paths.get(System.getProperty("java.io.tmpdir")));
+            if (stagingDir != null) {
+                Janitor.sweep(stagingDir);
+            }
+            if (pipelined) {
+                // Downloaded by the build itself
+                ManagerCoreCache cache = cacheDir == null ? null : new ManagerCoreCache(cacheDir, cacheMaxSize, new RangedDownloader(downloadConnections));
+                pipeline = new PipelinedDownload(new URL(managerCore), cache, managerCoreSha256);
+                coreIsTemp = cache == null;
+            } else if (isUrl(managerCore)) {
+                RangedDownloader downloader = new RangedDownloader(downloadConnections);
+                try (BuildReport.Phase phase = buildReport.start(BuildReport.DOWNLOAD)) {
+                    phase.target(managerCore);
+                    if (cacheDir != null) {
+                        core = new ManagerCoreCache(cacheDir, cacheMaxSize, downloader).get(new URL(managerCore));
+                    } else {
+                        core = download(managerCore, downloader);
+                        coreIsTemp = true;
+                    }
+                    long size = Files.size(core);
+                    phase.read(size).written(size).entries(1);
+                }
+            } else {
+                core = Paths.get(managerCore);
+                checkFile(core, ManagerCreatorMain.MANAGER_CORE);
+                if (!core.getFileName().toString().endsWith(".jar")) {
+                    throw new ManagerToolException(core + " does not appear to be a jar file");
+                }
+            }
+            if (core != null && managerCoreSha256 != null && !managerCoreSha256.equalsIgnoreCase(Digests.sha256(core))) {
+                throw new ManagerToolException("The SHA-256 of " + managerCore + " is not " + managerCoreSha256);
+            }
+
+            ManagerSettings settings = new ManagerSettings.Builder()
+                    .addedConfigFiles(addedConfigFiles)
+                    .managerCore(core, coreIsTemp)
+                    .pipeline(pipeline)
+                    .outputDir(outputDir)
+                    .streaming(streaming)
+                    .threads(threads)
+                    .maxMemory(maxMemory)
+                    .variants(variants)
+                    .artifactStore(artifactStore == null ? null : new ManagerArtifactStore(artifactStore, artifactStoreMaxSize))
+                    .report(buildReport)
+                    .recording(recording)
+                    .reproducible(reproducibleOutput)
+                    // A pipelined core is only staged if it turns out to be cached already, and its size is not known yet
+                    .staging(StagingArea.select(stagingMode, stagingDir, core, stagingMemoryThreshold))
+                    .compression(compressionPolicy)
+                    .deltaBaseline(deltaBaseline)
+                    .build();
+            ManagerCreator creator = new ManagerCreator(settings);
+            error = false;
+            return creator;
+        } catch (IOException | RuntimeException | ManagerToolException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            if (error && coreIsTemp && core != null) {
+                Files.delete(core);
+            }
+            if (error && recording != null) {
+                recording.stop();
+            }
+        }
+    }
+
+    /**
+     * Checks the settings which do not depend on the file system.
+     */
+    private void checkSettings() throws ManagerToolException {
+        if (managerCoreSha256 != null && !managerCoreSha256.matches("[0-9a-fA-F]{64}")) {
+            throw new ManagerToolException(ManagerCreatorMain.MANAGER_CORE_SHA256 + "=" + managerCoreSha256 + " is not a SHA-256 in hexadecimal");
+        }
+        if (!StagingArea.isMode(stagingMode)) {
+            throw new ManagerToolException(ManagerCreatorMain.STAGING + "=" + stagingMode + " is not one of " + StagingArea.AUTO + ", " + StagingArea.DISK + ", " + StagingArea.MEMORY + " or " + StagingArea.OFF_HEAP);
+        }
+        if (threads < 1 || downloadConnections < 1) {
+            throw new ManagerToolException("The numbers of threads and download connections have to be positive");
+        }
+        if (maxMemory <= 0 || stagingMemoryThreshold < 0 || artifactStoreMaxSize < 0 || cacheMaxSize < 0) {
+            throw new ManagerToolException("The maximum memory has to be positive, and the other sizes cannot be negative");
+        }
+        if (minCompressionGain < 0 || minCompressionGain > 100) {
+            throw new ManagerToolException("The minimum compression gain " + minCompressionGain + " is not a percentage between 0 and 100");
+        }
+        if (sourceDateEpoch != null && sourceDateEpoch < 0) {
+            throw new ManagerToolException(sourceDateEpoch + " is not a valid number of seconds since the epoch");
+        }
+    }
+
+    /**
+     * Rebuilds a manager from a delta, in the output directory or in the working directory.
+     */
+    private ManagerResult applyDelta() throws ManagerToolException, IOException {
+        if (deltaBaseline == null) {
+            throw new ManagerToolException(ManagerCreatorMain.APPLY_DELTA + " needs the " + ManagerCreatorMain.DELTA_BASELINE + " the delta was created against");
+        }
+        checkSettings();
+        checkFile(applyDelta, ManagerCreatorMain.APPLY_DELTA);
+        checkFile(deltaBaseline, ManagerCreatorMain.DELTA_BASELINE);
+        checkDirectory(outputDir, ManagerCreatorMain.OUTPUT_DIR);
+        checkNotDirectory(reportFile, ManagerCreatorMain.REPORT);
+        BuildReport buildReport = new BuildReport(report, reportFile);
+
+        Path output = Paths.get(ManagerCreator.MANAGER_JAR_NAME);
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+            output = outputDir.resolve(output);
+        }
+        Digests.Sidecars sidecars = new Digests.Sidecars();
+        boolean success = false;
+        try {
+            BufferPool pool = BufferPool.withMemory(maxMemory / 2);
+            ManagerDelta.apply(deltaBaseline, applyDelta, output, pool, buildReport, sidecars);
+            try {
+                // The added configs are not known, but the entries were checked against the index of the delta
+                ManagerVerifier.verify(output, null, threads, pool, buildReport);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(output);
+                throw e;
+            }
+            sidecars.write(output);
+            success = true;
+        } finally {
+            if (!success) {
+                buildReport.failed();
+            }
+            buildReport.finish();
+        }
+        System.out.println("Rebuilt the manager from " + applyDelta + " at " + output.toAbsolutePath());
+        return new ManagerResult(Collections.singletonList(output), Collections.singletonMap(output, sidecars), null);
+    }
+
+    private static void checkFile(Path path, String option) throws ManagerToolException {
+        if (!Files.exists(path)) {
+            throw new ManagerToolException("File at path specified by argument " + option + "=" + path + " does not exist");
+        } else if (Files.isDirectory(path)) {
+            throw new ManagerToolException("File at path specified by argument " + option + "=" + path + " is a directory");
+        }
+    }
+
+    private static void checkDirectory(Path path, String option) throws ManagerToolException {
+        if (path != null && Files.exists(path) && !Files.isDirectory(path)) {
+            throw new ManagerToolException(option + "=" + path + " already exists, but it is not a directory");
+        }
+    }
+
+    private static void checkNotDirectory(Path path, String option) throws ManagerToolException {
+        if (path != null && Files.isDirectory(path)) {
+            throw new ManagerToolException("File at path specified by argument " + option + "=" + path + " is a directory");
+        }
+    }
+
+    private static boolean isUrl(String location) {
+        return location.startsWith(HTTP) || location.startsWith(HTTPS);
+    }
+
+    private static Path download(String location, RangedDownloader downloader) throws IOException {
+        Path tmp = Files.createTempFile(Janitor.prefix(Janitor.DOWNLOAD_PREFIX), Janitor.DOWNLOAD_SUFFIX);
+        try {
+            downloader.download(new URL(location), tmp.getParent(), tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+}
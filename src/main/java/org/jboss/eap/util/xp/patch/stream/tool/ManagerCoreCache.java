@@ -0,0 +1,220 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Local cache of downloaded manager cores. Downloads are stored under the SHA-256 of their content, and an index
+ * entry per URL records the hash and size along with the {@code ETag} and {@code Last-Modified} headers, which are
+ * used to revalidate the cached copy with a conditional request. If the core changed, the body of that response
+ * becomes the new cached copy. A lock file per URL makes sure that concurrent
+ * invocations only download the same core once, and the least recently used cores are evicted once the cache
+ * grows beyond its maximum size.
+ */
+class ManagerCoreCache {
+    static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+    private static final String URL_KEY = "url";
+    private static final String SHA256_KEY = "sha256";
+    private static final String SIZE_KEY = "size";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "last-modified";
+    private static final String BLOB_SUFFIX = ".jar";
+
+    private final Path indexDir;
+    private final Path blobDir;
+    private final LruDirectory blobs;
+    private final RangedDownloader downloader;
+
+    ManagerCoreCache(Path cacheDir, long maxSize, RangedDownloader downloader) throws IOException {
+        this.indexDir = cacheDir.resolve("index");
+        this.blobDir = cacheDir.resolve("blobs");
+        this.blobs = new LruDirectory(blobDir, BLOB_SUFFIX, cacheDir.resolve("eviction.lock"), maxSize);
+        this.downloader = downloader;
+        Files.createDirectories(indexDir);
+        // Partial downloads are kept next to the blobs
+        Janitor.sweep(blobDir);
+    }
+
+    /**
+     * Returns the path of the cached copy of the core at the given URL, downloading or revalidating it first.
+     * The returned file belongs to the cache and must not be deleted by the caller.
+     */
+    Path get(URL url) throws IOException {
+        return get(url, (u, response, target) -> response == null ? downloader.download(u, blobDir, target) : RangedDownloader.save(response, target));
+    }
+
+    /**
+     * Like {@link #get(URL)}, but a core which has to be downloaded is fetched by the given function.
+     */
+    Path get(URL url, Fetch fetch) throws IOException {
+        String key = Digests.sha256(url.toString().getBytes(StandardCharsets.UTF_8));
+        Path indexFile = indexDir.resolve(key + ".properties");
+        Path lockFile = indexDir.resolve(key + ".lock");
+
+        Path result;
+        synchronized (LruDirectory.lockFor(lockFile)) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    result = getLocked(url, indexFile, fetch);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        blobs.evict();
+        return result;
+    }
+
+    private Path getLocked(URL url, Path indexFile, Fetch fetch) throws IOException {
+        Properties index = readIndex(indexFile);
+        Path cached = null;
+        if (index != null) {
+            cached = blobs.resolve(index.getProperty(SHA256_KEY));
+            if (!isComplete(cached, index)) {
+                Files.deleteIfExists(cached);
+                cached = null;
+                index = null;
+            }
+        }
+
+        URLConnection connection = url.openConnection();
+        if (index != null && connection instanceof HttpURLConnection) {
+            if (index.getProperty(ETAG_KEY) != null) {
+                connection.setRequestProperty("If-None-Match", index.getProperty(ETAG_KEY));
+            }
+            if (index.getProperty(LAST_MODIFIED_KEY) != null) {
+                connection.setRequestProperty("If-Modified-Since", index.getProperty(LAST_MODIFIED_KEY));
+            }
+        }
+
+        try {
+            if (cached != null && connection instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection) connection).getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    LruDirectory.touch(cached);
+                    return cached;
+                }
+                if (status == HttpURLConnection.HTTP_OK) {
+                    // The core changed, and this response already carries the new one
+                    return download(url, connection, indexFile, fetch);
+                }
+            }
+            return download(url, null, indexFile, fetch);
+        } catch (IOException e) {
+            if (cached == null) {
+                throw e;
+            }
+            System.err.println("Could not revalidate cached copy of " + url + ", using it anyway: " + e.getLocalizedMessage());
+            LruDirectory.touch(cached);
+            return cached;
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+    }
+
+    /**
+     * Blobs are only moved into place once complete, under the hash of their content, so one with the size
+     * recorded in the index is used without hashing it again.
+     */
+    private static boolean isComplete(Path blob, Properties index) throws IOException {
+        try {
+            String size = index.getProperty(SIZE_KEY);
+            return size == null ? Files.exists(blob) : Files.size(blob) == Long.parseLong(size);
+        } catch (NoSuchFileException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private Path download(URL url, URLConnection response, Path indexFile, Fetch fetch) throws IOException {
+        Path tmp = Files.createTempFile(blobDir, Janitor.prefix(Janitor.DOWNLOAD_PREFIX), Janitor.PARTIAL_SUFFIX);
+        try {
+            RangedDownloader.RemoteFile remote = fetch.fetch(url, response, tmp);
+            String sha256 = Digests.sha256(tmp);
+            Path blob = blobs.resolve(sha256);
+            if (Files.exists(blob)) {
+                // Same content is already cached for another URL
+                Files.delete(tmp);
+                LruDirectory.touch(blob);
+            } else {
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            Properties index = new Properties();
+            index.setProperty(URL_KEY, url.toString());
+            index.setProperty(SHA256_KEY, sha256);
+            index.setProperty(SIZE_KEY, Long.toString(Files.size(blob)));
+            if (remote.etag != null) {
+                index.setProperty(ETAG_KEY, remote.etag);
+            }
+            if (remote.lastModified != null) {
+                index.setProperty(LAST_MODIFIED_KEY, remote.lastModified);
+            }
+            Path indexTmp = Files.createTempFile(indexDir, "index", ".tmp");
+            try (OutputStream out = Files.newOutputStream(indexTmp)) {
+                index.store(out, null);
+            }
+            Files.move(indexTmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return blob;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Properties readIndex(Path indexFile) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        Properties index = new Properties();
+        try (InputStream in = Files.newInputStream(indexFile)) {
+            index.load(in);
+        }
+        return index.getProperty(SHA256_KEY) == null ? null : index;
+    }
+
+    /**
+     * Downloads a core to a file of the cache.
+     */
+    interface Fetch {
+        /**
+         * @param response a response for the core which has already arrived, whose body is to be read rather than
+         *                 requesting the core again, or {@code null}
+         */
+        RangedDownloader.RemoteFile fetch(URL url, URLConnection response, Path target) throws IOException;
+    }
+
+}
@@ -20,20 +20,43 @@ package org.jboss.eap.util.xp.patch.stream.tool;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -41,22 +64,67 @@ import java.util.zip.ZipOutputStream;
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 class ManagerCreator {
-    private static final String LAYERS_MANIFEST_KEY = "server-target-layers";
+    static final String LAYERS_MANIFEST_KEY = "server-target-layers";
+    static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    static final String ADDED_CONFIGS_DIR = "added-configs/";
+    static final String MANAGER_JAR_NAME = "jboss-eap-xp-manager.jar";
+    static final String DEFAULT_LAYERS = "microprofile";
+    static final long DEFAULT_MAX_MEMORY = Runtime.getRuntime().maxMemory() == Long.MAX_VALUE
+            ? 256L * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 4;
+
+    private static final long MIN_LARGE_ENTRY_SIZE = 64 * 1024;
 
     private final List<Path> addedConfigFiles;
-    private final Path managerCore;
+    private Path managerCore;
     private final boolean deleteCoreAtEnd;
     private final Path outputDir;
     private final Path outputManager;
+    private final boolean streaming;
+    private final int threads;
+    private final BufferPool bufferPool;
+    private final long largeEntrySize;
+    private final List<ManagerVariant> variants;
+    private final ManagerArtifactStore artifactStore;
+    private final BuildReport report;
+    private final FlightRecording recording;
+    private final ReproducibleOutput reproducible;
+    private final StagingArea staging;
+    private final PipelinedDownload pipeline;
+    private final CompressionPolicy compression;
+    private final Path deltaBaseline;
+    // The digests of the managers being written, computed as they are written
+    private final Map<Path, Digests.Sidecars> sidecars = new ConcurrentHashMap<>();
+    // The digests of the managers which passed the verification
+    private final Map<Path, Digests.Sidecars> verified = new ConcurrentHashMap<>();
+    private Path delta;
     private Path tmpDir;
+    private ConfigValidator validator;
 
-    ManagerCreator(List<Path> addedConfigFiles, Path managerCore, boolean deleteCoreAtEnd, Path outputDir) throws Exception {
-        this.addedConfigFiles = addedConfigFiles;
-        this.managerCore = managerCore;
-        this.deleteCoreAtEnd = deleteCoreAtEnd;
-        this.outputDir = outputDir;
+    ManagerCreator(ManagerSettings settings) throws IOException {
+        this.addedConfigFiles = settings.getAddedConfigFiles();
+        this.managerCore = settings.getManagerCore();
+        this.deleteCoreAtEnd = settings.isDeleteCoreAtEnd();
+        this.outputDir = settings.getOutputDir();
+        this.streaming = settings.isStreaming();
+        this.threads = settings.getThreads();
+        long maxMemory = settings.getMaxMemory();
+        // Half of the memory goes to the I/O buffers, and the other half to the entries compressed in parallel,
+        // each of which holds its uncompressed and compressed bytes while waiting to be written
+        this.bufferPool = BufferPool.withMemory(maxMemory / 2);
+        // Only decides where the entries are compressed: both ways write the same bytes, so that the manager
+        // does not depend on the memory and threads it is built with
+        this.largeEntrySize = Math.max(MIN_LARGE_ENTRY_SIZE, maxMemory / 2 / (ParallelEntryWriter.maxPending(threads) * 2L));
+        this.variants = settings.getVariants();
+        this.artifactStore = settings.getArtifactStore();
+        this.report = settings.getReport();
+        this.recording = settings.getRecording();
+        this.reproducible = settings.getReproducible();
+        this.staging = settings.getStaging();
+        this.pipeline = settings.getPipeline();
+        this.compression = settings.getCompression();
+        this.deltaBaseline = settings.getDeltaBaseline();
 
-        Path tmp = Paths.get("jboss-eap-xp-manager.jar");
+        Path tmp = Paths.get(MANAGER_JAR_NAME);
         if (outputDir != null) {
             Files.createDirectories(outputDir);
             tmp = outputDir.resolve(tmp);
@@ -64,66 +132,266 @@ class ManagerCreator {
         this.outputManager = tmp;
     }
 
-    void createManager() throws Exception {
+    ManagerResult createManager() throws Exception {
+        boolean success = false;
         try {
-            this.tmpDir = unzipManagerCore();
-            addManifestLayers();
-            copyConfigsToManager();
-            zipManager();
+            List<Path> configs = getAddedConfigFiles();
+            if (!configs.isEmpty()) {
+                // Runs alongside the unzipping of the core, which stops at the first invalid config found, and is
+                // waited for before the configs are packaged
+                validator = ConfigValidator.start(configs, threads, report);
+            }
+            if (pipeline != null && pipelineManager()) {
+                verifyManager(outputManager, addedConfigFiles);
+                if (artifactStore != null) {
+                    // Pipelined managers are always streamed
+                    store(ManagerArtifactStore.key(hashCore(), addedConfigFiles, true, reproducible, compression), outputManager);
+                }
+                createDelta();
+                success = true;
+                return result();
+            }
+            if (variants != null) {
+                createVariants();
+                success = true;
+                return result();
+            }
+            String storeKey = null;
+            if (artifactStore != null) {
+                storeKey = ManagerArtifactStore.key(hashCore(), addedConfigFiles, streaming, reproducible, compression);
+                if (restore(storeKey, outputManager)) {
+                    System.out.println("Reused previously built manager with the same inputs for " + outputManager.toAbsolutePath());
+                    verifyManager(outputManager, addedConfigFiles);
+                    createDelta();
+                    success = true;
+                    return result();
+                }
+            }
+            if (streaming) {
+                streamManager();
+            } else {
+                this.tmpDir = unzipManagerCore();
+                addManifestLayers();
+                copyConfigsToManager();
+                zipManager();
+            }
+            verifyManager(outputManager, addedConfigFiles);
+            if (storeKey != null) {
+                store(storeKey, outputManager);
+            }
+            createDelta();
+            success = true;
+            return result();
         } finally {
+            if (validator != null) {
+                validator.close();
+            }
             cleanup();
+            if (!success) {
+                report.failed();
+            }
+            report.finish();
+            if (recording != null) {
+                recording.stop();
+            }
         }
     }
 
-    private void cleanup() {
-        if (tmpDir != null) {
-            try {
-                Files.walkFileTree(tmpDir, new SimpleFileVisitor<Path>(){
-                    @Override
-                    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                        Files.delete(dir);
-                        return FileVisitResult.CONTINUE;
-                    }
+    /**
+     * Verifies a manager which has just been written or restored, and writes its digests next to it. A manager
+     * which fails the verification is deleted, so that it cannot be installed by mistake.
+     */
+    private void verifyManager(Path output, List<Path> configs) throws IOException {
+        Digests.Sidecars digests = sidecars.remove(output);
+        try {
+            ManagerVerifier.verify(output, configs, threads, bufferPool, report);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(output);
+            throw e;
+        }
+        // Not digested while it was written
+        if (digests == null) {
+            digests = Digests.Sidecars.of(output);
+        }
+        digests.write(output);
+        verified.put(output, digests);
+    }
 
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                        Files.delete(file);
-                        return FileVisitResult.CONTINUE;
-                    }
+    private ManagerResult result() {
+        return new ManagerResult(getOutputManagers(), verified, delta);
+    }
 
-                });
-            } catch (IOException e) {
-                System.err.println("Problems deleting" + tmpDir + " recursively: " + e.getLocalizedMessage());
+    /**
+     * Writes the delta from the baseline to the manager just built, next to the manager, if a baseline was given.
+     */
+    private void createDelta() throws IOException {
+        if (deltaBaseline != null) {
+            delta = outputManager.resolveSibling(ManagerDelta.DELTA_JAR_NAME);
+            ManagerDelta.create(deltaBaseline, outputManager, delta, bufferPool, report);
+        }
+    }
+
+    /**
+     * Uses a core unzipped earlier by {@link #unzipManagerCore()}, so that the later phases can be run on their own.
+     */
+    void useUnzippedCore(Path tmpDir) {
+        this.tmpDir = tmpDir;
+    }
+
+    Map<String, Long> getPhaseMillis() {
+        return report.phaseMillis();
+    }
+
+    List<Path> getOutputManagers() {
+        List<Path> outputs = new ArrayList<>();
+        if (variants == null) {
+            outputs.add(outputManager);
+        } else {
+            for (ManagerVariant variant : variants) {
+                outputs.add(variant.getOutputManager());
             }
         }
-        if (deleteCoreAtEnd) {
-            try {
-                Files.delete(managerCore);
-            } catch (IOException e) {
-                System.err.println("Problems deleting downloaded manager core from " + tmpDir + ": " + e.getLocalizedMessage());
+        return outputs;
+    }
+
+    /**
+     * The number of bytes of the core and added configs read by the build. Call it before the build, since a
+     * downloaded core is deleted at the end.
+     */
+    long getInputBytes() throws IOException {
+        long bytes = managerCore != null && Files.exists(managerCore) ? Files.size(managerCore) : 0;
+        for (Path config : getAddedConfigFiles()) {
+            bytes += Files.size(config);
+        }
+        return bytes;
+    }
+
+    /**
+     * The added configs of the manager, or of all the variants.
+     */
+    private List<Path> getAddedConfigFiles() {
+        List<Path> configs = new ArrayList<>();
+        if (addedConfigFiles != null) {
+            configs.addAll(addedConfigFiles);
+        }
+        if (variants != null) {
+            for (ManagerVariant variant : variants) {
+                configs.addAll(variant.getAddedConfigFiles());
             }
         }
+        return configs;
+    }
+
+    private void awaitValidation() throws IOException, InterruptedException {
+        if (validator != null) {
+            validator.await();
+        }
     }
 
+    private void checkValidation() throws IOException {
+        if (validator != null) {
+            validator.check();
+        }
+    }
+
+    private void cleanup() {
+        if (tmpDir == null && (!deleteCoreAtEnd || managerCore == null)) {
+            closeStaging();
+            return;
+        }
+        try (BuildReport.Phase phase = report.start(BuildReport.CLEANUP)) {
+            phase.target(tmpDir != null ? tmpDir : managerCore);
+            cleanup(phase);
+        }
+    }
+
+    private void cleanup(BuildReport.Phase phase) {
+        // Renamed out of the way and deleted in the background, so the build does not wait for the deletion
+        if (tmpDir != null && !staging.isMemory()) {
+            Janitor.discard(tmpDir);
+            phase.entries(1);
+        }
+        if (deleteCoreAtEnd && managerCore != null) {
+            Janitor.discard(managerCore);
+            phase.entries(1);
+        }
+        // An in-memory staging area drops all its files at once
+        closeStaging();
+    }
 
-    private Path unzipManagerCore() throws IOException {
-        Path tmpDir = Files.createTempDirectory("mp-manager");
-        byte[] buffer = new byte[1024];
+    private void closeStaging() {
+        try {
+            staging.close();
+        } catch (IOException e) {
+            System.err.println("Problems releasing the " + staging + " staging area: " + e.getLocalizedMessage());
+        }
+    }
+
+
+    Path unzipManagerCore() throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.UNZIP)) {
+            phase.target(managerCore).read(Files.size(managerCore));
+            return unzipManagerCore(phase);
+        }
+    }
+
+    private Path unzipManagerCore(BuildReport.Phase phase) throws IOException {
+        Path tmpDir = staging.createDirectory();
+        RawZipFile core;
+        try {
+            core = RawZipFile.open(managerCore);
+        } catch (RawZipFile.UnsupportedZipException e) {
+            unzipManagerCoreStream(tmpDir, phase);
+            return tmpDir;
+        }
+        try (RawZipFile in = core) {
+            for (RawZipFile.Entry entry : in.entries()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                checkValidation();
+                ToolEvents.Entry event = new ToolEvents.Entry();
+                Path path = tmpDir.resolve(entry.getName());
+                if (!Files.exists(path.getParent())) {
+                    Files.createDirectories(path.getParent());
+                }
+                long size;
+                try (SeekableByteChannel out = Files.newByteChannel(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    size = in.extract(entry, out, bufferPool);
+                }
+                phase.written(size).entries(1);
+                event.finish("unzip", entry.getName(), entry.compressedSize, size);
+            }
+        }
+        return tmpDir;
+    }
+
+    /**
+     * Fallback for {@link #unzipManagerCore()} used for cores which {@link RawZipFile} cannot read.
+     */
+    private void unzipManagerCoreStream(Path tmpDir, BuildReport.Phase phase) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
         try (ZipInputStream zin = new ZipInputStream(new BufferedInputStream(new FileInputStream(managerCore.toFile())))) {
             ZipEntry entry = zin.getNextEntry();
             while (entry != null) {
                 try {
                     if (!entry.isDirectory()) {
+                        checkValidation();
+                        ToolEvents.Entry event = new ToolEvents.Entry();
+                        long size = 0;
                         Path path = tmpDir.resolve(entry.getName());
                         if (!Files.exists(path.getParent())) {
                             Files.createDirectories(path.getParent());
                         }
-                        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path.toFile()))) {
+                        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
                             int len;
                             while ((len = zin.read(buffer)) > 0) {
                                 out.write(buffer, 0, len);
+                                size += len;
                             }
                         }
+                        phase.written(size).entries(1);
+                        event.finish("unzip", entry.getName(), entry.getCompressedSize(), size);
                     }
                 } finally {
                     zin.closeEntry();
@@ -131,30 +399,424 @@ class ManagerCreator {
                 }
             }
         }
+    }
 
-        return tmpDir;
+    /**
+     * Builds the manager from the core while it is downloaded. The manager is written next to the output, and only
+     * replaces it once the whole core has arrived and its checksum has been verified.
+     *
+     * @return {@code false} if the core was already cached, in which case it is built like a local core
+     */
+    private boolean pipelineManager() throws Exception {
+        Path partial = outputManager.resolveSibling(outputManager.getFileName() + ".part");
+        try {
+            try (BuildReport.Phase phase = report.start(BuildReport.DOWNLOAD)) {
+                phase.target(pipeline.getUrl());
+                managerCore = pipeline.download(core -> {
+                    try {
+                        writeManager(core, partial);
+                        return true;
+                    } catch (RawZipFile.UnsupportedZipException e) {
+                        System.err.println("Could not build the manager while " + pipeline.getUrl() + " downloads, it will be built once the download is complete: " + e.getLocalizedMessage());
+                        return false;
+                    }
+                });
+                long size = Files.size(managerCore);
+                phase.read(size).written(size).entries(1);
+            }
+            if (!pipeline.isBuilt()) {
+                return false;
+            }
+            Files.move(partial, outputManager, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            sidecars.put(outputManager, sidecars.remove(partial));
+            return true;
+        } finally {
+            sidecars.remove(partial);
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    /**
+     * Writes the manager from a core read as a stream, in the order of its entries followed by the added configs.
+     * The entries are copied without being decompressed, like {@link #streamManager()} does.
+     */
+    private void writeManager(InputStream core, Path output) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.STREAM)) {
+            phase.target(output);
+            // Entries which have to be held in memory are limited like the ones compressed in parallel
+            RawZipStream zin = new RawZipStream(new BufferedInputStream(core), largeEntrySize);
+            try (RawZipWriter writer = newWriter(output)) {
+                boolean manifest = false;
+                RawZipStream.Entry entry;
+                while ((entry = zin.next()) != null) {
+                    String name = entry.getName();
+                    if (name.endsWith("/")) {
+                        continue;
+                    }
+                    checkValidation();
+                    if (name.equals(MANIFEST_NAME)) {
+                        byte[] bytes = manifestBytes(new Manifest(inflate(entry, zin.readData())));
+                        writer.write(MANIFEST_NAME, bytes);
+                        phase.read(bytes.length).entries(1);
+                        manifest = true;
+                        continue;
+                    }
+                    ToolEvents.Entry event = new ToolEvents.Entry();
+                    writer.write(name, entry.getMethod(), entry.getCrc(), entry.getSize(), entry.getCompressedSize(), entry.getDosTime(), zin.data());
+                    phase.read(entry.getCompressedSize()).entries(1);
+                    event.finish("copy", name, entry.getCompressedSize(), entry.getSize());
+                }
+                if (!manifest) {
+                    writer.write(MANIFEST_NAME, manifestBytes(new Manifest()));
+                    phase.entries(1);
+                }
+                try {
+                    awaitValidation();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                if (addedConfigFiles != null) {
+                    for (Path path : addedConfigFiles) {
+                        byte[] bytes = Files.readAllBytes(path);
+                        writer.write(compression.compress(ADDED_CONFIGS_DIR + path.getFileName(), bytes, bytes.length,
+                                entryTime(System.currentTimeMillis()), report));
+                        phase.read(bytes.length).entries(1);
+                    }
+                }
+            }
+            phase.written(Files.size(output));
+        }
+    }
+
+    /**
+     * Copies the manager core straight into the output jar without staging anything on disk. The manifest is
+     * rewritten in memory and written first, followed by the remaining core entries and the added configs.
+     * Core entries are copied still compressed, so only the manifest and the added configs get deflated.
+     */
+    private void streamManager() throws Exception {
+        RawZipFile core;
+        try {
+            core = RawZipFile.open(managerCore);
+        } catch (RawZipFile.UnsupportedZipException e) {
+            System.err.println("Could not copy the entries of " + managerCore + " as is, they will be recompressed: " + e.getLocalizedMessage());
+            awaitValidation();
+            recompressManager(addedConfigFiles, outputManager);
+            return;
+        }
+        try (RawZipFile in = core) {
+            byte[] manifest;
+            try (BuildReport.Phase phase = report.start(BuildReport.MANIFEST)) {
+                manifest = readManifest(in);
+                phase.written(manifest.length).entries(1);
+            }
+            awaitValidation();
+            writeManager(in, manifest, addedConfigFiles, outputManager);
+        }
     }
 
-    private void addManifestLayers() throws Exception {
-        Path manifestPath = tmpDir.resolve("META-INF/MANIFEST.MF");
+    /**
+     * Builds every variant from a single read of the core. The central directory and the manifest are decoded
+     * once and shared by all the variants, which are written concurrently.
+     */
+    private void createVariants() throws Exception {
+        RawZipFile core;
+        try {
+            core = RawZipFile.open(managerCore);
+        } catch (RawZipFile.UnsupportedZipException e) {
+            System.err.println("Could not copy the entries of " + managerCore + " as is, they will be recompressed: " + e.getLocalizedMessage());
+            awaitValidation();
+            for (ManagerVariant variant : variants) {
+                Files.createDirectories(variant.getOutputManager().getParent());
+                recompressManager(variant.getAddedConfigFiles(), variant.getOutputManager());
+                verifyManager(variant.getOutputManager(), variant.getAddedConfigFiles());
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, variants.size()));
+        try (RawZipFile in = core) {
+            byte[] manifest;
+            try (BuildReport.Phase phase = report.start(BuildReport.MANIFEST)) {
+                manifest = readManifest(in);
+                phase.written(manifest.length).entries(1);
+            }
+            awaitValidation();
+            String coreSha256 = artifactStore == null ? null : hashCore();
+            List<Future<?>> futures = new ArrayList<>();
+            for (ManagerVariant variant : variants) {
+                futures.add(executor.submit(RequestOutput.forward(() -> {
+                    Path output = variant.getOutputManager();
+                    Files.createDirectories(output.getParent());
+                    String storeKey = null;
+                    if (artifactStore != null) {
+                        // Variants are always streamed from the shared core
+                        storeKey = ManagerArtifactStore.key(coreSha256, variant.getAddedConfigFiles(), true, reproducible, compression);
+                        if (restore(storeKey, output)) {
+                            System.out.println("Reused previously built " + variant.getName() + " manager for " + output.toAbsolutePath());
+                            verifyManager(output, variant.getAddedConfigFiles());
+                            return null;
+                        }
+                    }
+                    writeManager(in, manifest, variant.getAddedConfigFiles(), output);
+                    verifyManager(output, variant.getAddedConfigFiles());
+                    if (storeKey != null) {
+                        store(storeKey, output);
+                    }
+                    System.out.println("Created " + variant.getName() + " manager at " + output.toAbsolutePath());
+                    return null;
+                })));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String hashCore() throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.ARTIFACT_STORE)) {
+            phase.target(managerCore).read(Files.size(managerCore));
+            return Digests.sha256(managerCore);
+        }
+    }
+
+    private boolean restore(String storeKey, Path output) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.ARTIFACT_STORE)) {
+            phase.target(output);
+            Digests.Sidecars digests = artifactStore.restore(storeKey, output);
+            if (digests == null) {
+                return false;
+            }
+            sidecars.put(output, digests);
+            phase.read(Files.size(output)).written(Files.size(output)).entries(1);
+            return true;
+        }
+    }
+
+    private void store(String storeKey, Path output) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.ARTIFACT_STORE)) {
+            phase.target(output);
+            artifactStore.store(storeKey, output);
+            phase.read(Files.size(output)).entries(1);
+        }
+    }
+
+    private static byte[] readManifest(RawZipFile core) throws IOException {
+        RawZipFile.Entry manifestEntry = core.getEntry(MANIFEST_NAME);
+        Manifest manifest = manifestEntry == null ? new Manifest() : new Manifest(new ByteArrayInputStream(core.read(manifestEntry)));
+        return manifestBytes(manifest);
+    }
+
+    private static InputStream inflate(RawZipStream.Entry entry, byte[] data) {
+        InputStream in = new ByteArrayInputStream(data);
+        return entry.getMethod() == RawZipFile.DEFLATED ? new InflaterInputStream(in, new Inflater(true)) : in;
+    }
+
+    private static byte[] manifestBytes(Manifest manifest) throws IOException {
+        ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+        addLayers(manifest).write(manifestBytes);
+        return manifestBytes.toByteArray();
+    }
+
+    private void writeManager(RawZipFile core, byte[] manifest, List<Path> configs, Path output) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.STREAM)) {
+            phase.target(output);
+            try (RawZipWriter writer = newWriter(output)) {
+                writer.write(MANIFEST_NAME, manifest);
+                phase.read(manifest.length).entries(1);
+
+                for (Map.Entry<String, Object> item : orderEntries(core.entries(), RawZipFile.Entry::getName, configs).entrySet()) {
+                    ToolEvents.Entry event = new ToolEvents.Entry();
+                    if (item.getValue() instanceof Path) {
+                        byte[] bytes = Files.readAllBytes((Path) item.getValue());
+                        RawZipWriter.CompressedEntry compressed = compression.compress(item.getKey(), bytes, bytes.length,
+                                entryTime(System.currentTimeMillis()), report);
+                        writer.write(compressed);
+                        phase.read(bytes.length).entries(1);
+                        event.finish("compress", compressed.name, compressed.length, compressed.size);
+                    } else {
+                        RawZipFile.Entry entry = (RawZipFile.Entry) item.getValue();
+                        writer.copy(core, entry);
+                        phase.read(entry.compressedSize).entries(1);
+                        event.finish("copy", entry.getName(), entry.compressedSize, entry.size);
+                    }
+                }
+            }
+            phase.written(Files.size(output));
+        }
+    }
+
+    /**
+     * Fallback for {@link #streamManager()} used for cores which {@link RawZipFile} cannot read, where every
+     * entry is inflated and deflated again.
+     */
+    private void recompressManager(List<Path> configs, Path output) throws Exception {
+        try (BuildReport.Phase phase = report.start(BuildReport.STREAM)) {
+            phase.target(output).read(Files.size(managerCore));
+            if (configs != null) {
+                for (Path path : configs) {
+                    phase.read(Files.size(path));
+                }
+            }
+            recompressManager(configs, output, phase);
+            phase.written(Files.size(output));
+        }
+    }
+
+    private void recompressManager(List<Path> configs, Path output, BuildReport.Phase phase) throws Exception {
+        try (ZipFile core = new ZipFile(managerCore.toFile());
+             ZipOutputStream zos = new ZipOutputStream(openOutput(output))) {
+            Manifest manifest;
+            ZipEntry manifestEntry = core.getEntry(MANIFEST_NAME);
+            if (manifestEntry == null) {
+                manifest = new Manifest();
+            } else {
+                try (InputStream in = core.getInputStream(manifestEntry)) {
+                    manifest = new Manifest(in);
+                }
+            }
+            zos.putNextEntry(newZipEntry(MANIFEST_NAME));
+            addLayers(manifest).write(zos);
+            zos.closeEntry();
+            phase.entries(1);
+
+            byte[] buffer = new byte[8192];
+            for (Map.Entry<String, Object> item : orderEntries(Collections.list(core.entries()), ZipEntry::getName, configs).entrySet()) {
+                zos.putNextEntry(newZipEntry(item.getKey()));
+                if (item.getValue() instanceof Path) {
+                    Files.copy((Path) item.getValue(), zos);
+                } else {
+                    try (InputStream in = core.getInputStream((ZipEntry) item.getValue())) {
+                        int len;
+                        while ((len = in.read(buffer)) > 0) {
+                            zos.write(buffer, 0, len);
+                        }
+                    }
+                }
+                zos.closeEntry();
+                phase.entries(1);
+            }
+        }
+    }
+
+    /**
+     * Puts the files of the core other than the manifest and the added configs in the order in which they are
+     * written to the manager: the order of the core followed by the added configs, or sorted by name for a
+     * reproducible manager. The values are either core entries, or the paths of the added configs.
+     */
+    private <E> Map<String, Object> orderEntries(Iterable<E> coreEntries, Function<E, String> names, List<Path> configs) throws ZipException {
+        Map<String, Object> entries = reproducible != null ? new TreeMap<>(ReproducibleOutput.ENTRY_ORDER) : new LinkedHashMap<>();
+        for (E entry : coreEntries) {
+            String name = names.apply(entry);
+            if (!name.endsWith("/") && !name.equals(MANIFEST_NAME)) {
+                entries.put(name, entry);
+            }
+        }
+        if (configs != null) {
+            for (Path path : configs) {
+                String name = ADDED_CONFIGS_DIR + path.getFileName();
+                if (entries.put(name, path) != null) {
+                    throw new ZipException("duplicate entry: " + name);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private long entryTime(long time) {
+        return reproducible != null ? reproducible.getDosTime() : RawZipWriter.toDosTime(time);
+    }
+
+    private ZipEntry newZipEntry(String name) {
+        ZipEntry entry = new ZipEntry(name);
+        if (reproducible != null) {
+            entry.setTimeLocal(reproducible.getTime());
+        }
+        return entry;
+    }
+
+    /**
+     * Opens a new output file, replacing rather than overwriting any existing file, which may be a hard link
+     * into the artifact store.
+     */
+    private OutputStream openOutput(Path output) throws IOException {
+        FileChannel channel = openChannel(output);
+        Digests.Sidecars digests = new Digests.Sidecars();
+        sidecars.put(output, digests);
+        OutputStream digesting = new FilterOutputStream(Channels.newOutputStream(channel)) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                digests.update(ByteBuffer.wrap(b, off, len));
+                out.write(b, off, len);
+            }
+        };
+        return new BufferedOutputStream(digesting) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    // Durable before the build reports success, like the managers written by RawZipWriter
+                    flush();
+                    channel.force(true);
+                } finally {
+                    super.close();
+                }
+            }
+        };
+    }
+
+    private RawZipWriter newWriter(Path output) throws IOException {
+        Digests.Sidecars digests = new Digests.Sidecars();
+        sidecars.put(output, digests);
+        return new RawZipWriter(openChannel(output), reproducible, bufferPool).digest(digests);
+    }
+
+    static FileChannel openChannel(Path output) throws IOException {
+        Files.deleteIfExists(output);
+        return FileChannel.open(output, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static Manifest addLayers(Manifest manifest) {
+        if (manifest.getMainAttributes().getValue(LAYERS_MANIFEST_KEY) == null) {
+            manifest.getMainAttributes().putValue(LAYERS_MANIFEST_KEY, DEFAULT_LAYERS);
+        }
+        return manifest;
+    }
+
+    void addManifestLayers() throws Exception {
+        try (BuildReport.Phase phase = report.start(BuildReport.MANIFEST)) {
+            addManifestLayers(phase);
+        }
+    }
+
+    private void addManifestLayers(BuildReport.Phase phase) throws Exception {
+        Path manifestPath = tmpDir.resolve(MANIFEST_NAME);
         Manifest manifest = null;
         if (!Files.exists(manifestPath)) {
             Files.createDirectories(manifestPath.getParent());
             manifest = new Manifest();
         } else {
-            try (InputStream in = new BufferedInputStream(manifestPath.toUri().toURL().openStream())) {
+            phase.read(Files.size(manifestPath));
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(manifestPath))) {
                 manifest = new Manifest(in);
             }
             Files.delete(manifestPath);
         }
-        if (manifest.getMainAttributes().getValue(LAYERS_MANIFEST_KEY) == null) {
-            manifest.getMainAttributes().putValue(LAYERS_MANIFEST_KEY, "microprofile");
-        }
+        addLayers(manifest);
 
-        Files.createFile(manifestPath);
-        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(manifestPath.toFile()))) {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(manifestPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
             manifest.write(out);
         }
+        phase.written(Files.size(manifestPath)).entries(1);
     }
 
 
@@ -162,30 +824,79 @@ class ManagerCreator {
         if (addedConfigFiles == null) {
             return;
         }
+        awaitValidation();
+        try (BuildReport.Phase phase = report.start(BuildReport.COPY_CONFIGS)) {
+            copyConfigsToManager(phase);
+        }
+    }
+
+    private void copyConfigsToManager(BuildReport.Phase phase) throws Exception {
         Path configsDirectory = tmpDir.resolve("added-configs");
         if (!Files.exists(configsDirectory)) {
             Files.createDirectories(configsDirectory);
         }
 
         for (Path path : addedConfigFiles) {
-            Path target = configsDirectory.resolve(path.getFileName());
+            Path target = configsDirectory.resolve(path.getFileName().toString());
             Files.copy(path, target);
+            long size = Files.size(target);
+            phase.read(size).written(size).entries(1);
         }
    }
 
-    private void zipManager() throws Exception {
-        try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputManager.toFile())))) {
-            Files.walkFileTree(tmpDir, new SimpleFileVisitor<Path>(){
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Path targetFile = tmpDir.relativize(file);
-                    zos.putNextEntry(new ZipEntry(targetFile.toString()));
-                    byte[] bytes = Files.readAllBytes(file);
-                    zos.write(bytes, 0, bytes.length);
-                    zos.closeEntry();
-                    return FileVisitResult.CONTINUE;
-                }
-            });
+    void zipManager() throws Exception {
+        try (BuildReport.Phase phase = report.start(BuildReport.ZIP)) {
+            phase.target(outputManager);
+            zipManager(phase);
+            phase.written(Files.size(outputManager));
+        }
+    }
+
+    private void zipManager(BuildReport.Phase phase) throws Exception {
+        String separator = tmpDir.getFileSystem().getSeparator();
+        Map<String, Path> files = reproducible != null ? new TreeMap<>(ReproducibleOutput.ENTRY_ORDER) : new LinkedHashMap<>();
+        Files.walkFileTree(tmpDir, new SimpleFileVisitor<Path>(){
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // Zip entry names always use '/', whatever the platform
+                files.put(tmpDir.relativize(file).toString().replace(separator, "/"), file);
+                phase.read(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        try (RawZipWriter writer = newWriter(outputManager);
+             ParallelEntryWriter entryWriter = new ParallelEntryWriter(writer, threads)) {
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                String name = file.getKey();
+                long size = Files.size(file.getValue());
+                if (size > largeEntrySize) {
+                    // Too large to be held in memory while waiting for its turn, so compress it straight to the output
+                    entryWriter.writeInOrder(w -> {
+                        ToolEvents.Entry event = new ToolEvents.Entry();
+                        long dosTime = entryTime(Files.getLastModifiedTime(file.getValue()).toMillis());
+                        try (SeekableByteChannel in = Files.newByteChannel(file.getValue(), StandardOpenOption.READ)) {
+                            if (compression.shouldStore(name, in, size, report)) {
+                                event.finish("store", name, w.writeStored(name, in, dosTime), size);
+                            } else {
+                                event.finish("compress", name, w.writeDeflated(name, in, dosTime, () -> compression.newDeflater(name)), size);
+                            }
+                        }
+                    });
+                    phase.entries(1);
+                    continue;
+                }
+                entryWriter.submit(() -> {
+                    ToolEvents.Entry event = new ToolEvents.Entry();
+                    byte[] bytes = Files.readAllBytes(file.getValue());
+                    long dosTime = entryTime(Files.getLastModifiedTime(file.getValue()).toMillis());
+                    RawZipWriter.CompressedEntry entry = compression.compress(name, bytes, bytes.length, dosTime, report);
+                    event.finish(entry.method == RawZipFile.STORED ? "store" : "compress", name, entry.length, entry.size);
+                    return entry;
+                });
+                phase.entries(1);
+            }
+            entryWriter.flush();
         }
     }
 }
@@ -18,23 +18,9 @@
 
 package org.jboss.eap.util.xp.patch.stream.tool;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 /**
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
@@ -42,12 +28,31 @@ import java.util.Set;
 public class ManagerCreatorMain {
 
     static final String CREATE_CONFIG = "--create-config";
-    private static final String MANAGER_CORE = "--manager-core";
-    private static final String ADDED_CONFIGS = "--added-configs";
-    private static final String OUTPUT_DIR = "--output-dir";
-
-    private static final String HTTP = "http://";
-    private static final String HTTPS = "https://";
+    static final String MANAGER_CORE = "--manager-core";
+    static final String MANAGER_CORE_SHA256 = "--manager-core-sha256";
+    static final String PIPELINED = "--pipelined";
+    static final String ADDED_CONFIGS = "--added-configs";
+    static final String OUTPUT_DIR = "--output-dir";
+    static final String STREAMING = "--streaming";
+    static final String STAGING = "--staging";
+    static final String STAGING_DIR = "--staging-dir";
+    static final String STAGING_MEMORY_THRESHOLD = "--staging-memory-threshold";
+    static final String THREADS = "--threads";
+    static final String COMPRESSION = "--compression";
+    static final String DELTA_BASELINE = "--delta-baseline";
+    static final String APPLY_DELTA = "--apply-delta";
+    static final String MIN_COMPRESSION_GAIN = "--min-compression-gain";
+    static final String MAX_MEMORY = "--max-memory";
+    static final String DOWNLOAD_CONNECTIONS = "--download-connections";
+    static final String BATCH = "--batch";
+    static final String ARTIFACT_STORE = "--artifact-store";
+    static final String ARTIFACT_STORE_MAX_SIZE = "--artifact-store-max-size";
+    static final String CACHE_DIR = "--cache-dir";
+    static final String CACHE_MAX_SIZE = "--cache-max-size";
+    static final String DAEMON = "--daemon";
+    static final String REPORT = "--report";
+    static final String JFR = "--jfr";
+    static final String REPRODUCIBLE = "--reproducible";
 
 
     public static void main(String[] args) throws Exception {
@@ -57,119 +62,167 @@ public class ManagerCreatorMain {
         }
     }
 
-    private static ManagerCreator parse(String[] args) throws Exception {
-
-        List<Path> addedConfigFiles = new ArrayList<>();
-        Path managerCore = null;
-        boolean managerCoreIsTemp = false;
-        Path outputDir = null;
-
-        boolean error = true;
-        try {
-            Set<String> required = new HashSet<>(Arrays.asList(MANAGER_CORE));
-            final int argsLength = args.length;
-            for (int i = 0; i < argsLength; i++) {
-                final String arg = args[i];
-                try {
-                    if ("--help".equals(arg) || "-h".equals(arg) || "-H".equals(arg)) {
-                        usage();
-                        return null;
-                    } else if (arg.equals(CREATE_CONFIG)) {
-                        ConfigCreator.generate(args);
-                        return null;
-                    } else if (arg.startsWith(MANAGER_CORE)) {
-                        required.remove(MANAGER_CORE);
-                        String val = arg.substring(MANAGER_CORE.length() + 1);
-
-                        managerCore = downloadIfNeeded(val);
-                        if (managerCore != null) {
-                            managerCoreIsTemp = true;
-                        } else {
-                            managerCore = Paths.get(val);
-
-                            if (!Files.exists(managerCore)) {
-                                ToolLogger.fileDoesNotExist(arg);
-                                return null;
-                            } else if (Files.isDirectory(managerCore)) {
-                                ToolLogger.fileIsADirectory(arg);
-                                return null;
-                            } else if (!managerCore.getFileName().toString().endsWith(".jar")) {
-                                System.err.println(managerCore + " does not appear to be a jar file");
-                                usage();
-                                return null;
-                            }
-                        }
-                    } else if (arg.startsWith(ADDED_CONFIGS)) {
-                        String val = arg.substring(ADDED_CONFIGS.length() + 1);
-                        String[] parts = val.split(",");
-                        for (String part : parts) {
-                            Path path = Paths.get(part);
-                            if (!Files.exists(path)) {
-                                ToolLogger.fileInListArgDoesNotExist(path.toString(), arg);
-                                return null;
-                            }
-                            if (!Files.exists(path)) {
-                                ToolLogger.fileInListArgIsNotAFile(path.toString(), arg);
-                                return null;
-                            }
-                            addedConfigFiles.add(path);
-                        }
-                    } else if (arg.startsWith(OUTPUT_DIR)) {
-                        String val = arg.substring(OUTPUT_DIR.length() + 1);
-                        outputDir = Paths.get(val);
-                        if (Files.exists(outputDir) && !Files.isDirectory(outputDir)) {
-                            System.err.println(arg + " already exists, but it is not a directory");
+    static ManagerCreator parse(String[] args) throws Exception {
+        ManagerBuilder builder = new ManagerBuilder();
+        final int argsLength = args.length;
+        for (int i = 0; i < argsLength; i++) {
+            final String arg = args[i];
+            try {
+                if ("--help".equals(arg) || "-h".equals(arg) || "-H".equals(arg)) {
+                    usage();
+                    return null;
+                } else if (arg.equals(CREATE_CONFIG)) {
+                    ConfigCreator.generate(args);
+                    return null;
+                } else if (arg.equals(DAEMON) || arg.startsWith(DAEMON + "=")) {
+                    int port = ManagerDaemon.DEFAULT_PORT;
+                    if (arg.startsWith(DAEMON + "=")) {
+                        try {
+                            port = Integer.parseInt(arg.substring(DAEMON.length() + 1));
+                        } catch (NumberFormatException e) {
+                            System.err.println(arg + " is not a valid port");
                             usage();
                             return null;
                         }
-                    } else {
-                        System.err.println("Unknown argument: " + arg);
+                    }
+                    new ManagerDaemon(port).run();
+                    return null;
+                } else if (arg.startsWith(MANAGER_CORE_SHA256)) {
+                    builder.managerCoreSha256(arg.substring(MANAGER_CORE_SHA256.length() + 1));
+                } else if (arg.equals(PIPELINED)) {
+                    builder.pipelined(true);
+                } else if (arg.startsWith(MANAGER_CORE)) {
+                    builder.managerCore(arg.substring(MANAGER_CORE.length() + 1));
+                } else if (arg.startsWith(ADDED_CONFIGS)) {
+                    builder.addedConfigs(arg.substring(ADDED_CONFIGS.length() + 1));
+                } else if (arg.startsWith(OUTPUT_DIR)) {
+                    builder.outputDir(Paths.get(arg.substring(OUTPUT_DIR.length() + 1)));
+                } else if (arg.equals(REPORT)) {
+                    builder.report(true);
+                } else if (arg.startsWith(REPORT + "=")) {
+                    builder.reportFile(Paths.get(arg.substring(REPORT.length() + 1)));
+                } else if (arg.startsWith(JFR)) {
+                    builder.jfr(Paths.get(arg.substring(JFR.length() + 1)));
+                } else if (arg.equals(REPRODUCIBLE)) {
+                    builder.reproducible(true);
+                } else if (arg.equals(STREAMING)) {
+                    builder.streaming(true);
+                } else if (arg.startsWith(STAGING_DIR)) {
+                    builder.stagingDir(Paths.get(arg.substring(STAGING_DIR.length() + 1)));
+                } else if (arg.startsWith(STAGING_MEMORY_THRESHOLD)) {
+                    long threshold = parseMegabytes(arg.substring(STAGING_MEMORY_THRESHOLD.length() + 1));
+                    if (threshold < 0) {
+                        System.err.println(arg + " is not a valid size in megabytes");
+                        usage();
+                        return null;
+                    }
+                    builder.stagingMemoryThreshold(threshold);
+                } else if (arg.startsWith(STAGING + "=")) {
+                    builder.staging(arg.substring(STAGING.length() + 1));
+                } else if (arg.startsWith(ARTIFACT_STORE_MAX_SIZE)) {
+                    long maxSize = parseMegabytes(arg.substring(ARTIFACT_STORE_MAX_SIZE.length() + 1));
+                    if (maxSize < 0) {
+                        System.err.println(arg + " is not a valid size in megabytes");
                         usage();
                         return null;
                     }
-                } catch (IndexOutOfBoundsException e) {
-                    ToolLogger.argumentExpected(arg);
+                    builder.artifactStoreMaxSize(maxSize);
+                } else if (arg.startsWith(ARTIFACT_STORE)) {
+                    builder.artifactStore(Paths.get(arg.substring(ARTIFACT_STORE.length() + 1)));
+                } else if (arg.startsWith(CACHE_DIR)) {
+                    builder.cacheDir(Paths.get(arg.substring(CACHE_DIR.length() + 1)));
+                } else if (arg.startsWith(CACHE_MAX_SIZE)) {
+                    long maxSize = parseMegabytes(arg.substring(CACHE_MAX_SIZE.length() + 1));
+                    if (maxSize < 0) {
+                        System.err.println(arg + " is not a valid size in megabytes");
+                        usage();
+                        return null;
+                    }
+                    builder.cacheMaxSize(maxSize);
+                } else if (arg.startsWith(BATCH)) {
+                    builder.batch(Paths.get(arg.substring(BATCH.length() + 1)));
+                } else if (arg.startsWith(MAX_MEMORY)) {
+                    long maxMemory = parseMegabytes(arg.substring(MAX_MEMORY.length() + 1));
+                    if (maxMemory <= 0) {
+                        System.err.println(arg + " is not a valid size in megabytes");
+                        usage();
+                        return null;
+                    }
+                    builder.maxMemory(maxMemory);
+                } else if (arg.startsWith(DOWNLOAD_CONNECTIONS)) {
+                    int connections = parseNumber(arg.substring(DOWNLOAD_CONNECTIONS.length() + 1));
+                    if (connections < 1) {
+                        System.err.println(arg + " is not a positive number of connections");
+                        usage();
+                        return null;
+                    }
+                    builder.downloadConnections(connections);
+                } else if (arg.startsWith(DELTA_BASELINE)) {
+                    builder.deltaBaseline(Paths.get(arg.substring(DELTA_BASELINE.length() + 1)));
+                } else if (arg.startsWith(APPLY_DELTA)) {
+                    builder.applyDelta(Paths.get(arg.substring(APPLY_DELTA.length() + 1)));
+                } else if (arg.startsWith(COMPRESSION)) {
+                    builder.compression(arg.substring(COMPRESSION.length() + 1));
+                } else if (arg.startsWith(MIN_COMPRESSION_GAIN)) {
+                    int minGain = parseNumber(arg.substring(MIN_COMPRESSION_GAIN.length() + 1));
+                    if (minGain < 0 || minGain > 100) {
+                        System.err.println(arg + " is not a percentage between 0 and 100");
+                        usage();
+                        return null;
+                    }
+                    builder.minCompressionGain(minGain);
+                } else if (arg.startsWith(THREADS)) {
+                    int threads = parseNumber(arg.substring(THREADS.length() + 1));
+                    if (threads < 1) {
+                        System.err.println(arg + " is not a positive number of threads");
+                        usage();
+                        return null;
+                    }
+                    builder.threads(threads);
+                } else {
+                    System.err.println("Unknown argument: " + arg);
                     usage();
                     return null;
                 }
-            }
-
-            if (required.size() != 0) {
-                ToolLogger.missingRequiredArgs(required);
+            } catch (IndexOutOfBoundsException e) {
+                ToolLogger.argumentExpected(arg);
                 usage();
                 return null;
             }
-            error = false;
-        } finally {
-            if (error && managerCoreIsTemp) {
-                Files.delete(managerCore);
-            }
         }
 
-        return new ManagerCreator(addedConfigFiles, managerCore, managerCoreIsTemp, outputDir);
-    }
-
-    private static Path downloadIfNeeded(String location) throws IOException {
-        if (!location.startsWith(HTTP) && !location.startsWith(HTTPS)) {
+        try {
+            if (builder.isApplyingDelta()) {
+                // Rebuilds a manager instead of building one from a core
+                builder.build();
+                return null;
+            }
+            return builder.creator();
+        } catch (ManagerToolException e) {
+            System.err.println(e.getMessage());
+            usage();
             return null;
         }
+    }
 
-        URL url = new URL(location);
-        URLConnection connection = url.openConnection();
-
-        Path tmp = Files.createTempFile("jboss-eap-xp-manager", ".jar");
-        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp.toFile()))) {
-            byte[] buffer = new byte[1024];
-            try (InputStream in = new BufferedInputStream(connection.getInputStream())) {
-                int len = in.read(buffer, 0, buffer.length);
-                while (len != -1) {
-                    out.write(buffer, 0, len);
-                    len = in.read(buffer, 0, buffer.length);
-                }
-            }
+    private static long parseMegabytes(String val) {
+        try {
+            long megabytes = Long.parseLong(val);
+            return megabytes < 0 ? -1 : megabytes * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            return -1;
         }
+    }
 
-        return tmp;
+    /**
+     * @return the number, or {@code -1} if it is not one
+     */
+    private static int parseNumber(String val) {
+        try {
+            return Integer.parseInt(val);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
 
@@ -177,8 +230,8 @@ public class ManagerCreatorMain {
 
         Usage usage = new Usage();
 
-        usage.addArguments(ADDED_CONFIGS + "=<directory>");
-        usage.addInstruction("Comma-separated list of file system paths to server configuration files that should be included in the manager");
+        usage.addArguments(ADDED_CONFIGS + "=<sources>");
+        usage.addInstruction("Comma-separated list of server configuration files that should be included in the manager. A source can also be a directory, whose .xml files are all included, or a glob such as configs/**/standalone-*.xml. Identical files with the same name are only included once");
 
         usage.addArguments("-h", "--help");
         usage.addInstruction("Display this message and exit");
@@ -186,11 +239,77 @@ public class ManagerCreatorMain {
         usage.addArguments(MANAGER_CORE + "=<file>");
         usage.addInstruction("Filesystem path of the mp-expansion-pack-core jar");
 
+        usage.addArguments(MANAGER_CORE_SHA256 + "=<sha256>");
+        usage.addInstruction("SHA-256 which the manager core has to have, in hexadecimal. The build fails if it does not match");
+
+        usage.addArguments(PIPELINED);
+        usage.addInstruction("Build the manager while the " + MANAGER_CORE + " URL is downloading, from the bytes received so far. The manager only replaces the output once the whole core has arrived and matches its " + MANAGER_CORE_SHA256 + " if one is given. Cannot be combined with " + BATCH + " or " + REPRODUCIBLE);
+
         usage.addArguments(OUTPUT_DIR + "=<file>");
         usage.addInstruction("Filesystem path of a directory to output the created manager. The resulting jar will be called jboss-eap-xp-manager.jar");
 
-        usage.addArguments(CREATE_CONFIG);
-        usage.addInstruction("If passed in the other parameters will be ignored, and a patch config xml will be created.");
+        usage.addArguments(STREAMING);
+        usage.addInstruction("Build the manager directly from the manager core jar in a single pass, without unzipping it to a temporary directory first. Unchanged core entries are copied without being recompressed");
+
+        usage.addArguments(STAGING + "=<auto|disk|memory|off-heap>");
+        usage.addInstruction("Where the manager core is unzipped when not using " + STREAMING + ". 'disk' uses a temporary directory, 'memory' keeps the unzipped core in the heap, and 'off-heap' in direct buffers outside of it, which the heap size does not limit. Defaults to 'auto', which stages cores up to " + STAGING_MEMORY_THRESHOLD + " in memory and larger ones on disk");
+
+        usage.addArguments(STAGING_DIR + "=<directory>");
+        usage.addInstruction("Directory in which the manager core is unzipped when it is staged on disk, for example a tmpfs mount. Defaults to the system temporary directory");
+
+        usage.addArguments(STAGING_MEMORY_THRESHOLD + "=<megabytes>");
+        usage.addInstruction("Size of the unzipped entries of the largest manager core staged in memory in the 'auto' " + STAGING + " mode. Defaults to " + StagingArea.DEFAULT_MEMORY_THRESHOLD / 1024 / 1024);
+
+        usage.addArguments(DELTA_BASELINE + "=<file>");
+        usage.addInstruction("A previous manager. The entries which differ from it, by CRC and size, are also written to " + ManagerDelta.DELTA_JAR_NAME + " next to the manager, from which " + APPLY_DELTA + " rebuilds the manager where the previous one is available. Cannot be combined with " + BATCH);
+
+        usage.addArguments(APPLY_DELTA + "=<file>");
+        usage.addInstruction("Rebuild a manager from a " + ManagerDelta.DELTA_JAR_NAME + " and the " + DELTA_BASELINE + " it was created against, instead of building one from a " + MANAGER_CORE + ". The manager is written to the " + OUTPUT_DIR + " or the current directory");
+
+        usage.addArguments(REPRODUCIBLE);
+        usage.addInstruction("Build a manager whose content only depends on the inputs, by sorting the entries and giving them all the same timestamp and attributes. The timestamp is taken from the " + ReproducibleOutput.SOURCE_DATE_EPOCH + " environment variable if it is set");
+
+        usage.addArguments(BATCH + "=<file>");
+        usage.addInstruction("Properties file describing several managers to build from a single read of the manager core. It lists the names of the managers in 'variants', and the '<name>.added-configs' and '<name>.output-dir' of each manager. Cannot be combined with " + ADDED_CONFIGS + " or " + OUTPUT_DIR);
+
+        usage.addArguments(ARTIFACT_STORE + "=<directory>");
+        usage.addInstruction("Directory storing the managers built so far. If a manager with the same core, added configs and tool version was built before, it is reused instead of being built again");
+
+        usage.addArguments(ARTIFACT_STORE_MAX_SIZE + "=<megabytes>");
+        usage.addInstruction("Maximum size of the " + ARTIFACT_STORE + " directory, beyond which the least recently used managers are removed. Defaults to 2048");
+
+        usage.addArguments(CACHE_DIR + "=<directory>");
+        usage.addInstruction("Directory used to cache manager cores downloaded from a URL. Cached cores are revalidated with the server, and only downloaded again if they changed");
+
+        usage.addArguments(CACHE_MAX_SIZE + "=<megabytes>");
+        usage.addInstruction("Maximum size of the " + CACHE_DIR + " directory, beyond which the least recently used cores are removed. Defaults to 1024");
+
+        usage.addArguments(DOWNLOAD_CONNECTIONS + "=<count>");
+        usage.addInstruction("Number of concurrent connections used to download the manager core from servers supporting range requests. Defaults to 4");
+
+        usage.addArguments(THREADS + "=<count>");
+        usage.addInstruction("Number of threads used to compress the entries of the manager. Defaults to the number of available processors");
+
+        usage.addArguments(REPORT + "[=<file>]");
+        usage.addInstruction("Print the time, bytes read and written and number of entries of each phase of the build once it is done. If a file is given, the report is also written to it as JSON");
+
+        usage.addArguments(JFR + "=<file>");
+        usage.addInstruction("Record the build with Java Flight Recorder, and write the recording to the file once the build is done, for analysis in JDK Mission Control");
+
+        usage.addArguments(COMPRESSION + "=<rules>");
+        usage.addInstruction("Comma-separated list of <glob>=<level>[:<strategy>] rules setting how the entries of the manager are deflated. The first rule matching an entry applies. A glob without '/' matches the file name of the entry, for example *.xml=9:filtered, and the level 'store' or 0 stores the entries without compressing them. The strategy is one of default, filtered or huffman. Entries copied from the core when using " + STREAMING + " are not compressed again");
+
+        usage.addArguments(MIN_COMPRESSION_GAIN + "=<percent>");
+        usage.addInstruction("Entries whose first " + CompressionPolicy.SAMPLE_SIZE / 1024 + "KB shrink by less than this percentage when deflated, such as nested jars and images, are stored without compression. Defaults to " + CompressionPolicy.DEFAULT_MIN_GAIN_PERCENT);
+
+        usage.addArguments(MAX_MEMORY + "=<megabytes>");
+        usage.addInstruction("Memory the build may use for its I/O buffers and for the entries compressed in parallel. Entries too large to fit are compressed one at a time, straight to the manager. Defaults to a quarter of the maximum heap size");
+
+        usage.addArguments(DAEMON + "[=<port>]");
+        usage.addInstruction("If passed in the other parameters will be ignored, and the tool keeps running and accepts builds POSTed to http://localhost:<port>/build, with the same parameters as this command one per line. The port defaults to " + ManagerDaemon.DEFAULT_PORT + ". Requests must send the token which the daemon writes to " + ManagerDaemon.tokenFile(ManagerDaemon.DEFAULT_PORT).getParent() + "/daemon-<port>.token, readable only by the user running it, as an 'Authorization: Bearer <token>' header");
+
+        usage.addArguments(CREATE_CONFIG + " <versions> [<output-dir>]");
+        usage.addInstruction("If passed in the other parameters will be ignored, and a patch config xml will be created for each of the comma-separated versions. Ranges of versions such as 2.0.0.GA..2.0.15.GA include all the micro versions between both ends.");
 
         String headline = usage.getDefaultUsageHeadline(getJavaCommand());
         System.out.print(usage.usage(headline));
@@ -0,0 +1,351 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keeps a JVM running and accepts build requests on a localhost HTTP port, so that scripts running many builds
+ * do not pay for JVM startup each time. A {@code POST} to {@code /build} takes the same arguments as
+ * {@link ManagerCreatorMain}, one per line, and responds with the output of the build. Relative paths are
+ * resolved against the working directory of the daemon. {@code GET /stats} returns the counters which are also
+ * available through JMX. Options which act on the whole JVM, such as {@code --daemon} or {@code --jfr}, are refused.
+ * <p>
+ * As any local user can connect to the port, every request must carry an {@code Authorization: Bearer <token>}
+ * header. The token is generated when the daemon starts and written to a file which only the user running the
+ * daemon can read, see {@link #tokenFile(int)}. The file is deleted when the daemon stops.
+ */
+class ManagerDaemon {
+    static final int DEFAULT_PORT = 9797;
+
+    private static final int QUEUE_SIZE = 64;
+    private static final int TOKEN_BYTES = 32;
+    private static final String TOKEN_DIR = ".jboss-eap-xp-manager-tool";
+    private static final String BEARER = "Bearer ";
+
+    private final int port;
+    private final byte[] token;
+    private final BuildStats stats = new BuildStats();
+    private final ThreadPoolExecutor builds;
+    private HttpServer server;
+    private ExecutorService httpExecutor;
+    private Path tokenFile;
+    private PrintStream console;
+    private PrintStream consoleErr;
+
+    ManagerDaemon(int port) {
+        this.port = port;
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        this.token = Digests.toHex(random).getBytes(StandardCharsets.US_ASCII);
+        int workers = Runtime.getRuntime().availableProcessors();
+        this.builds = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE));
+    }
+
+    void run() throws Exception {
+        start();
+        System.out.println("Listening for build requests on http://" + server.getAddress().getHostString() + ":" + getPort() + "/build");
+        System.out.println("Requests must send the token in " + tokenFile.toAbsolutePath() + " as an 'Authorization: Bearer <token>' header");
+        CountDownLatch shutdown = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop();
+            shutdown.countDown();
+        }));
+        shutdown.await();
+    }
+
+    /**
+     * Starts serving requests and returns. {@link #run()} does this and then waits until the JVM exits.
+     */
+    void start() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService httpExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(httpExecutor);
+        server.createContext("/build", exchange -> {
+            if (authorized(exchange)) {
+                build(exchange);
+            }
+        });
+        server.createContext("/stats", exchange -> {
+            if (authorized(exchange)) {
+                respond(exchange, 200, stats.toString());
+            }
+        });
+        Path tokenFile = tokenFile(server.getAddress().getPort());
+        try {
+            writeToken(tokenFile);
+        } catch (IOException e) {
+            server.stop(0);
+            httpExecutor.shutdown();
+            throw e;
+        }
+        ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(BuildStats.OBJECT_NAME));
+        this.server = server;
+        this.httpExecutor = httpExecutor;
+        this.tokenFile = tokenFile;
+
+        console = System.out;
+        consoleErr = System.err;
+        System.setOut(new PrintStream(RequestOutput.routing(console), true));
+        System.setErr(new PrintStream(RequestOutput.routing(consoleErr), true));
+        server.start();
+    }
+
+    /**
+     * Stops serving requests, deletes the token file and gives the console back its streams.
+     */
+    void stop() {
+        server.stop(0);
+        httpExecutor.shutdown();
+        builds.shutdown();
+        System.setOut(console);
+        System.setErr(consoleErr);
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + tokenFile + ": " + e.getLocalizedMessage());
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(BuildStats.OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Could not unregister " + BuildStats.OBJECT_NAME + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    Path getTokenFile() {
+        return tokenFile;
+    }
+
+    /**
+     * The file holding the token of the daemon listening on the given port, in the user's home directory.
+     */
+    static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), TOKEN_DIR, "daemon-" + port + ".token");
+    }
+
+    /**
+     * Writes the token to a file only readable by its owner. The file is written in full under another name
+     * before being moved into place, so that it is never visible with wider permissions or partly written.
+     */
+    private void writeToken(Path tokenFile) throws IOException {
+        Path dir = tokenFile.getParent();
+        boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (posix) {
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(dir);
+        }
+        // Temporary files are only accessible by their owner
+        Path tmp = Files.createTempFile(dir, tokenFile.getFileName().toString(), ".tmp");
+        try {
+            if (posix) {
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+            }
+            Files.write(tmp, token);
+            Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) throws IOException {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header != null && header.startsWith(BEARER)
+                && MessageDigest.isEqual(token, header.substring(BEARER.length()).trim().getBytes(StandardCharsets.US_ASCII))) {
+            return true;
+        }
+        exchange.getRequestBody().close();
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        respond(exchange, 401, "Missing or wrong daemon token\n");
+        return false;
+    }
+
+    private void build(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "Use POST with one argument per line\n");
+            return;
+        }
+        String[] args = readArgs(exchange.getRequestBody());
+        String refused = processWideOption(args);
+        if (refused != null) {
+            respond(exchange, 400, refused + " applies to the whole daemon process and cannot be used in a build request\n");
+            return;
+        }
+
+        Future<BuildResult> future;
+        try {
+            future = builds.submit(() -> build(args));
+        } catch (RejectedExecutionException e) {
+            stats.requestRejected();
+            respond(exchange, 503, "Too many pending build requests\n");
+            return;
+        }
+        BuildResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = new BuildResult(503, "Interrupted\n");
+        } catch (ExecutionException e) {
+            result = new BuildResult(500, e.getCause().toString());
+        }
+        respond(exchange, result.status, result.output);
+    }
+
+    private BuildResult build(String[] args) {
+        stats.requestStarted();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestOutput.begin(output);
+        int status = 500;
+        Exception failure = null;
+        try {
+            long start = System.currentTimeMillis();
+            if (Arrays.asList(args).contains(ManagerCreatorMain.CREATE_CONFIG)) {
+                List<Path> configs = ConfigCreator.generate(args);
+                stats.built(System.currentTimeMillis() - start);
+                if (configs != null) {
+                    long out = 0;
+                    for (Path config : configs) {
+                        out += Files.size(config);
+                    }
+                    stats.addBytes(0, out);
+                }
+                status = configs == null ? 400 : 200;
+            } else {
+                ManagerCreator creator = ManagerCreatorMain.parse(args);
+                long parsed = System.currentTimeMillis();
+                stats.parsed(parsed - start);
+                if (creator != null) {
+                    long in = creator.getInputBytes();
+                    try {
+                        creator.createManager();
+                    } finally {
+                        stats.phases(creator.getPhaseMillis());
+                    }
+                    stats.built(System.currentTimeMillis() - parsed);
+                    long out = 0;
+                    for (Path manager : creator.getOutputManagers()) {
+                        out += Files.size(manager);
+                    }
+                    stats.addBytes(in, out);
+                }
+                status = creator == null ? 400 : 200;
+            }
+        } catch (Exception e) {
+            failure = e;
+            // The client gets the whole trace, as it would from the command line
+            PrintStream response = new PrintStream(output, true, StandardCharsets.UTF_8);
+            synchronized (output) {
+                e.printStackTrace(response);
+            }
+        } finally {
+            RequestOutput.end();
+            stats.requestFinished(status != 200);
+        }
+        if (failure != null) {
+            ToolLogger.buildRequestFailed(args, failure);
+        }
+        return new BuildResult(status, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the first argument which would act on the daemon's JVM rather than on one build: starting another
+     * daemon, printing the usage to the daemon's console, or starting a JVM-wide flight recording.
+     */
+    static String processWideOption(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--help") || arg.equals("-h") || arg.equals("-H")
+                    || arg.equals(ManagerCreatorMain.DAEMON) || arg.startsWith(ManagerCreatorMain.DAEMON + "=")
+                    || arg.startsWith(ManagerCreatorMain.JFR)) {
+                return arg;
+            }
+        }
+        return null;
+    }
+
+    private static String[] readArgs(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            body.write(buffer, 0, len);
+        }
+        List<String> args = new ArrayList<>();
+        for (String line : new String(body.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n")) {
+            if (!line.trim().isEmpty()) {
+                args.add(line.trim());
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static class BuildResult {
+        private final int status;
+        private final String output;
+
+        BuildResult(int status, String output) {
+            this.status = status;
+            this.output = output;
+        }
+    }
+}
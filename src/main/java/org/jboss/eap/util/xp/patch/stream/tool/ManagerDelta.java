@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipException;
+
+/**
+ * Creates and applies deltas between two managers, so that a site which has the previous manager only needs the
+ * entries which changed to rebuild the next one. Entries are compared by name, CRC and size from the central
+ * directories alone, without reading their data.
+ * <p>
+ * A delta is itself a zip file. Its first entry is an index listing every entry of the new manager in order,
+ * with its CRC and size and whether it is taken from the baseline or from the delta, and it is followed by the
+ * entries which changed, copied still compressed from the new manager. Applying the delta copies the entries
+ * from both files still compressed as well, checking each of them against the index. Deltas get the same
+ * {@link Digests.Sidecars} as managers, so that they can be checked once they have been carried to a site.
+ */
+final class ManagerDelta {
+    static final String DELTA_JAR_NAME = "jboss-eap-xp-manager-delta.jar";
+
+    private static final String INDEX_NAME = "META-INF/JBOSS-EAP-XP-MANAGER-DELTA.idx";
+    private static final String FORMAT = "jboss-eap-xp-manager-delta 1";
+    private static final char FROM_BASELINE = 'B';
+    private static final char FROM_DELTA = 'D';
+
+    private ManagerDelta() {
+    }
+
+    /**
+     * Writes the delta which turns the baseline into the manager.
+     */
+    static void create(Path baseline, Path manager, Path delta, BufferPool pool, BuildReport report) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.DELTA);
+             RawZipFile base = RawZipFile.open(baseline);
+             RawZipFile target = RawZipFile.open(manager)) {
+            phase.target(delta);
+            StringBuilder index = new StringBuilder(FORMAT).append('\n');
+            List<RawZipFile.Entry> changed = new ArrayList<>();
+            for (RawZipFile.Entry entry : target.entries()) {
+                if (entry.getName().equals(INDEX_NAME)) {
+                    throw new ZipException(manager + " contains " + INDEX_NAME + ", which is reserved for the index of deltas");
+                }
+                RawZipFile.Entry previous = base.getEntry(entry.getName());
+                boolean unchanged = previous != null && previous.crc == entry.crc && previous.size == entry.size;
+                index.append(unchanged ? FROM_BASELINE : FROM_DELTA).append(' ')
+                        .append(Long.toHexString(entry.crc)).append(' ')
+                        .append(entry.size).append(' ')
+                        .append(entry.getName()).append('\n');
+                if (!unchanged) {
+                    changed.add(entry);
+                }
+            }
+
+            Path partial = delta.resolveSibling(delta.getFileName() + ".part");
+            Digests.Sidecars sidecars = new Digests.Sidecars();
+            try {
+                try (RawZipWriter writer = new RawZipWriter(ManagerCreator.openChannel(partial), null, pool).digest(sidecars)) {
+                    byte[] bytes = index.toString().getBytes(StandardCharsets.UTF_8);
+                    writer.write(INDEX_NAME, bytes);
+                    phase.read(bytes.length).entries(1);
+                    for (RawZipFile.Entry entry : changed) {
+                        writer.copy(target, entry);
+                        phase.read(entry.compressedSize).entries(1);
+                    }
+                }
+                Files.move(partial, delta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            sidecars.write(delta);
+            long size = Files.size(delta);
+            phase.written(size);
+            System.out.println(String.format(Locale.ROOT, "Wrote delta with %d of %d entries (%d of %d bytes) to %s",
+                    changed.size(), target.entries().size(), size, Files.size(manager), delta.toAbsolutePath()));
+        }
+    }
+
+    /**
+     * Rebuilds a manager from the baseline the delta was created against and the delta.
+     *
+     * @param sidecars the digests to update with the rebuilt manager as it is written
+     */
+    static void apply(Path baseline, Path delta, Path output, BufferPool pool, BuildReport report, Digests.Sidecars sidecars) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.APPLY_DELTA);
+             RawZipFile base = RawZipFile.open(baseline);
+             RawZipFile changes = RawZipFile.open(delta)) {
+            phase.target(output);
+            RawZipFile.Entry indexEntry = changes.getEntry(INDEX_NAME);
+            if (indexEntry == null) {
+                throw new ZipException(delta + " is not a manager delta");
+            }
+            Path partial = output.resolveSibling(output.getFileName() + ".part");
+            try {
+                try (RawZipWriter writer = new RawZipWriter(ManagerCreator.openChannel(partial), null, pool).digest(sidecars);
+                     BufferedReader index = new BufferedReader(new InputStreamReader(
+                             new ByteArrayInputStream(changes.read(indexEntry)), StandardCharsets.UTF_8))) {
+                    if (!FORMAT.equals(index.readLine())) {
+                        throw new ZipException(delta + " is not a manager delta supported by this version of the tool");
+                    }
+                    String line;
+                    while ((line = index.readLine()) != null) {
+                        String[] fields = line.split(" ", 4);
+                        if (fields.length != 4 || fields[0].length() != 1) {
+                            throw new ZipException("Invalid line in the index of " + delta + ": " + line);
+                        }
+                        RawZipFile source = fields[0].charAt(0) == FROM_BASELINE ? base : changes;
+                        RawZipFile.Entry entry = source.getEntry(fields[3]);
+                        if (entry == null || entry.crc != Long.parseLong(fields[1], 16) || entry.size != Long.parseLong(fields[2])) {
+                            throw new ZipException(fields[3] + (source == base
+                                    ? " differs in " + baseline + " from the baseline the delta was created against"
+                                    : " is missing from " + delta + " or differs from its index"));
+                        }
+                        writer.copy(source, entry);
+                        phase.read(entry.compressedSize).entries(1);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new ZipException("Invalid index in " + delta + ": " + e.getMessage());
+                }
+                Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            phase.written(Files.size(output));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The managers written by a {@link ManagerBuilder}, each of which passed the verification, with the digests
+ * which were also written next to them.
+ */
+public final class ManagerResult {
+    private final List<Path> managers;
+    private final Map<Path, Digests.Sidecars> digests;
+    private final Path delta;
+
+    ManagerResult(List<Path> managers, Map<Path, Digests.Sidecars> digests, Path delta) {
+        this.managers = Collections.unmodifiableList(managers);
+        this.digests = digests;
+        this.delta = delta;
+    }
+
+    /**
+     * The manager, or the managers of all the variants of a batch.
+     */
+    public List<Path> getManagers() {
+        return managers;
+    }
+
+    /**
+     * The SHA-256 of one of the {@link #getManagers() managers}, in hexadecimal.
+     */
+    public String getSha256(Path manager) {
+        Digests.Sidecars sidecars = digests.get(manager);
+        return sidecars == null ? null : sidecars.sha256();
+    }
+
+    /**
+     * The SHA-512 of one of the {@link #getManagers() managers}, in hexadecimal.
+     */
+    public String getSha512(Path manager) {
+        Digests.Sidecars sidecars = digests.get(manager);
+        return sidecars == null ? null : sidecars.sha512();
+    }
+
+    /**
+     * The delta against the baseline, or {@code null} if no baseline was given.
+     */
+    public Path getDelta() {
+        return delta;
+    }
+}
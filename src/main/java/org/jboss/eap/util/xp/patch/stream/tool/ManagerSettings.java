@@ -0,0 +1,246 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The resolved inputs and settings of one build of a {@link ManagerCreator}: the core once it is downloaded or
+ * checked, the added config files the sources expanded to, and the helpers the options asked for. They are put
+ * together by {@link ManagerBuilder} once it has checked the options, and do not change afterwards.
+ */
+final class ManagerSettings {
+    private final List<Path> addedConfigFiles;
+    private final Path managerCore;
+    private final boolean deleteCoreAtEnd;
+    private final Path outputDir;
+    private final boolean streaming;
+    private final int threads;
+    private final long maxMemory;
+    private final List<ManagerVariant> variants;
+    private final ManagerArtifactStore artifactStore;
+    private final BuildReport report;
+    private final FlightRecording recording;
+    private final ReproducibleOutput reproducible;
+    private final StagingArea staging;
+    private final PipelinedDownload pipeline;
+    private final CompressionPolicy compression;
+    private final Path deltaBaseline;
+
+    private ManagerSettings(Builder builder) {
+        this.addedConfigFiles = Collections.unmodifiableList(new ArrayList<>(builder.addedConfigFiles));
+        this.managerCore = builder.managerCore;
+        this.deleteCoreAtEnd = builder.deleteCoreAtEnd;
+        this.outputDir = builder.outputDir;
+        this.streaming = builder.streaming;
+        this.threads = builder.threads;
+        this.maxMemory = builder.maxMemory;
+        this.variants = builder.variants == null ? null : Collections.unmodifiableList(new ArrayList<>(builder.variants));
+        this.artifactStore = builder.artifactStore;
+        this.report = builder.report;
+        this.recording = builder.recording;
+        this.reproducible = builder.reproducible;
+        this.staging = builder.staging;
+        this.pipeline = builder.pipeline;
+        this.compression = builder.compression;
+        this.deltaBaseline = builder.deltaBaseline;
+    }
+
+    List<Path> getAddedConfigFiles() {
+        return addedConfigFiles;
+    }
+
+    /**
+     * The core, or {@code null} if it is downloaded while the manager is built.
+     */
+    Path getManagerCore() {
+        return managerCore;
+    }
+
+    /**
+     * Whether the core is a download which belongs to the build, and is deleted once it is done.
+     */
+    boolean isDeleteCoreAtEnd() {
+        return deleteCoreAtEnd;
+    }
+
+    Path getOutputDir() {
+        return outputDir;
+    }
+
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * The managers of a batch, or {@code null} to build a single manager.
+     */
+    List<ManagerVariant> getVariants() {
+        return variants;
+    }
+
+    ManagerArtifactStore getArtifactStore() {
+        return artifactStore;
+    }
+
+    BuildReport getReport() {
+        return report;
+    }
+
+    FlightRecording getRecording() {
+        return recording;
+    }
+
+    ReproducibleOutput getReproducible() {
+        return reproducible;
+    }
+
+    StagingArea getStaging() {
+        return staging;
+    }
+
+    PipelinedDownload getPipeline() {
+        return pipeline;
+    }
+
+    CompressionPolicy getCompression() {
+        return compression;
+    }
+
+    Path getDeltaBaseline() {
+        return deltaBaseline;
+    }
+
+    static final class Builder {
+        private List<Path> addedConfigFiles = Collections.emptyList();
+        private Path managerCore;
+        private boolean deleteCoreAtEnd;
+        private Path outputDir;
+        private boolean streaming;
+        private int threads = 1;
+        private long maxMemory = ManagerCreator.DEFAULT_MAX_MEMORY;
+        private List<ManagerVariant> variants;
+        private ManagerArtifactStore artifactStore;
+        private BuildReport report = new BuildReport(false, null);
+        private FlightRecording recording;
+        private ReproducibleOutput reproducible;
+        private StagingArea staging;
+        private PipelinedDownload pipeline;
+        private CompressionPolicy compression;
+        private Path deltaBaseline;
+
+        Builder addedConfigFiles(List<Path> addedConfigFiles) {
+            this.addedConfigFiles = addedConfigFiles;
+            return this;
+        }
+
+        Builder managerCore(Path managerCore, boolean deleteCoreAtEnd) {
+            this.managerCore = managerCore;
+            this.deleteCoreAtEnd = deleteCoreAtEnd;
+            return this;
+        }
+
+        Builder outputDir(Path outputDir) {
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        Builder streaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        Builder maxMemory(long maxMemory) {
+            this.maxMemory = maxMemory;
+            return this;
+        }
+
+        Builder variants(List<ManagerVariant> variants) {
+            this.variants = variants;
+            return this;
+        }
+
+        Builder artifactStore(ManagerArtifactStore artifactStore) {
+            this.artifactStore = artifactStore;
+            return this;
+        }
+
+        Builder report(BuildReport report) {
+            this.report = report;
+            return this;
+        }
+
+        Builder recording(FlightRecording recording) {
+            this.recording = recording;
+            return this;
+        }
+
+        Builder reproducible(ReproducibleOutput reproducible) {
+            this.reproducible = reproducible;
+            return this;
+        }
+
+        Builder staging(StagingArea staging) {
+            this.staging = staging;
+            return this;
+        }
+
+        Builder pipeline(PipelinedDownload pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
+        Builder compression(CompressionPolicy compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        Builder deltaBaseline(Path deltaBaseline) {
+            this.deltaBaseline = deltaBaseline;
+            return this;
+        }
+
+        ManagerSettings build() {
+            if (staging == null || compression == null) {
+                throw new IllegalStateException("The staging area and the compression policy are required");
+            }
+            if ((managerCore == null) == (pipeline == null)) {
+                throw new IllegalStateException("Either a core or a pipelined download is required");
+            }
+            return new ManagerSettings(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+/**
+ * Reports invalid settings or inputs of a build, such as a missing manager core or an invalid added config, as
+ * opposed to the {@link java.io.IOException}s of the build itself. The message is meant to be shown to whoever
+ * configured the build.
+ */
+public class ManagerToolException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public ManagerToolException(String message) {
+        super(message);
+    }
+
+    public ManagerToolException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * One of several managers built from the same core in batch mode. The variants are read from a properties
+ * descriptor such as
+ * <pre>
+ * variants=standalone,ha
+ * standalone.added-configs=configs/standalone-microprofile.xml
+ * standalone.output-dir=target/standalone
+ * ha.added-configs=configs/standalone-microprofile-ha.xml,configs/standalone-microprofile.xml
+ * ha.output-dir=target/ha
+ * </pre>
+ * where relative paths are resolved against the directory containing the descriptor. The added configs accept
+ * directories and globs, like {@code --added-configs}.
+ */
+class ManagerVariant {
+    private static final String VARIANTS = "variants";
+    private static final String ADDED_CONFIGS = ".added-configs";
+    private static final String OUTPUT_DIR = ".output-dir";
+
+    private final String name;
+    private final List<Path> addedConfigFiles;
+    private final Path outputManager;
+
+    ManagerVariant(String name, List<Path> addedConfigFiles, Path outputManager) {
+        this.name = name;
+        this.addedConfigFiles = addedConfigFiles;
+        this.outputManager = outputManager;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<Path> getAddedConfigFiles() {
+        return addedConfigFiles;
+    }
+
+    Path getOutputManager() {
+        return outputManager;
+    }
+
+    /**
+     * Reads the variants from a descriptor.
+     *
+     * @throws ManagerToolException if the descriptor is invalid
+     */
+    static List<ManagerVariant> load(Path descriptor, String arg) throws IOException, ManagerToolException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(descriptor)) {
+            properties.load(in);
+        }
+        Path baseDir = descriptor.toAbsolutePath().getParent();
+
+        String names = properties.getProperty(VARIANTS, "").trim();
+        if (names.isEmpty()) {
+            throw new ManagerToolException(descriptor + " specified by argument " + arg + " does not list any " + VARIANTS);
+        }
+        List<ManagerVariant> variants = new ArrayList<>();
+        Set<Path> outputs = new HashSet<>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            List<Path> addedConfigFiles = new ArrayList<>();
+            String configs = properties.getProperty(name + ADDED_CONFIGS, "").trim();
+            if (!configs.isEmpty()) {
+                addedConfigFiles = AddedConfigSources.resolve(baseDir, configs, name + ADDED_CONFIGS);
+            }
+            String outputDir = properties.getProperty(name + OUTPUT_DIR);
+            if (outputDir == null) {
+                throw new ManagerToolException("Variant " + name + " in " + descriptor + " has no " + name + OUTPUT_DIR);
+            }
+            Path dir = baseDir.resolve(outputDir.trim());
+            if (Files.exists(dir) && !Files.isDirectory(dir)) {
+                throw new ManagerToolException(dir + " for variant " + name + " already exists, but it is not a directory");
+            }
+            if (!outputs.add(dir.normalize())) {
+                throw new ManagerToolException("Variant " + name + " in " + descriptor + " uses the same " + OUTPUT_DIR.substring(1) + " as another variant");
+            }
+            variants.add(new ManagerVariant(name, addedConfigFiles, dir.resolve(ManagerCreator.MANAGER_JAR_NAME)));
+        }
+        return variants;
+    }
+}
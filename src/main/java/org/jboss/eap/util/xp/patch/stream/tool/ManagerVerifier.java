@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+/**
+ * Checks a manager once it has been written, before it is reported as built. Its central directory is read
+ * again, the manifest has to have the layers and every added config has to be there, and every entry is
+ * decompressed on a pool of threads to check it against the CRC and size of the central directory.
+ */
+final class ManagerVerifier {
+    // Several batches per thread, so that a thread which gets large entries does not hold the others up
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private ManagerVerifier() {
+    }
+
+    /**
+     * @param addedConfigs the configs which were added to the manager
+     * @throws ZipException if the manager is invalid
+     */
+    static void verify(Path manager, List<Path> addedConfigs, int threads, BufferPool pool, BuildReport report) throws IOException {
+        try (BuildReport.Phase phase = report.start(BuildReport.VERIFY);
+             RawZipFile zip = RawZipFile.open(manager)) {
+            phase.target(manager);
+            RawZipFile.Entry manifestEntry = zip.getEntry(ManagerCreator.MANIFEST_NAME);
+            if (manifestEntry == null) {
+                throw new ZipException(manager + " has no " + ManagerCreator.MANIFEST_NAME);
+            }
+            Manifest manifest = new Manifest(new ByteArrayInputStream(zip.read(manifestEntry)));
+            if (manifest.getMainAttributes().getValue(ManagerCreator.LAYERS_MANIFEST_KEY) == null) {
+                throw new ZipException("The " + ManagerCreator.MANIFEST_NAME + " of " + manager + " has no " + ManagerCreator.LAYERS_MANIFEST_KEY);
+            }
+            if (addedConfigs != null) {
+                for (Path config : addedConfigs) {
+                    if (zip.getEntry(ManagerCreator.ADDED_CONFIGS_DIR + config.getFileName()) == null) {
+                        throw new ZipException(manager + " has no " + ManagerCreator.ADDED_CONFIGS_DIR + config.getFileName());
+                    }
+                }
+            }
+
+            List<List<RawZipFile.Entry>> batches = batches(zip.entries(), threads * BATCHES_PER_THREAD);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, batches.size())));
+            try {
+                List<Future<Long>> futures = new ArrayList<>();
+                for (List<RawZipFile.Entry> batch : batches) {
+                    futures.add(executor.submit(() -> {
+                        long size = 0;
+                        for (RawZipFile.Entry entry : batch) {
+                            size += zip.extract(entry, DISCARD, pool);
+                        }
+                        return size;
+                    }));
+                }
+                for (Future<Long> future : futures) {
+                    phase.written(future.get());
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while verifying " + manager, e);
+            } finally {
+                executor.shutdownNow();
+            }
+            phase.read(Files.size(manager)).entries(zip.entries().size());
+        }
+    }
+
+    /**
+     * Splits the entries into batches of about the same compressed size, keeping their order so that each batch
+     * reads a contiguous part of the file.
+     */
+    private static List<List<RawZipFile.Entry>> batches(List<RawZipFile.Entry> entries, int count) {
+        long total = 0;
+        for (RawZipFile.Entry entry : entries) {
+            total += entry.compressedSize;
+        }
+        long target = Math.max(1, total / count);
+        List<List<RawZipFile.Entry>> batches = new ArrayList<>();
+        List<RawZipFile.Entry> batch = new ArrayList<>();
+        long size = 0;
+        for (RawZipFile.Entry entry : entries) {
+            batch.add(entry);
+            size += entry.compressedSize;
+            if (size >= target) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                size = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,826 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A file system keeping its files in memory, used by {@link StagingArea} to stage small manager cores without
+ * touching the disk. The blocks of the files are allocated in the heap, or outside of it with direct buffers so
+ * that a large staged core does not need a larger heap. The contents are dropped when it is closed.
+ * <p>
+ * Only what the staging of a core uses is supported: creating temporary and nested directories, writing and
+ * reading files through byte channels and streams, copying files in from the default file system, deleting
+ * files, walking the tree and reading the basic attributes. Everything else throws
+ * {@link UnsupportedOperationException}. The file systems are created directly rather than through
+ * {@link java.nio.file.FileSystems}, and each has a provider of its own, which only knows about it.
+ */
+class MemoryFileSystem extends FileSystem {
+    private static final String SEPARATOR = "/";
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final boolean direct;
+    private final Provider provider = new Provider();
+    private final Directory root = new Directory();
+    private final MemoryPath rootPath = new MemoryPath(this, true, new String[0]);
+    private volatile boolean open = true;
+
+    /**
+     * @param direct {@code true} to allocate the blocks of the files outside of the heap
+     */
+    MemoryFileSystem(boolean direct) {
+        this.direct = direct;
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    @Override
+    public FileSystemProvider provider() {
+        return provider;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        synchronized (root) {
+            root.children.clear();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public String getSeparator() {
+        return SEPARATOR;
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return Collections.singletonList(rootPath);
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Collections.singleton("basic");
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        StringBuilder sb = new StringBuilder(first);
+        for (String name : more) {
+            sb.append(SEPARATOR).append(name);
+        }
+        String path = sb.toString();
+        List<String> names = new ArrayList<>();
+        for (String name : path.split(SEPARATOR)) {
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return new MemoryPath(this, path.startsWith(SEPARATOR), names.toArray(new String[0]));
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        throw unsupported("path matchers");
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw unsupported("users");
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw unsupported("watch services");
+    }
+
+    private static UnsupportedOperationException unsupported(String what) {
+        return new UnsupportedOperationException("The memory file system used for staging does not support " + what);
+    }
+
+    private void checkOpen() {
+        if (!open) {
+            throw new ClosedFileSystemException();
+        }
+    }
+
+    private static MemoryPath toMemoryPath(Path path) {
+        if (!(path instanceof MemoryPath)) {
+            throw new ProviderMismatchException(path + " is not a path of the memory file system");
+        }
+        return (MemoryPath) path;
+    }
+
+    /**
+     * Finds the node of a path, or returns {@code null} if there is none. Callers hold the lock of the root.
+     */
+    private Node lookup(MemoryPath path) {
+        Node node = root;
+        for (String name : path.toAbsolutePath().normalize().names) {
+            if (!(node instanceof Directory)) {
+                return null;
+            }
+            node = ((Directory) node).children.get(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node get(MemoryPath path) throws NoSuchFileException {
+        Node node = lookup(path);
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return node;
+    }
+
+    /**
+     * Finds the directory which contains a path, which has to exist. Callers hold the lock of the root.
+     */
+    private Directory parent(MemoryPath path) throws IOException {
+        MemoryPath absolute = path.toAbsolutePath().normalize();
+        if (absolute.names.length == 0) {
+            throw new FileAlreadyExistsException(path.toString());
+        }
+        Node parent = lookup(absolute.getParent());
+        if (parent == null) {
+            throw new NoSuchFileException(absolute.getParent().toString());
+        } else if (!(parent instanceof Directory)) {
+            throw new NotDirectoryException(absolute.getParent().toString());
+        }
+        return (Directory) parent;
+    }
+
+    private static String fileName(MemoryPath path) {
+        MemoryPath absolute = path.toAbsolutePath().normalize();
+        return absolute.names[absolute.names.length - 1];
+    }
+
+    private abstract static class Node {
+        private final FileTime creationTime = FileTime.fromMillis(System.currentTimeMillis());
+        volatile FileTime lastModifiedTime = creationTime;
+    }
+
+    private static class Directory extends Node {
+        // Sorted, so that directories are always listed in the same order
+        final Map<String, Node> children = new TreeMap<>();
+    }
+
+    /**
+     * The content of a file, in blocks allocated as it grows so that it is never copied as a whole. All the blocks
+     * but the last one are {@link #BLOCK_SIZE} bytes long. The last one is allocated at the size first written to
+     * it and doubled as it grows, so that the many small files of a core do not each take a whole block.
+     */
+    private static class RegularFile extends Node {
+        private final boolean direct;
+        private final List<ByteBuffer> blocks = new ArrayList<>();
+        private long size;
+
+        RegularFile(boolean direct) {
+            this.direct = direct;
+        }
+
+        synchronized int read(long position, ByteBuffer dst) {
+            if (position >= size) {
+                return -1;
+            }
+            int total = 0;
+            while (dst.hasRemaining() && position < size) {
+                int offset = (int) (position % BLOCK_SIZE);
+                int len = (int) Math.min(Math.min(dst.remaining(), BLOCK_SIZE - offset), size - position);
+                ByteBuffer block = blocks.get((int) (position / BLOCK_SIZE)).duplicate();
+                block.limit(offset + len).position(offset);
+                dst.put(block);
+                position += len;
+                total += len;
+            }
+            return total;
+        }
+
+        synchronized int write(long position, ByteBuffer src) {
+            int total = 0;
+            while (src.hasRemaining()) {
+                int index = (int) (position / BLOCK_SIZE);
+                int offset = (int) (position % BLOCK_SIZE);
+                int len = Math.min(src.remaining(), BLOCK_SIZE - offset);
+                ByteBuffer part = src.duplicate();
+                part.limit(part.position() + len);
+                ByteBuffer block = block(index, offset + len).duplicate();
+                block.position(offset);
+                block.put(part);
+                src.position(src.position() + len);
+                position += len;
+                total += len;
+            }
+            size = Math.max(size, position);
+            lastModifiedTime = FileTime.fromMillis(System.currentTimeMillis());
+            return total;
+        }
+
+        /**
+         * Returns the block at the index, allocating or growing it so that it holds at least {@code length} bytes.
+         */
+        private ByteBuffer block(int index, int length) {
+            int last = blocks.size() - 1;
+            if (index > last && last >= 0 && blocks.get(last).capacity() < BLOCK_SIZE) {
+                // No longer the last block
+                blocks.set(last, grow(blocks.get(last), BLOCK_SIZE));
+            }
+            while (blocks.size() < index) {
+                blocks.add(allocate(BLOCK_SIZE));
+            }
+            if (blocks.size() == index) {
+                blocks.add(allocate(length));
+            }
+            ByteBuffer block = blocks.get(index);
+            if (block.capacity() < length) {
+                block = grow(block, Math.min(BLOCK_SIZE, Math.max(length, block.capacity() * 2)));
+                blocks.set(index, block);
+            }
+            return block;
+        }
+
+        private ByteBuffer allocate(int capacity) {
+            return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+
+        private ByteBuffer grow(ByteBuffer block, int capacity) {
+            ByteBuffer grown = allocate(capacity);
+            grown.put(block.duplicate().clear());
+            return grown.clear();
+        }
+
+        synchronized long size() {
+            return size;
+        }
+
+        synchronized void truncate(long newSize) {
+            if (newSize >= size) {
+                return;
+            }
+            size = newSize;
+            int keep = (int) ((newSize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            blocks.subList(keep, blocks.size()).clear();
+            if (newSize % BLOCK_SIZE != 0) {
+                // Zero the rest of the last block, so that growing the file again reads zeros
+                ByteBuffer last = blocks.get(keep - 1).duplicate();
+                last.position((int) (newSize % BLOCK_SIZE));
+                last.put(new byte[last.remaining()]);
+            }
+            lastModifiedTime = FileTime.fromMillis(System.currentTimeMillis());
+        }
+    }
+
+    private static class Channel implements SeekableByteChannel {
+        private final RegularFile file;
+        private final boolean readable;
+        private final boolean writable;
+        private final boolean append;
+        private long position;
+        private volatile boolean open = true;
+
+        Channel(RegularFile file, boolean readable, boolean writable, boolean append) {
+            this.file = file;
+            this.readable = readable;
+            this.writable = writable;
+            this.append = append;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            checkChannelOpen();
+            if (!readable) {
+                throw new NonReadableChannelException();
+            }
+            int len = file.read(position, dst);
+            if (len > 0) {
+                position += len;
+            }
+            return len;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            checkChannelOpen();
+            if (!writable) {
+                throw new NonWritableChannelException();
+            }
+            if (append) {
+                position = file.size();
+            }
+            int len = file.write(position, src);
+            position += len;
+            return len;
+        }
+
+        @Override
+        public synchronized long position() throws IOException {
+            checkChannelOpen();
+            return position;
+        }
+
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+            checkChannelOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException();
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            checkChannelOpen();
+            return file.size();
+        }
+
+        @Override
+        public synchronized SeekableByteChannel truncate(long size) throws IOException {
+            checkChannelOpen();
+            if (!writable) {
+                throw new NonWritableChannelException();
+            }
+            file.truncate(size);
+            position = Math.min(position, size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        private void checkChannelOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+
+    private static class Attributes implements BasicFileAttributes {
+        private final Node node;
+        private final long size;
+
+        Attributes(Node node) {
+            this.node = node;
+            this.size = node instanceof RegularFile ? ((RegularFile) node).size() : 0;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return node.lastModifiedTime;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return node.lastModifiedTime;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return node.creationTime;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return node instanceof RegularFile;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return node instanceof Directory;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+
+    private class Provider extends FileSystemProvider {
+        @Override
+        public String getScheme() {
+            return "memory";
+        }
+
+        @Override
+        public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+            throw unsupported("URIs");
+        }
+
+        @Override
+        public FileSystem getFileSystem(URI uri) {
+            throw unsupported("URIs");
+        }
+
+        @Override
+        public Path getPath(URI uri) {
+            throw unsupported("URIs");
+        }
+
+        @Override
+        public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+            checkOpen();
+            MemoryPath file = toMemoryPath(path);
+            boolean append = options.contains(StandardOpenOption.APPEND);
+            boolean writable = append || options.contains(StandardOpenOption.WRITE);
+            boolean readable = options.contains(StandardOpenOption.READ) || !writable;
+            synchronized (root) {
+                Node node = lookup(file);
+                if (node == null) {
+                    if (!writable || !(options.contains(StandardOpenOption.CREATE) || options.contains(StandardOpenOption.CREATE_NEW))) {
+                        throw new NoSuchFileException(path.toString());
+                    }
+                    Directory parent = parent(file);
+                    node = new RegularFile(direct);
+                    parent.children.put(fileName(file), node);
+                } else if (writable && options.contains(StandardOpenOption.CREATE_NEW)) {
+                    throw new FileAlreadyExistsException(path.toString());
+                } else if (node instanceof Directory) {
+                    throw new IOException(path + " is a directory");
+                }
+                RegularFile regularFile = (RegularFile) node;
+                if (writable && options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+                    regularFile.truncate(0);
+                }
+                return new Channel(regularFile, readable, writable, append);
+            }
+        }
+
+        @Override
+        public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+            checkOpen();
+            List<Path> entries = new ArrayList<>();
+            synchronized (root) {
+                Node node = get(toMemoryPath(dir));
+                if (!(node instanceof Directory)) {
+                    throw new NotDirectoryException(dir.toString());
+                }
+                for (String name : ((Directory) node).children.keySet()) {
+                    Path entry = dir.resolve(name);
+                    if (filter.accept(entry)) {
+                        entries.add(entry);
+                    }
+                }
+            }
+            return new DirectoryStream<Path>() {
+                @Override
+                public Iterator<Path> iterator() {
+                    return entries.iterator();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+            checkOpen();
+            MemoryPath path = toMemoryPath(dir);
+            synchronized (root) {
+                if (lookup(path) != null) {
+                    throw new FileAlreadyExistsException(dir.toString());
+                }
+                parent(path).children.put(fileName(path), new Directory());
+            }
+        }
+
+        @Override
+        public void delete(Path path) throws IOException {
+            checkOpen();
+            MemoryPath memoryPath = toMemoryPath(path);
+            synchronized (root) {
+                Node node = get(memoryPath);
+                if (node == root) {
+                    throw new IOException("Cannot delete the root directory");
+                } else if (node instanceof Directory && !((Directory) node).children.isEmpty()) {
+                    throw new DirectoryNotEmptyException(path.toString());
+                }
+                parent(memoryPath).children.remove(fileName(memoryPath));
+            }
+        }
+
+        /**
+         * Not needed, as staged files are only copied in from other file systems, which {@link java.nio.file.Files}
+         * does with streams.
+         */
+        @Override
+        public void copy(Path source, Path target, CopyOption... options) {
+            throw unsupported("copying files within it");
+        }
+
+        @Override
+        public void move(Path source, Path target, CopyOption... options) {
+            throw unsupported("moving files");
+        }
+
+        @Override
+        public boolean isSameFile(Path path, Path path2) {
+            return path.toAbsolutePath().normalize().equals(path2.toAbsolutePath().normalize());
+        }
+
+        @Override
+        public boolean isHidden(Path path) {
+            return false;
+        }
+
+        @Override
+        public FileStore getFileStore(Path path) {
+            throw unsupported("file stores");
+        }
+
+        @Override
+        public void checkAccess(Path path, AccessMode... modes) throws IOException {
+            checkOpen();
+            synchronized (root) {
+                get(toMemoryPath(path));
+            }
+        }
+
+        @Override
+        public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+            checkOpen();
+            if (type != BasicFileAttributes.class) {
+                throw unsupported(type.getName());
+            }
+            synchronized (root) {
+                return (A) new Attributes(get(toMemoryPath(path)));
+            }
+        }
+
+        @Override
+        public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) {
+            throw unsupported("attributes by name");
+        }
+
+        @Override
+        public void setAttribute(Path path, String attribute, Object value, LinkOption... options) {
+            throw unsupported("setting attributes");
+        }
+    }
+
+    /**
+     * A path of a {@link MemoryFileSystem}, made of the names between the separators. The working directory is
+     * the root directory.
+     */
+    private static class MemoryPath implements Path {
+        private final MemoryFileSystem fileSystem;
+        private final boolean absolute;
+        private final String[] names;
+
+        MemoryPath(MemoryFileSystem fileSystem, boolean absolute, String[] names) {
+            this.fileSystem = fileSystem;
+            this.absolute = absolute;
+            this.names = names;
+        }
+
+        @Override
+        public FileSystem getFileSystem() {
+            return fileSystem;
+        }
+
+        @Override
+        public boolean isAbsolute() {
+            return absolute;
+        }
+
+        @Override
+        public Path getRoot() {
+            return absolute ? fileSystem.rootPath : null;
+        }
+
+        @Override
+        public Path getFileName() {
+            return names.length == 0 ? null : new MemoryPath(fileSystem, false, new String[]{names[names.length - 1]});
+        }
+
+        @Override
+        public MemoryPath getParent() {
+            if (names.length == 0 || (names.length == 1 && !absolute)) {
+                return null;
+            }
+            return new MemoryPath(fileSystem, absolute, Arrays.copyOf(names, names.length - 1));
+        }
+
+        @Override
+        public int getNameCount() {
+            return names.length;
+        }
+
+        @Override
+        public Path getName(int index) {
+            return new MemoryPath(fileSystem, false, new String[]{names[index]});
+        }
+
+        @Override
+        public Path subpath(int beginIndex, int endIndex) {
+            throw unsupported("subpaths");
+        }
+
+        @Override
+        public boolean startsWith(Path other) {
+            throw unsupported("comparing the start of paths");
+        }
+
+        @Override
+        public boolean endsWith(Path other) {
+            throw unsupported("comparing the end of paths");
+        }
+
+        @Override
+        public MemoryPath normalize() {
+            List<String> normalized = new ArrayList<>();
+            for (String name : names) {
+                if (name.equals(".")) {
+                    continue;
+                } else if (name.equals("..") && !normalized.isEmpty() && !normalized.get(normalized.size() - 1).equals("..")) {
+                    normalized.remove(normalized.size() - 1);
+                } else if (!name.equals("..") || !absolute) {
+                    normalized.add(name);
+                }
+            }
+            return new MemoryPath(fileSystem, absolute, normalized.toArray(new String[0]));
+        }
+
+        @Override
+        public Path resolve(Path other) {
+            MemoryPath path = toMemoryPath(other);
+            if (path.absolute) {
+                return path;
+            }
+            String[] resolved = Arrays.copyOf(names, names.length + path.names.length);
+            System.arraycopy(path.names, 0, resolved, names.length, path.names.length);
+            return new MemoryPath(fileSystem, absolute, resolved);
+        }
+
+        @Override
+        public Path resolve(String other) {
+            return resolve(fileSystem.getPath(other));
+        }
+
+        @Override
+        public Path relativize(Path other) {
+            MemoryPath path = toMemoryPath(other);
+            if (path.absolute != absolute) {
+                throw new IllegalArgumentException("'other' is different type of Path");
+            }
+            int common = 0;
+            while (common < names.length && common < path.names.length && names[common].equals(path.names[common])) {
+                common++;
+            }
+            List<String> relative = new ArrayList<>();
+            for (int i = common; i < names.length; i++) {
+                relative.add("..");
+            }
+            relative.addAll(Arrays.asList(path.names).subList(common, path.names.length));
+            return new MemoryPath(fileSystem, false, relative.toArray(new String[0]));
+        }
+
+        @Override
+        public URI toUri() {
+            throw unsupported("URIs");
+        }
+
+        @Override
+        public MemoryPath toAbsolutePath() {
+            return absolute ? this : new MemoryPath(fileSystem, true, names);
+        }
+
+        @Override
+        public Path toRealPath(LinkOption... options) throws IOException {
+            Path real = toAbsolutePath().normalize();
+            fileSystem.provider.checkAccess(real);
+            return real;
+        }
+
+        @Override
+        public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+            throw unsupported("watch services");
+        }
+
+        @Override
+        public int compareTo(Path other) {
+            return toString().compareTo(other.toString());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MemoryPath)) {
+                return false;
+            }
+            MemoryPath path = (MemoryPath) obj;
+            return path.fileSystem == fileSystem && path.absolute == absolute && Arrays.equals(path.names, names);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(names) * 31 + (absolute ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return (absolute ? SEPARATOR : "") + String.join(SEPARATOR, names);
+        }
+    }
+}
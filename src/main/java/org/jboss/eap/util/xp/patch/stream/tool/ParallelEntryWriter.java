@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses entries on a pool of worker threads, and hands them to a {@link RawZipWriter} in the order in which
+ * they were submitted. Since every entry is compressed on its own into a separate buffer, the resulting archive
+ * is the same whatever the number of threads.
+ */
+final class ParallelEntryWriter implements Closeable {
+    private final RawZipWriter writer;
+    private final ForkJoinPool pool;
+    private final int maxPending;
+    private final Deque<Future<RawZipWriter.CompressedEntry>> pending = new ArrayDeque<>();
+
+    ParallelEntryWriter(RawZipWriter writer, int threads) {
+        this.writer = writer;
+        this.pool = new ForkJoinPool(threads);
+        this.maxPending = maxPending(threads);
+    }
+
+    /**
+     * The number of compressed entries held in memory while waiting for their turn to be written.
+     */
+    static int maxPending(int threads) {
+        return threads * 4;
+    }
+
+    void submit(Callable<RawZipWriter.CompressedEntry> task) throws IOException {
+        pending.add(pool.submit(task));
+        while (pending.size() > maxPending) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Writes an entry on the calling thread, once all the entries submitted before it have been written. Used for
+     * entries too large to be compressed into a buffer of their own.
+     */
+    void writeInOrder(EntryTask task) throws IOException {
+        flush();
+        task.write(writer);
+    }
+
+    /**
+     * Waits for all submitted entries to be compressed and written.
+     */
+    void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        Future<RawZipWriter.CompressedEntry> future = pending.removeFirst();
+        RawZipWriter.CompressedEntry entry;
+        try {
+            entry = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing entries", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // A ForkJoinPool wraps the checked exceptions of a Callable in a RuntimeException, and may wrap that
+            // again to rethrow it on this thread
+            Throwable wrapped = cause;
+            while (wrapped instanceof RuntimeException && wrapped.getCause() != null) {
+                wrapped = wrapped.getCause();
+            }
+            if (wrapped instanceof IOException) {
+                cause = wrapped;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error compressing entry: " + cause.getLocalizedMessage(), cause);
+        }
+        writer.write(entry);
+    }
+
+    /**
+     * Writes an entry straight to the archive.
+     */
+    interface EntryTask {
+        void write(RawZipWriter writer) throws IOException;
+    }
+
+    @Override
+    public void close() {
+        for (Future<?> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        pool.shutdownNow();
+    }
+}
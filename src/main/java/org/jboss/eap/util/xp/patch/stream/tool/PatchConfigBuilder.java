@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Creates patch configs from Java, like {@code --create-config} does. Like {@link ManagerBuilder}, builds of
+ * different builders can run at the same time in the same JVM.
+ */
+public final class PatchConfigBuilder {
+    private String versions;
+    private Path outputDir;
+
+    /**
+     * Comma-separated versions and ranges of versions such as {@code 2.0.0.GA..2.0.15.GA}.
+     */
+    public PatchConfigBuilder versions(String versions) {
+        this.versions = versions;
+        return this;
+    }
+
+    /**
+     * The directory to write the patch configs to, instead of the working directory.
+     */
+    public PatchConfigBuilder outputDir(Path outputDir) {
+        this.outputDir = outputDir;
+        return this;
+    }
+
+    /**
+     * Creates a patch config for each version.
+     *
+     * @return the patch configs, in the order of the versions
+     * @throws ManagerToolException if the versions are invalid
+     */
+    public List<Path> build() throws ManagerToolException, IOException {
+        if (versions == null) {
+            throw new ManagerToolException("No versions to create patch configs for");
+        }
+        return ConfigCreator.create(ConfigCreator.parseVersions(versions), outputDir == null ? null : outputDir.toString());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bundled {@code patch-config.xml}, parsed once into static segments and placeholders. The static segments
+ * are kept encoded, so rendering a version only fills a single buffer of the exact size, and the template can be
+ * shared by any number of threads rendering different versions.
+ */
+final class PatchConfigTemplate {
+    static final String RESOURCE = "patch-config.xml";
+
+    static final int APPLIES_TO_VERSION = 0;
+    static final int EXPANSION_PACK_VERSION = 1;
+    static final int PATCH_STREAM_NAME = 2;
+
+    private static final String[] MARKERS = {
+            "${applies.to.version}",
+            "${expansion.pack.version}",
+            "${xp.patch.stream.name}"
+    };
+
+    // Each static segment is followed by the placeholder at the same index, the last segment by none
+    private final byte[][] segments;
+    private final int[] placeholders;
+    private final int staticLength;
+
+    private PatchConfigTemplate(byte[][] segments, int[] placeholders) {
+        this.segments = segments;
+        this.placeholders = placeholders;
+        int length = 0;
+        for (byte[] segment : segments) {
+            length += segment.length;
+        }
+        this.staticLength = length;
+    }
+
+    static PatchConfigTemplate bundled() {
+        return Bundled.TEMPLATE;
+    }
+
+    static PatchConfigTemplate compile(String template) {
+        // Normalize line endings, and make sure the result ends with one, as the line based rendering used to
+        String text = template.replace("\r\n", "\n").replace('\r', '\n');
+        if (!text.endsWith("\n")) {
+            text += "\n";
+        }
+        List<byte[]> segments = new ArrayList<>();
+        List<Integer> placeholders = new ArrayList<>();
+        int start = 0;
+        int pos = 0;
+        while ((pos = text.indexOf("${", pos)) >= 0) {
+            int placeholder = -1;
+            for (int i = 0; i < MARKERS.length; i++) {
+                if (text.startsWith(MARKERS[i], pos)) {
+                    placeholder = i;
+                    break;
+                }
+            }
+            if (placeholder < 0) {
+                // Not one of ours, keep it as it is
+                pos += 2;
+                continue;
+            }
+            segments.add(text.substring(start, pos).getBytes(StandardCharsets.UTF_8));
+            placeholders.add(placeholder);
+            pos += MARKERS[placeholder].length();
+            start = pos;
+        }
+        segments.add(text.substring(start).getBytes(StandardCharsets.UTF_8));
+
+        int[] placeholderArray = new int[placeholders.size()];
+        for (int i = 0; i < placeholderArray.length; i++) {
+            placeholderArray[i] = placeholders.get(i);
+        }
+        return new PatchConfigTemplate(segments.toArray(new byte[0][]), placeholderArray);
+    }
+
+    /**
+     * Renders the template with the values indexed by {@link #APPLIES_TO_VERSION}, {@link #EXPANSION_PACK_VERSION}
+     * and {@link #PATCH_STREAM_NAME}.
+     */
+    ByteBuffer render(String... values) {
+        byte[][] encoded = new byte[MARKERS.length][];
+        for (int i = 0; i < MARKERS.length; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        int length = staticLength;
+        for (int placeholder : placeholders) {
+            length += encoded[placeholder].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < segments.length; i++) {
+            buffer.put(segments[i]);
+            if (i < placeholders.length) {
+                buffer.put(encoded[placeholders[i]]);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    void write(Path file, String... values) throws IOException {
+        ByteBuffer buffer = render(values);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static final class Bundled {
+        private static final PatchConfigTemplate TEMPLATE = load();
+
+        private static PatchConfigTemplate load() {
+            try (InputStream in = PatchConfigTemplate.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+                if (in == null) {
+                    throw new IllegalStateException("Could not find " + RESOURCE);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+                return compile(new String(out.toByteArray(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Downloads a manager core while the manager is being built from it. A download thread writes every block it
+ * receives to a file, for the cache or for later phases, adds it to a SHA-256 digest and hands it to the build,
+ * which reads the core as a stream. The build therefore runs while the core is still arriving, and a slow
+ * build makes the download wait rather than buffering the whole core in memory.
+ * <p>
+ * Once the last byte has arrived, the length and the digest of the download are checked, so that the caller can
+ * publish the manager knowing that it was built from the expected core.
+ */
+final class PipelinedDownload {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    // Up to 4MB of the core waiting for the build
+    private static final int MAX_PENDING_BLOCKS = 64;
+    private static final byte[] END = new byte[0];
+
+    private final URL url;
+    private final ManagerCoreCache cache;
+    private final String expectedSha256;
+    private boolean built;
+
+    /**
+     * @param cache the cache to keep the core in, or {@code null} to download it to a temporary file
+     * @param expectedSha256 the SHA-256 the core must have, or {@code null} to only check its length
+     */
+    PipelinedDownload(URL url, ManagerCoreCache cache, String expectedSha256) {
+        this.url = url;
+        this.cache = cache;
+        this.expectedSha256 = expectedSha256;
+    }
+
+    URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Downloads the core, handing it to the consumer as it arrives. If the cache already holds the current version
+     * of the core, nothing is downloaded and the consumer is not called. The cache may also fall back to a copy
+     * it holds if the download fails, see {@link #isBuilt()}.
+     *
+     * @return the downloaded core, which belongs to the cache if there is one, and to the caller otherwise
+     */
+    Path download(CoreConsumer consumer) throws IOException {
+        built = false;
+        if (cache != null) {
+            return cache.get(url, (u, response, target) -> download(response, target, consumer));
+        }
+        Path tmp = Files.createTempFile(Janitor.prefix(Janitor.DOWNLOAD_PREFIX), Janitor.DOWNLOAD_SUFFIX);
+        try {
+            download(null, tmp, consumer);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
+    /**
+     * Whether the consumer of the last {@link #download(CoreConsumer)} completed on a verified download. If not,
+     * because the consumer gave up or because the cache already held the core, the returned core has to be built
+     * from like a local one.
+     */
+    boolean isBuilt() {
+        return built;
+    }
+
+    private RangedDownloader.RemoteFile download(URLConnection response, Path target, CoreConsumer consumer) throws IOException {
+        URLConnection connection = response == null ? url.openConnection() : response;
+        try {
+            if (connection instanceof HttpURLConnection && ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Could not download " + url + ": " + ((HttpURLConnection) connection).getResponseCode());
+            }
+            RangedDownloader.RemoteFile remote = new RangedDownloader.RemoteFile();
+            remote.etag = connection.getHeaderField("ETag");
+            remote.lastModified = connection.getHeaderField("Last-Modified");
+            remote.length = connection.getContentLengthLong();
+
+            Tee tee = new Tee(connection.getInputStream(), target);
+            Thread thread = new Thread(tee, "manager-core-download");
+            thread.setDaemon(true);
+            thread.start();
+            boolean consumed;
+            try (BlockInputStream in = new BlockInputStream(tee.blocks)) {
+                consumed = consumer.accept(in);
+                // The build may stop reading before the end, at the central directory, but the file needs all of it
+                in.skip(Long.MAX_VALUE);
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading " + url, e);
+            } finally {
+                thread.interrupt();
+            }
+            verify(remote, tee);
+            built = consumed;
+            return remote;
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+    }
+
+    private void verify(RangedDownloader.RemoteFile remote, Tee tee) throws IOException {
+        if (remote.length >= 0 && tee.length != remote.length) {
+            throw new IOException("Downloaded " + tee.length + " bytes of " + url + " instead of " + remote.length);
+        }
+        String sha256 = Digests.toHex(tee.digest.digest());
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+            throw new IOException("The SHA-256 of " + url + " is " + sha256 + " instead of " + expectedSha256);
+        }
+    }
+
+    /**
+     * Builds something from the core as it is downloaded.
+     */
+    interface CoreConsumer {
+        /**
+         * @return {@code false} if the core could not be built from as a stream, in which case it is still
+         *         downloaded in full so that it can be built from as a file
+         */
+        boolean accept(InputStream core) throws IOException;
+    }
+
+    /**
+     * Copies the download to the file, the digest and the queue of blocks read by the build.
+     */
+    private static final class Tee implements Runnable {
+        private final InputStream in;
+        private final Path target;
+        private final MessageDigest digest = Digests.newDigest(Digests.SHA_256);
+        private final BlockingQueue<Object> blocks = new ArrayBlockingQueue<>(MAX_PENDING_BLOCKS);
+        private long length;
+
+        Tee(InputStream in, Path target) {
+            this.in = in;
+            this.target = target;
+        }
+
+        @Override
+        public void run() {
+            Object last = END;
+            try (InputStream input = in;
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (true) {
+                    byte[] block = input.readNBytes(BLOCK_SIZE);
+                    if (block.length == 0) {
+                        break;
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(block);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    digest.update(block);
+                    length += block.length;
+                    blocks.put(block);
+                }
+                out.force(false);
+            } catch (IOException e) {
+                last = e;
+            } catch (InterruptedException e) {
+                // The build failed, and nobody reads the blocks any more
+                return;
+            } catch (Throwable t) {
+                // Anything else must end the stream too, or the build would wait for the next block forever
+                last = new IOException(t.toString(), t);
+            }
+            try {
+                blocks.put(last);
+            } catch (InterruptedException e) {
+                // Same as above
+            }
+        }
+    }
+
+    /**
+     * Reads the blocks queued by the {@link Tee}, and fails with its error if the download fails.
+     */
+    private static final class BlockInputStream extends InputStream {
+        private final BlockingQueue<Object> blocks;
+        private byte[] block = new byte[0];
+        private int position;
+        private boolean end;
+
+        BlockInputStream(BlockingQueue<Object> blocks) {
+            this.blocks = blocks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == block.length && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, block.length - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && (position < block.length || nextBlock())) {
+                int len = (int) Math.min(n - skipped, block.length - position);
+                position += len;
+                skipped += len;
+            }
+            return skipped;
+        }
+
+        private boolean nextBlock() throws IOException {
+            if (end) {
+                return false;
+            }
+            Object next;
+            try {
+                next = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading the manager core", e);
+            }
+            if (next instanceof IOException) {
+                end = true;
+                throw new IOException("Error downloading the manager core: " + ((IOException) next).getLocalizedMessage(), (IOException) next);
+            }
+            if (next == END) {
+                end = true;
+                return false;
+            }
+            block = (byte[]) next;
+            position = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads a file over several connections at once, each fetching a chunk of the file with an HTTP
+ * {@code Range} request and writing it at its position in a preallocated partial file. The chunks completed so
+ * far are recorded next to the partial file, so that an interrupted download resumes where it stopped when it is
+ * run again. Servers which do not support ranges are read with a single request.
+ */
+class RangedDownloader {
+    static final int DEFAULT_CONNECTIONS = 4;
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+\\d+-\\d+/(\\d+)");
+
+    private static final String LENGTH_KEY = "length";
+    private static final String VALIDATOR_KEY = "validator";
+    private static final String DONE_KEY = "done";
+
+    private final int connections;
+
+    RangedDownloader(int connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * Downloads the file at the URL to the target path. The partial file is kept in {@code partialDir} under a
+     * name derived from the URL, so that a later download of the same URL can resume it.
+     *
+     * @return the {@code ETag} and {@code Last-Modified} headers sent by the server
+     */
+    RemoteFile download(URL url, Path partialDir, Path target) throws IOException {
+        Path part = partialDir.resolve(Janitor.DOWNLOAD_PREFIX + "-" + Digests.sha256(url.toString().getBytes(StandardCharsets.UTF_8)) + Janitor.PARTIAL_SUFFIX);
+        Path lockFile = partialDir.resolve(part.getFileName() + Janitor.LOCK_SUFFIX);
+        // The lock file is not deleted here, that would let a third invocation lock a new file while the second one
+        // still holds the old one; Janitor.sweep deletes it with the partial file once nobody holds it for a day
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(lockChannel)) {
+            if (lock == null) {
+                // Somebody else is downloading the same URL, so don't touch their partial file
+                part = Files.createTempFile(partialDir, Janitor.prefix(Janitor.DOWNLOAD_PREFIX), Janitor.PARTIAL_SUFFIX);
+            }
+            try {
+                RemoteFile remote = probe(url, part);
+                if (remote.length > 0 && remote.acceptsRanges && connections > 1) {
+                    downloadRanges(url, remote, part);
+                } else if (!remote.saved) {
+                    downloadStream(url, part);
+                }
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+                return remote;
+            } finally {
+                if (lock == null) {
+                    Files.deleteIfExists(part);
+                }
+            }
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Asks for the first byte of the file to find out whether the server supports ranges. A server which doesn't
+     * answers with the whole file, which is then saved to the partial file rather than requested again.
+     */
+    private RemoteFile probe(URL url, Path part) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setRequestProperty("Range", "bytes=0-0");
+        try {
+            if (!(connection instanceof HttpURLConnection)
+                    || ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                RemoteFile remote = save(connection, part);
+                remote.saved = true;
+                return remote;
+            }
+            RemoteFile remote = new RemoteFile();
+            remote.etag = connection.getHeaderField("ETag");
+            remote.lastModified = connection.getHeaderField("Last-Modified");
+            String contentRange = connection.getHeaderField("Content-Range");
+            Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange);
+            if (matcher != null && matcher.matches()) {
+                remote.length = Long.parseLong(matcher.group(1));
+                remote.acceptsRanges = true;
+            }
+            return remote;
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+    }
+
+    /**
+     * Saves the body of a response which has already arrived to the target path, rather than requesting the file
+     * again.
+     *
+     * @return the {@code ETag} and {@code Last-Modified} headers sent by the server
+     */
+    static RemoteFile save(URLConnection connection, Path target) throws IOException {
+        RemoteFile remote = new RemoteFile();
+        remote.etag = connection.getHeaderField("ETag");
+        remote.lastModified = connection.getHeaderField("Last-Modified");
+        remote.length = connection.getContentLengthLong();
+        long length = copy(connection, target);
+        if (remote.length >= 0 && length != remote.length) {
+            throw new IOException("Downloaded " + length + " bytes of " + connection.getURL() + " instead of " + remote.length);
+        }
+        return remote;
+    }
+
+    private void downloadStream(URL url, Path part) throws IOException {
+        copy(url.openConnection(), part);
+    }
+
+    private static long copy(URLConnection connection, Path target) throws IOException {
+        try (ReadableByteChannel in = Channels.newChannel(connection.getInputStream());
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long len;
+            while ((len = out.transferFrom(in, position, CHUNK_SIZE)) > 0) {
+                position += len;
+            }
+            return position;
+        }
+    }
+
+    private void downloadRanges(URL url, RemoteFile remote, Path part) throws IOException {
+        int chunks = (int) ((remote.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        Path progressFile = part.resolveSibling(part.getFileName() + Janitor.PROGRESS_SUFFIX);
+        boolean resumable = Files.exists(part) && Files.size(part) == remote.length;
+        Progress progress = Progress.load(progressFile, remote, chunks, resumable);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections, chunks));
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() != remote.length) {
+                channel.truncate(0);
+                // Preallocate, so every chunk can be written at its position independently of the others
+                channel.write(ByteBuffer.wrap(new byte[1]), remote.length - 1);
+            }
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < chunks; i++) {
+                if (progress.isDone(i)) {
+                    continue;
+                }
+                final int chunk = i;
+                futures.add(executor.submit(() -> {
+                    downloadChunk(url, remote, channel, chunk);
+                    // The chunk must be on disk before the progress file says so, or a crash could resume over a hole
+                    channel.force(false);
+                    progress.markDone(chunk);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while downloading " + url, e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw new IOException("Error downloading " + url + ", run again to resume the download: " + cause.getLocalizedMessage(), cause);
+                }
+            }
+            channel.force(false);
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.deleteIfExists(progressFile);
+    }
+
+    private void downloadChunk(URL url, RemoteFile remote, FileChannel channel, int chunk) throws IOException {
+        long start = (long) chunk * CHUNK_SIZE;
+        long end = Math.min(start + CHUNK_SIZE, remote.length) - 1;
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+            if (remote.validator() != null) {
+                // Make sure all the chunks come from the same version of the file
+                connection.setRequestProperty("If-Range", remote.validator());
+            }
+            try {
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException("Expected a partial response for bytes " + start + "-" + end + " but got " + connection.getResponseCode());
+                }
+                long position = start;
+                try (ReadableByteChannel in = Channels.newChannel(connection.getInputStream())) {
+                    long len;
+                    while (position <= end && (len = channel.transferFrom(in, position, end - position + 1)) > 0) {
+                        position += len;
+                    }
+                }
+                if (position != end + 1) {
+                    throw new IOException("Connection closed after " + (position - start) + " bytes of bytes " + start + "-" + end);
+                }
+                return;
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                connection.disconnect();
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * The headers of the remote file which are relevant for caching and resuming.
+     */
+    static class RemoteFile {
+        String etag;
+        String lastModified;
+        long length = -1;
+        boolean acceptsRanges;
+        boolean saved;
+
+        String validator() {
+            return etag != null ? etag : lastModified;
+        }
+    }
+
+    /**
+     * The chunks of a partial file which have been downloaded already.
+     */
+    private static class Progress {
+        private final Path file;
+        private final Properties properties;
+        private final BitSet done;
+
+        private Progress(Path file, Properties properties, BitSet done) {
+            this.file = file;
+            this.properties = properties;
+            this.done = done;
+        }
+
+        static Progress load(Path file, RemoteFile remote, int chunks, boolean resumable) throws IOException {
+            BitSet done = new BitSet(chunks);
+            String validator = remote.validator() == null ? "" : remote.validator();
+            if (resumable && Files.exists(file)) {
+                Properties existing = new Properties();
+                try (InputStream in = Files.newInputStream(file)) {
+                    existing.load(in);
+                }
+                // Only resume if the remote file is still the one the partial file was started from
+                if (!validator.isEmpty() && validator.equals(existing.getProperty(VALIDATOR_KEY))
+                        && String.valueOf(remote.length).equals(existing.getProperty(LENGTH_KEY))) {
+                    for (String index : existing.getProperty(DONE_KEY, "").split(",")) {
+                        if (!index.isEmpty()) {
+                            done.set(Integer.parseInt(index));
+                        }
+                    }
+                }
+            }
+            Properties properties = new Properties();
+            properties.setProperty(LENGTH_KEY, String.valueOf(remote.length));
+            properties.setProperty(VALIDATOR_KEY, validator);
+            return new Progress(file, properties, done);
+        }
+
+        synchronized boolean isDone(int chunk) {
+            return done.get(chunk);
+        }
+
+        synchronized void markDone(int chunk) throws IOException {
+            done.set(chunk);
+            StringBuilder sb = new StringBuilder();
+            for (int i = done.nextSetBit(0); i >= 0; i = done.nextSetBit(i + 1)) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(i);
+            }
+            properties.setProperty(DONE_KEY, sb.toString());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view of a zip file's central directory, giving access to the compressed bytes of each entry
+ * so that they can be copied to another archive without being inflated and deflated again. The file is memory
+ * mapped, so that entries are inflated straight from the page cache, and raw copies are done with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ */
+final class RawZipFile implements Closeable {
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    static final int LOCSIG = 0x04034b50;
+    static final int CENSIG = 0x02014b50;
+    static final int ENDSIG = 0x06054b50;
+    static final int ZIP64_LOCSIG = 0x07064b50;
+    static final int LOCHDR = 30;
+    static final int CENHDR = 46;
+    static final int ENDHDR = 22;
+
+    static final int FLAG_ENCRYPTED = 0x1;
+    static final int FLAG_DATA_DESCRIPTOR = 0x8;
+
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private final Path path;
+    private final FileChannel channel;
+    // Files too large to be mapped at once have each entry mapped when it is read instead
+    private final MappedByteBuffer map;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByName;
+
+    private RawZipFile(Path path, FileChannel channel, MappedByteBuffer map, List<Entry> entries) {
+        this.path = path;
+        this.channel = channel;
+        this.map = map;
+        this.entries = Collections.unmodifiableList(entries);
+        this.entriesByName = new HashMap<>();
+        for (Entry entry : entries) {
+            entriesByName.put(entry.getName(), entry);
+        }
+    }
+
+    static RawZipFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            List<Entry> entries = readCentralDirectory(path, channel);
+            MappedByteBuffer map = channel.size() <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) : null;
+            return new RawZipFile(path, channel, map, entries);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    Entry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    /**
+     * Reads and, if needed, inflates the contents of an entry. Only intended for small entries such as the manifest.
+     */
+    byte[] read(Entry entry) throws IOException {
+        ByteBuffer compressed = data(entry);
+        if (entry.method == STORED) {
+            byte[] data = new byte[compressed.remaining()];
+            compressed.get(data);
+            return data;
+        }
+        checkDeflated(entry);
+        byte[] data = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int off = 0;
+            while (off < data.length && !inflater.finished()) {
+                int len = inflater.inflate(data, off, data.length - off);
+                if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated deflate data for " + entry.getName() + " in " + path);
+                }
+                off += len;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflate data for " + entry.getName() + " in " + path + ": " + e.getLocalizedMessage());
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /**
+     * Writes the uncompressed contents of an entry to the channel, inflating them through a buffer of the pool,
+     * and checks them against the CRC and size of the central directory.
+     *
+     * @return the number of bytes written
+     */
+    long extract(Entry entry, WritableByteChannel out, BufferPool pool) throws IOException {
+        ByteBuffer compressed = data(entry);
+        CRC32 crc = new CRC32();
+        long size = 0;
+        if (entry.method == STORED) {
+            crc.update(compressed.duplicate());
+            size = writeFully(out, compressed);
+        } else {
+            checkDeflated(entry);
+            ByteBuffer buffer = pool.acquire();
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                while (!inflater.finished()) {
+                    buffer.clear();
+                    int len = inflater.inflate(buffer);
+                    // The last call of an empty entry inflates nothing but finishes the inflater
+                    if (len == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new ZipException("Truncated deflate data for " + entry.getName() + " in " + path);
+                    }
+                    buffer.flip();
+                    crc.update(buffer.duplicate());
+                    size += writeFully(out, buffer);
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflate data for " + entry.getName() + " in " + path + ": " + e.getLocalizedMessage());
+            } finally {
+                inflater.end();
+                pool.release(buffer);
+            }
+        }
+        if (size != entry.size || crc.getValue() != entry.crc) {
+            throw new ZipException("Invalid size or CRC for " + entry.getName() + " in " + path);
+        }
+        return size;
+    }
+
+    /**
+     * Transfers the compressed bytes of an entry, exactly as they are stored in this file, to the channel. Between
+     * two files this is done by the operating system, without going through the heap.
+     */
+    void transferRaw(Entry entry, WritableByteChannel out) throws IOException {
+        long position = getDataOffset(entry);
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            long len = channel.transferTo(position, remaining, out);
+            if (len <= 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+            position += len;
+            remaining -= len;
+        }
+    }
+
+    /**
+     * The compressed bytes of an entry, as a view of the mapped file.
+     */
+    ByteBuffer data(Entry entry) throws IOException {
+        long offset = getDataOffset(entry);
+        if (offset + entry.compressedSize > channel.size()) {
+            throw new EOFException("Unexpected end of " + path);
+        }
+        if (map == null) {
+            if (entry.compressedSize > Integer.MAX_VALUE) {
+                throw new UnsupportedZipException(entry.getName() + " in " + path + " is too large to be mapped");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, entry.compressedSize);
+        }
+        ByteBuffer data = map.duplicate();
+        data.position((int) offset).limit((int) (offset + entry.compressedSize));
+        return data.slice();
+    }
+
+    private void checkDeflated(Entry entry) throws ZipException {
+        if (entry.method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.getName() + " in " + path);
+        }
+    }
+
+    private static long writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        long total = 0;
+        while (buffer.hasRemaining()) {
+            total += out.write(buffer);
+        }
+        return total;
+    }
+
+    long getDataOffset(Entry entry) throws IOException {
+        if (entry.dataOffset < 0) {
+            ByteBuffer header = ByteBuffer.allocate(LOCHDR).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, entry.localHeaderOffset);
+            if (header.getInt(0) != LOCSIG) {
+                throw new ZipException("Invalid local header for " + entry.getName() + " in " + path);
+            }
+            entry.dataOffset = entry.localHeaderOffset + LOCHDR + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        }
+        return entry.dataOffset;
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int len = channel.read(buffer, position + total);
+            if (len < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+            total += len;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static List<Entry> readCentralDirectory(Path path, FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, ENDHDR + MAX_COMMENT);
+        ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+        long tailStart = size - tailLength;
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, tailStart + tail.position()) < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+        }
+
+        int end = -1;
+        for (int i = tailLength - ENDHDR; i >= 0; i--) {
+            if (tail.getInt(i) == ENDSIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException(path + " is not a zip file");
+        }
+        if (end >= 20 && tail.getInt(end - 20) == ZIP64_LOCSIG) {
+            throw new UnsupportedZipException(path + " is a zip64 archive");
+        }
+
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long cenSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long cenOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if ((tail.getShort(end + 4) & 0xFFFF) != 0 || (tail.getShort(end + 6) & 0xFFFF) != 0) {
+            throw new UnsupportedZipException(path + " is a multi-disk archive");
+        }
+        if (cenOffset + cenSize > tailStart + end) {
+            throw new ZipException("Invalid central directory offset in " + path);
+        }
+
+        ByteBuffer cen = ByteBuffer.allocate((int) cenSize).order(ByteOrder.LITTLE_ENDIAN);
+        while (cen.hasRemaining()) {
+            if (channel.read(cen, cenOffset + cen.position()) < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENHDR > cen.limit() || cen.getInt(pos) != CENSIG) {
+                throw new ZipException("Invalid central directory header in " + path);
+            }
+            Entry entry = new Entry();
+            entry.versionMadeBy = cen.getShort(pos + 4) & 0xFFFF;
+            entry.versionNeeded = cen.getShort(pos + 6) & 0xFFFF;
+            entry.flags = cen.getShort(pos + 8) & 0xFFFF;
+            entry.method = cen.getShort(pos + 10) & 0xFFFF;
+            entry.dosTime = cen.getInt(pos + 12) & 0xFFFFFFFFL;
+            entry.crc = cen.getInt(pos + 16) & 0xFFFFFFFFL;
+            entry.compressedSize = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            entry.size = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            entry.internalAttributes = cen.getShort(pos + 36) & 0xFFFF;
+            entry.externalAttributes = cen.getInt(pos + 38) & 0xFFFFFFFFL;
+            entry.localHeaderOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            entry.rawName = bytes(cen, pos + CENHDR, nameLength);
+            entry.extra = bytes(cen, pos + CENHDR + nameLength, extraLength);
+            entry.comment = bytes(cen, pos + CENHDR + nameLength + extraLength, commentLength);
+            entry.name = new String(entry.rawName, StandardCharsets.UTF_8);
+
+            if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+                throw new UnsupportedZipException(entry.name + " in " + path + " is encrypted");
+            }
+            if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.localHeaderOffset == 0xFFFFFFFFL) {
+                throw new UnsupportedZipException(entry.name + " in " + path + " uses zip64 extensions");
+            }
+            entries.add(entry);
+            pos += CENHDR + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * An entry as recorded in the central directory.
+     */
+    static final class Entry {
+        private String name;
+        byte[] rawName;
+        int versionMadeBy;
+        int versionNeeded;
+        int flags;
+        int method;
+        long dosTime;
+        long crc;
+        long compressedSize;
+        long size;
+        byte[] extra;
+        byte[] comment;
+        int internalAttributes;
+        long externalAttributes;
+        long localHeaderOffset;
+        private long dataOffset = -1;
+
+        String getName() {
+            return name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * Thrown for valid archives using features which the raw copy does not handle, so that callers can fall back
+     * to reading the archive with {@link java.util.zip.ZipFile}.
+     */
+    static class UnsupportedZipException extends ZipException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedZipException(String message) {
+            super(message);
+        }
+    }
+}
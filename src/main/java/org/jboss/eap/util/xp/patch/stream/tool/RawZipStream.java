@@ -0,0 +1,289 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the entries of a zip file from a stream, in the order of their local headers, without decompressing
+ * them, so that they can be copied as they are like {@link RawZipFile} does for a file. The stream is only read
+ * up to the central directory.
+ * <p>
+ * The sizes of an entry followed by a data descriptor are missing from its local header, so such an entry is
+ * inflated to find where it ends, which also checks its CRC, and is held in memory meanwhile. An entry larger than
+ * the maximum given to the constructor fails with a {@link RawZipFile.UnsupportedZipException}, so that the caller
+ * can read the archive as a file instead.
+ */
+final class RawZipStream {
+    private static final int EXTSIG = 0x08074b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PushbackInputStream in;
+    private final long maxBufferedSize;
+    private final ByteBuffer header = ByteBuffer.allocate(RawZipFile.LOCHDR).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private Entry current;
+
+    /**
+     * @param maxBufferedSize the size of the largest compressed entry followed by a data descriptor which can be read
+     */
+    RawZipStream(InputStream in, long maxBufferedSize) {
+        this.in = new PushbackInputStream(in, BUFFER_SIZE);
+        this.maxBufferedSize = maxBufferedSize;
+    }
+
+    /**
+     * Reads the local header of the next entry, skipping whatever was left of the data of the previous one.
+     *
+     * @return the entry, or {@code null} at the end of the entries
+     */
+    Entry next() throws IOException {
+        if (current != null && current.remaining > 0) {
+            skipFully(current.remaining);
+        }
+        current = null;
+        header.clear();
+        int read = in.readNBytes(header.array(), 0, 4);
+        if (read < 4 || header.getInt(0) != RawZipFile.LOCSIG) {
+            // The central directory, or the end of an empty zip file
+            return null;
+        }
+        readFully(header.array(), 4, RawZipFile.LOCHDR - 4);
+        Entry entry = new Entry();
+        entry.flags = header.getShort(6) & 0xFFFF;
+        entry.method = header.getShort(8) & 0xFFFF;
+        entry.dosTime = header.getInt(10) & 0xFFFFFFFFL;
+        entry.crc = header.getInt(14) & 0xFFFFFFFFL;
+        entry.compressedSize = header.getInt(18) & 0xFFFFFFFFL;
+        entry.size = header.getInt(22) & 0xFFFFFFFFL;
+        byte[] name = new byte[header.getShort(26) & 0xFFFF];
+        byte[] extra = new byte[header.getShort(28) & 0xFFFF];
+        readFully(name, 0, name.length);
+        readFully(extra, 0, extra.length);
+        entry.name = new String(name, StandardCharsets.UTF_8);
+        entry.zip64 = readZip64Sizes(entry, extra);
+
+        if ((entry.flags & RawZipFile.FLAG_ENCRYPTED) != 0) {
+            throw new ZipException("Encrypted entry: " + entry.name);
+        }
+        if ((entry.flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            if (entry.method != RawZipFile.DEFLATED) {
+                throw new ZipException("Only deflated entries can be followed by a data descriptor: " + entry.name);
+            }
+            entry.data = readDeflated(entry);
+        } else {
+            entry.remaining = entry.compressedSize;
+        }
+        current = entry;
+        return entry;
+    }
+
+    /**
+     * The compressed data of the current entry. It has to be read to its end before the next entry can be read.
+     */
+    InputStream data() {
+        Entry entry = current;
+        if (entry.data != null) {
+            return new ByteArrayInputStream(entry.data);
+        }
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (entry.remaining == 0) {
+                    return -1;
+                }
+                int n = in.read(b, off, (int) Math.min(len, entry.remaining));
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of the data of " + entry.name);
+                }
+                entry.remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Reads the whole compressed data of the current entry.
+     */
+    byte[] readData() throws IOException {
+        if (current.data != null) {
+            return current.data;
+        }
+        byte[] data = new byte[Math.toIntExact(current.compressedSize)];
+        readFully(data, 0, data.length);
+        current.remaining = 0;
+        return data;
+    }
+
+    private boolean readZip64Sizes(Entry entry, byte[] extra) {
+        if (entry.size != ZIP64_MAGIC && entry.compressedSize != ZIP64_MAGIC) {
+            return false;
+        }
+        ByteBuffer fields = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        while (fields.remaining() >= 4) {
+            int id = fields.getShort() & 0xFFFF;
+            int length = fields.getShort() & 0xFFFF;
+            if (id == ZIP64_EXTRA && length >= 16 && fields.remaining() >= 16) {
+                entry.size = fields.getLong();
+                entry.compressedSize = fields.getLong();
+                return true;
+            }
+            fields.position(Math.min(fields.limit(), fields.position() + length));
+        }
+        return true;
+    }
+
+    /**
+     * Reads deflated data of unknown length, inflating it to find its end, followed by its data descriptor.
+     */
+    private byte[] readDeflated(Entry entry) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] inflated = new byte[BUFFER_SIZE];
+        CRC32 crc = new CRC32();
+        Inflater inflater = new Inflater(true);
+        try {
+            int last = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    last = in.read(buffer, 0, buffer.length);
+                    if (last < 0) {
+                        throw new EOFException("Unexpected end of the data of " + entry.name);
+                    }
+                    inflater.setInput(buffer, 0, last);
+                    data.write(buffer, 0, last);
+                    // What was read past the end of the data is at most one buffer
+                    if (data.size() - BUFFER_SIZE > maxBufferedSize) {
+                        throw new RawZipFile.UnsupportedZipException(entry.name + " is followed by a data descriptor, and larger than the " + maxBufferedSize + " bytes which can be held in memory");
+                    }
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid deflated data in " + entry.name);
+                }
+                int n = inflater.inflate(inflated);
+                crc.update(inflated, 0, n);
+            }
+            // The last read may have gone past the end of the data, into the data descriptor
+            int unread = inflater.getRemaining();
+            in.unread(buffer, last - unread, unread);
+            entry.size = inflater.getBytesWritten();
+            entry.compressedSize = inflater.getBytesRead();
+            entry.crc = crc.getValue();
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflated data in " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        // The signature of the data descriptor is optional
+        ByteBuffer descriptor = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(descriptor.array(), 0, 4);
+        if (descriptor.getInt(0) == EXTSIG) {
+            readFully(descriptor.array(), 0, 4);
+        }
+        int sizesLength = entry.zip64 ? 16 : 8;
+        readFully(descriptor.array(), 4, sizesLength);
+        long compressedSize = entry.zip64 ? descriptor.getLong(4) : descriptor.getInt(4) & 0xFFFFFFFFL;
+        long size = entry.zip64 ? descriptor.getLong(12) : descriptor.getInt(8) & 0xFFFFFFFFL;
+        if ((descriptor.getInt(0) & 0xFFFFFFFFL) != entry.crc || compressedSize != entry.compressedSize || size != entry.size) {
+            throw new ZipException("Invalid data descriptor for " + entry.name);
+        }
+        byte[] bytes = data.toByteArray();
+        return bytes.length == entry.compressedSize ? bytes : Arrays.copyOf(bytes, (int) entry.compressedSize);
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        if (in.readNBytes(b, off, len) < len) {
+            throw new EOFException("Unexpected end of zip stream");
+        }
+    }
+
+    private void skipFully(long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of zip stream");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * The local header of an entry.
+     */
+    static final class Entry {
+        private String name;
+        private int flags;
+        private int method;
+        private long dosTime;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private boolean zip64;
+        private long remaining;
+        private byte[] data;
+
+        String getName() {
+            return name;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        long getDosTime() {
+            return dosTime;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
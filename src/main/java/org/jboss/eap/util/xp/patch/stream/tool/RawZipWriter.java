@@ -0,0 +1,472 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file whose entries are either copied verbatim, still compressed, from a {@link RawZipFile}
+ * or deflated from data held in memory. The central directory is written when the writer is closed. When
+ * writing a {@link ReproducibleOutput}, the timestamp and attributes of copied entries are replaced by fixed ones.
+ * <p>
+ * Everything but the copied entries goes through a buffer taken from a {@link BufferPool}, and copied entries are
+ * transferred from the source file by the operating system. Entries too large to be compressed in memory can be
+ * deflated or stored straight into the file. The file is only ever appended to, so that it can be digested as it
+ * is written.
+ */
+final class RawZipWriter implements Closeable {
+    private static final int FLAG_UTF8 = 0x800;
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final FileChannel out;
+    private final ReproducibleOutput reproducible;
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final List<RawZipFile.Entry> written = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final ByteBuffer header = ByteBuffer.allocate(RawZipFile.CENHDR).order(ByteOrder.LITTLE_ENDIAN);
+    private long offset;
+    private boolean closed;
+    private Digests.Sidecars sidecars;
+
+    RawZipWriter(FileChannel out, ReproducibleOutput reproducible, BufferPool pool) throws IOException {
+        this.out = out;
+        this.reproducible = reproducible;
+        this.pool = pool;
+        try {
+            this.buffer = pool.acquire();
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Digests everything written from now on, so that the digests of the file are known once it is closed
+     * without reading it again.
+     */
+    RawZipWriter digest(Digests.Sidecars sidecars) {
+        this.sidecars = sidecars;
+        return this;
+    }
+
+    /**
+     * Copies an entry from another archive without decompressing it. The CRC and sizes are taken from the
+     * source's central directory.
+     */
+    void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+        RawZipFile.Entry copy = new RawZipFile.Entry();
+        copy.rawName = entry.rawName;
+        copy.versionMadeBy = entry.versionMadeBy;
+        copy.versionNeeded = entry.versionNeeded;
+        // Sizes and CRC are known up front, so the copy never needs a data descriptor
+        copy.flags = entry.flags & ~RawZipFile.FLAG_DATA_DESCRIPTOR;
+        copy.method = entry.method;
+        copy.dosTime = entry.dosTime;
+        copy.crc = entry.crc;
+        copy.compressedSize = entry.compressedSize;
+        copy.size = entry.size;
+        copy.extra = entry.extra;
+        copy.comment = entry.comment;
+        copy.internalAttributes = entry.internalAttributes;
+        copy.externalAttributes = entry.externalAttributes;
+        if (reproducible != null) {
+            reproducible.normalize(copy);
+        }
+        writeLocalHeader(entry.getName(), copy);
+        flush();
+        if (sidecars != null) {
+            sidecars.update(source.data(entry));
+        }
+        source.transferRaw(entry, out);
+        offset += entry.compressedSize;
+    }
+
+    /**
+     * Deflates the data and writes it as a new entry.
+     */
+    void write(String name, byte[] data) throws IOException {
+        long dosTime = reproducible != null ? reproducible.getDosTime() : toDosTime(System.currentTimeMillis());
+        write(CompressedEntry.deflate(name, data, data.length, dosTime));
+    }
+
+    void write(CompressedEntry entry) throws IOException {
+        write(entry.name, entry.method, entry.crc, entry.size, entry.data, entry.length, entry.dosTime);
+    }
+
+    /**
+     * Writes a new entry whose data has already been compressed with the given method.
+     */
+    void write(String name, int method, long crc, long size, byte[] compressed, int compressedLength, long dosTime) throws IOException {
+        RawZipFile.Entry entry = newEntry(name, method, crc, size, compressedLength, dosTime);
+        writeLocalHeader(name, entry);
+        put(ByteBuffer.wrap(compressed, 0, compressedLength));
+    }
+
+    /**
+     * Writes a new entry whose data, already compressed with the given method, is read from the stream through a
+     * buffer of the pool.
+     */
+    void write(String name, int method, long crc, long size, long compressedSize, long dosTime, InputStream in) throws IOException {
+        checkZip32(size, "Entry too large: " + name);
+        checkZip32(compressedSize, "Entry too large: " + name);
+        RawZipFile.Entry entry = newEntry(name, method, crc, size, compressedSize, dosTime);
+        writeLocalHeader(name, entry);
+        ReadableByteChannel channel = Channels.newChannel(in);
+        ByteBuffer data = pool.acquire();
+        try {
+            long remaining = compressedSize;
+            while (remaining > 0) {
+                data.clear().limit((int) Math.min(data.capacity(), remaining));
+                if (channel.read(data) < 0) {
+                    throw new EOFException("Unexpected end of the data of " + name);
+                }
+                data.flip();
+                remaining -= data.remaining();
+                put(data);
+            }
+        } finally {
+            pool.release(data);
+        }
+    }
+
+    /**
+     * Deflates everything read from the channel straight into the archive through buffers of the pool, so that
+     * the entry never has to be held in memory. The channel is read and deflated twice, first for the CRC and
+     * compressed size of the local header and then for the data, so that the entry is framed like the entries
+     * compressed in memory and the archive does not depend on which entries were too large to be held in memory.
+     *
+     * @param deflaters creates the deflaters of both passes, which must produce raw deflate data
+     * @return the compressed size of the entry
+     */
+    long writeDeflated(String name, SeekableByteChannel in, long dosTime, Supplier<Deflater> deflaters) throws IOException {
+        long position = in.position();
+        CRC32 crc = new CRC32();
+        long compressedSize = deflate(in, deflaters.get(), crc, false);
+        long size = in.position() - position;
+        checkZip32(size, "Entry too large: " + name);
+        checkZip32(compressedSize, "Entry too large: " + name);
+        in.position(position);
+
+        RawZipFile.Entry entry = newEntry(name, RawZipFile.DEFLATED, crc.getValue(), size, compressedSize, dosTime);
+        writeLocalHeader(name, entry);
+        if (deflate(in, deflaters.get(), null, true) != compressedSize || in.position() - position != size) {
+            throw new ZipException(name + " changed while it was written");
+        }
+        return compressedSize;
+    }
+
+    /**
+     * Deflates the rest of the channel through buffers of the pool, and ends the deflater.
+     *
+     * @param crc updated with the data read, if not {@code null}
+     * @param write whether the deflated data is written to the archive or only counted
+     * @return the size of the deflated data
+     */
+    private long deflate(ReadableByteChannel in, Deflater deflater, CRC32 crc, boolean write) throws IOException {
+        ByteBuffer input = null;
+        ByteBuffer output = null;
+        try {
+            input = pool.acquire();
+            output = pool.acquire();
+            boolean eof = false;
+            while (!deflater.finished()) {
+                if (!eof && deflater.needsInput()) {
+                    input.clear();
+                    eof = in.read(input) < 0;
+                    input.flip();
+                    if (crc != null) {
+                        crc.update(input.duplicate());
+                    }
+                    deflater.setInput(input);
+                    if (eof) {
+                        deflater.finish();
+                    }
+                }
+                output.clear();
+                deflater.deflate(output);
+                output.flip();
+                if (write) {
+                    put(output);
+                }
+            }
+            return deflater.getBytesWritten();
+        } finally {
+            deflater.end();
+            pool.release(input);
+            pool.release(output);
+        }
+    }
+
+    /**
+     * Copies everything read from the channel into the archive as a stored entry, through a buffer of the pool.
+     * The channel is read twice, first for the CRC of the local header and then for the data.
+     *
+     * @return the size of the entry
+     */
+    long writeStored(String name, SeekableByteChannel in, long dosTime) throws IOException {
+        ByteBuffer data = pool.acquire();
+        try {
+            long position = in.position();
+            CRC32 crc = new CRC32();
+            while (in.read(data) >= 0) {
+                data.flip();
+                crc.update(data);
+                data.clear();
+            }
+            long size = in.position() - position;
+            checkZip32(size, "Entry too large: " + name);
+            in.position(position);
+
+            RawZipFile.Entry entry = newEntry(name, RawZipFile.STORED, crc.getValue(), size, size, dosTime);
+            writeLocalHeader(name, entry);
+            long remaining = size;
+            while (remaining > 0 && in.read(data) >= 0) {
+                data.flip();
+                if (data.remaining() > remaining) {
+                    data.limit((int) remaining);
+                }
+                remaining -= data.remaining();
+                put(data);
+                data.clear();
+            }
+            if (remaining > 0) {
+                throw new EOFException(name + " shrank while it was written");
+            }
+            return size;
+        } finally {
+            pool.release(data);
+        }
+    }
+
+    private static RawZipFile.Entry newEntry(String name, int method, long crc, long size, long compressedSize, long dosTime) {
+        RawZipFile.Entry entry = new RawZipFile.Entry();
+        entry.rawName = name.getBytes(StandardCharsets.UTF_8);
+        entry.versionMadeBy = method == RawZipFile.STORED ? VERSION_STORED : VERSION_DEFLATED;
+        entry.versionNeeded = entry.versionMadeBy;
+        entry.flags = FLAG_UTF8;
+        entry.method = method;
+        entry.dosTime = dosTime;
+        entry.crc = crc;
+        entry.compressedSize = compressedSize;
+        entry.size = size;
+        entry.extra = EMPTY;
+        entry.comment = EMPTY;
+        return entry;
+    }
+
+    private void writeLocalHeader(String name, RawZipFile.Entry entry) throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+        checkZip32(offset, "Archive too large");
+        entry.localHeaderOffset = offset;
+        written.add(entry);
+
+        header.clear();
+        header.putInt(RawZipFile.LOCSIG);
+        header.putShort((short) entry.versionNeeded);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.rawName.length);
+        header.putShort((short) 0);
+        put(header.array(), header.position());
+        put(entry.rawName, entry.rawName.length);
+    }
+
+    private void put(byte[] bytes, int length) throws IOException {
+        put(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    /**
+     * Appends the bytes to the buffer, writing it to the file whenever it is full.
+     */
+    private void put(ByteBuffer bytes) throws IOException {
+        offset += bytes.remaining();
+        while (bytes.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int len = Math.min(buffer.remaining(), bytes.remaining());
+            ByteBuffer slice = bytes.duplicate();
+            slice.limit(slice.position() + len);
+            buffer.put(slice);
+            bytes.position(bytes.position() + len);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        if (sidecars != null) {
+            sidecars.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long cenOffset = offset;
+            for (RawZipFile.Entry entry : written) {
+                header.clear();
+                header.putInt(RawZipFile.CENSIG);
+                header.putShort((short) entry.versionMadeBy);
+                header.putShort((short) entry.versionNeeded);
+                header.putShort((short) entry.flags);
+                header.putShort((short) entry.method);
+                header.putInt((int) entry.dosTime);
+                header.putInt((int) entry.crc);
+                header.putInt((int) entry.compressedSize);
+                header.putInt((int) entry.size);
+                header.putShort((short) entry.rawName.length);
+                header.putShort((short) entry.extra.length);
+                header.putShort((short) entry.comment.length);
+                header.putShort((short) 0);
+                header.putShort((short) entry.internalAttributes);
+                header.putInt((int) entry.externalAttributes);
+                header.putInt((int) entry.localHeaderOffset);
+                put(header.array(), header.position());
+                put(entry.rawName, entry.rawName.length);
+                put(entry.extra, entry.extra.length);
+                put(entry.comment, entry.comment.length);
+            }
+            if (written.size() > 0xFFFF) {
+                throw new ZipException("Too many entries: " + written.size());
+            }
+            checkZip32(offset, "Archive too large");
+
+            header.clear();
+            header.putInt(RawZipFile.ENDSIG);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) written.size());
+            header.putShort((short) written.size());
+            header.putInt((int) (offset - cenOffset));
+            header.putInt((int) cenOffset);
+            header.putShort((short) 0);
+            put(header.array(), header.position());
+            flush();
+            // Durable before the build reports success, since the staged files may be gone by then
+            out.force(true);
+        } finally {
+            pool.release(buffer);
+            out.close();
+        }
+    }
+
+    private static void checkZip32(long value, String message) throws ZipException {
+        if (value > 0xFFFFFFFFL) {
+            throw new ZipException(message);
+        }
+    }
+
+    /**
+     * The data of an entry, already compressed and ready to be written.
+     */
+    static final class CompressedEntry {
+        final String name;
+        final int method;
+        final long crc;
+        final long size;
+        final byte[] data;
+        final int length;
+        final long dosTime;
+
+        CompressedEntry(String name, int method, long crc, long size, byte[] data, int length, long dosTime) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+            this.length = length;
+            this.dosTime = dosTime;
+        }
+
+        static CompressedEntry deflate(String name, byte[] data, int length, long dosTime) {
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 2));
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    int len = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, len);
+                }
+            } finally {
+                deflater.end();
+            }
+            return new CompressedEntry(name, RawZipFile.DEFLATED, crc.getValue(), length, compressed.toByteArray(), compressed.size(), dosTime);
+        }
+    }
+
+    static long toDosTime(long time) {
+        return toDosTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+    }
+
+    static long toDosTime(LocalDateTime time) {
+        int year = time.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25) | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16) | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5) | (time.getSecond() >> 1);
+    }
+}
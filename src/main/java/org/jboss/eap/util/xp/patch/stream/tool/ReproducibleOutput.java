@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+
+/**
+ * Settings for building managers whose bytes only depend on their inputs. Entries are written sorted by name
+ * with the manifest first, and every entry gets the same timestamp, taken from the {@code SOURCE_DATE_EPOCH}
+ * environment variable when it is set, and the same attributes.
+ */
+final class ReproducibleOutput {
+    static final String SOURCE_DATE_EPOCH = "SOURCE_DATE_EPOCH";
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Sorts the manifest first, as {@link java.util.jar.JarInputStream} expects, and the other entries by name.
+     */
+    static final Comparator<String> ENTRY_ORDER = (a, b) -> {
+        if (a.equals(b)) {
+            return 0;
+        } else if (a.equals(MANIFEST_NAME)) {
+            return -1;
+        } else if (b.equals(MANIFEST_NAME)) {
+            return 1;
+        }
+        return a.compareTo(b);
+    };
+
+    private final long epochSeconds;
+    private final LocalDateTime time;
+    private final long dosTime;
+
+    ReproducibleOutput(long epochSeconds) {
+        this.epochSeconds = epochSeconds;
+        // Zip timestamps have no time zone, use UTC so that the result does not depend on the one of the machine
+        this.time = LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+        this.dosTime = RawZipWriter.toDosTime(time);
+    }
+
+    /**
+     * Reads the timestamp from {@code SOURCE_DATE_EPOCH}, defaulting to the earliest time a zip file can hold.
+     *
+     * @throws ManagerToolException if the variable is not a number of seconds
+     */
+    static ReproducibleOutput fromEnvironment() throws ManagerToolException {
+        String value = System.getenv(SOURCE_DATE_EPOCH);
+        if (value == null || value.trim().isEmpty()) {
+            return new ReproducibleOutput(LocalDateTime.of(1980, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC));
+        }
+        try {
+            long epochSeconds = Long.parseLong(value.trim());
+            if (epochSeconds >= 0) {
+                return new ReproducibleOutput(epochSeconds);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new ManagerToolException(SOURCE_DATE_EPOCH + "=" + value + " is not a valid number of seconds since the epoch");
+    }
+
+    long getEpochSeconds() {
+        return epochSeconds;
+    }
+
+    LocalDateTime getTime() {
+        return time;
+    }
+
+    long getDosTime() {
+        return dosTime;
+    }
+
+    /**
+     * Replaces the timestamp and attributes an entry copied from the core brought with it by fixed ones.
+     */
+    void normalize(RawZipFile.Entry entry) {
+        entry.dosTime = dosTime;
+        entry.extra = EMPTY;
+        entry.comment = EMPTY;
+        entry.internalAttributes = 0;
+        entry.externalAttributes = 0;
+        entry.versionMadeBy = entry.versionNeeded;
+    }
+}
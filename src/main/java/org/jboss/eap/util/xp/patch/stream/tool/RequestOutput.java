@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Routes what a request prints to that request's own buffer, so that several builds can run in one JVM and each
+ * client only gets its own output. {@link ManagerDaemon} installs {@link #routing(OutputStream)} as
+ * {@code System.out} and {@code System.err} and calls {@link #begin(OutputStream)} for each request; everything
+ * printed outside a request goes to the console.
+ */
+final class RequestOutput {
+    // This is not inherited, as pooled threads outlive the request which started them; tasks printing for a
+    // request are wrapped by forward.
+    private static final ThreadLocal<OutputStream> CURRENT = new ThreadLocal<>();
+
+    private RequestOutput() {
+    }
+
+    /**
+     * Sends what the current thread prints to the output until {@link #end()}.
+     */
+    static void begin(OutputStream output) {
+        CURRENT.set(output);
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Wraps a task submitted to another thread so that what it prints goes to the request which submitted it,
+     * if any.
+     */
+    static <T> Callable<T> forward(Callable<T> task) {
+        OutputStream output = CURRENT.get();
+        if (output == null) {
+            return task;
+        }
+        return () -> {
+            OutputStream previous = CURRENT.get();
+            CURRENT.set(output);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a stream which writes to the output of the current thread's request, or to the console outside
+     * requests.
+     */
+    static OutputStream routing(OutputStream console) {
+        return new RoutingStream(console);
+    }
+
+    private static class RoutingStream extends OutputStream {
+        private final OutputStream console;
+
+        RoutingStream(OutputStream console) {
+            this.console = console;
+        }
+
+        private OutputStream target() {
+            OutputStream target = CURRENT.get();
+            return target == null ? console : target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            OutputStream target = target();
+            synchronized (target) {
+                target.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            OutputStream target = target();
+            synchronized (target) {
+                target.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Where the manager core is unzipped to be modified before it is zipped again: the default temporary directory,
+ * a directory chosen by the user such as a tmpfs mount, or a {@link MemoryFileSystem} in or outside of the heap.
+ * The staging directories are created on the {@link FileSystem} of the area, so that the build only depends on
+ * the {@link Path} API.
+ */
+class StagingArea implements Closeable {
+    static final String AUTO = "auto";
+    static final String DISK = "disk";
+    static final String MEMORY = "memory";
+    static final String OFF_HEAP = "off-heap";
+    static final long DEFAULT_MEMORY_THRESHOLD = 32L * 1024 * 1024;
+
+    private final MemoryFileSystem memory;
+    private final Path parentDir;
+
+    private StagingArea(MemoryFileSystem memory, Path parentDir) {
+        this.memory = memory;
+        this.parentDir = parentDir;
+    }
+
+    /**
+     * Stages in the default temporary directory, or in {@code parentDir} if it is not {@code null}.
+     */
+    static StagingArea disk(Path parentDir) {
+        return new StagingArea(null, parentDir);
+    }
+
+    /**
+     * Stages in memory, in the heap or in direct buffers outside of it.
+     */
+    static StagingArea memory(boolean offHeap) {
+        return new StagingArea(new MemoryFileSystem(offHeap), null);
+    }
+
+    /**
+     * Picks the staging area for a core. In {@link #AUTO} mode, cores whose entries add up to at most
+     * {@code memoryThreshold} bytes once unzipped are staged in memory, and larger ones on disk, as are cores
+     * which are not known yet when {@code core} is {@code null}.
+     */
+    static StagingArea select(String mode, Path parentDir, Path core, long memoryThreshold) {
+        if (OFF_HEAP.equals(mode)) {
+            return memory(true);
+        }
+        if (MEMORY.equals(mode) || (AUTO.equals(mode) && core != null && unzippedSize(core) <= memoryThreshold)) {
+            return memory(false);
+        }
+        return disk(parentDir);
+    }
+
+    /**
+     * The total size of the entries of the core from its central directory, since they are staged uncompressed.
+     * A core whose central directory cannot be read counts as too large, and is left for the unzipping to report.
+     */
+    private static long unzippedSize(Path core) {
+        try (RawZipFile zip = RawZipFile.open(core)) {
+            long size = 0;
+            for (RawZipFile.Entry entry : zip.entries()) {
+                size += entry.size;
+            }
+            return size;
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    static boolean isMode(String mode) {
+        return AUTO.equals(mode) || DISK.equals(mode) || MEMORY.equals(mode) || OFF_HEAP.equals(mode);
+    }
+
+    boolean isMemory() {
+        return memory != null;
+    }
+
+    /**
+     * Creates a new empty directory to unzip a core into.
+     */
+    Path createDirectory() throws IOException {
+        if (memory != null) {
+            Path root = memory.getRootDirectories().iterator().next();
+            return Files.createTempDirectory(root, Janitor.STAGING_PREFIX);
+        }
+        if (parentDir != null) {
+            Files.createDirectories(parentDir);
+            return Files.createTempDirectory(parentDir, Janitor.prefix(Janitor.STAGING_PREFIX));
+        }
+        return Files.createTempDirectory(Janitor.prefix(Janitor.STAGING_PREFIX));
+    }
+
+    /**
+     * Releases the memory of an in-memory area. Disk areas leave their directories to be deleted by the caller.
+     */
+    @Override
+    public void close() throws IOException {
+        if (memory != null) {
+            memory.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (memory != null) {
+            return memory.isDirect() ? OFF_HEAP : MEMORY;
+        }
+        return parentDir != null ? parentDir.toString() : System.getProperty("java.io.tmpdir");
+    }
+}
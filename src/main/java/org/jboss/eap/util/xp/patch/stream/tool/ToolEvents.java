@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events emitted by the tool. Each phase of the build is recorded as one event, and the
+ * entries unpacked, compressed or copied as one event each, so that a recording shows which phase and which
+ * entries the time goes to. The events are enabled by default and cost next to nothing when nothing is recording.
+ */
+final class ToolEvents {
+    private static final String PREFIX = "org.jboss.eap.util.xp.patch.stream.tool.";
+    private static final String CATEGORY = "JBoss EAP XP Manager Tool";
+
+    private ToolEvents() {
+    }
+
+    /**
+     * Creates the event recording the phase of the build with the given {@link BuildReport} name.
+     */
+    static PhaseEvent forPhase(String phase) {
+        switch (phase) {
+            case BuildReport.DOWNLOAD:
+                return new Download();
+            case BuildReport.UNZIP:
+                return new Unzip();
+            case BuildReport.ZIP:
+                return new Zip();
+            case BuildReport.STREAM:
+                return new Stream();
+            case BuildReport.CLEANUP:
+                return new Cleanup();
+            default:
+                return new OtherPhase();
+        }
+    }
+
+    @Category(CATEGORY)
+    abstract static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Target")
+        @Description("The file, directory or URL the phase works on")
+        String target;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Entries")
+        long entries;
+    }
+
+    @Name(PREFIX + "Download")
+    @Label("Manager Core Download")
+    static final class Download extends PhaseEvent {
+    }
+
+    @Name(PREFIX + "Unzip")
+    @Label("Manager Core Unzip")
+    static final class Unzip extends PhaseEvent {
+    }
+
+    @Name(PREFIX + "Zip")
+    @Label("Manager Zip")
+    static final class Zip extends PhaseEvent {
+    }
+
+    @Name(PREFIX + "Stream")
+    @Label("Manager Stream")
+    @Description("Copy of the manager core to the manager jar without unzipping it")
+    static final class Stream extends PhaseEvent {
+    }
+
+    @Name(PREFIX + "Cleanup")
+    @Label("Cleanup")
+    static final class Cleanup extends PhaseEvent {
+    }
+
+    @Name(PREFIX + "Phase")
+    @Label("Build Phase")
+    static final class OtherPhase extends PhaseEvent {
+    }
+
+    @Name(PREFIX + "Entry")
+    @Label("Entry")
+    @Description("An entry unzipped from the manager core, compressed or stored into the manager, or copied into it as is")
+    @Category(CATEGORY)
+    static final class Entry extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Name")
+        String name;
+
+        @Label("Compressed Size")
+        @DataAmount
+        long compressedSize;
+
+        @Label("Uncompressed Size")
+        @DataAmount
+        long uncompressedSize;
+
+        Entry() {
+            begin();
+        }
+
+        void finish(String operation, String name, long compressedSize, long uncompressedSize) {
+            end();
+            if (shouldCommit()) {
+                this.operation = operation;
+                this.name = name;
+                this.compressedSize = compressedSize;
+                this.uncompressedSize = uncompressedSize;
+                commit();
+            }
+        }
+    }
+
+    @Name(PREFIX + "PatchConfig")
+    @Label("Patch Config Creation")
+    @Category(CATEGORY)
+    static final class PatchConfig extends Event {
+        @Label("Version")
+        String version;
+
+        @Label("File")
+        String file;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+}
@@ -0,0 +1,54 @@
+#!/bin/sh
+#
+# JBoss, Home of Professional Open Source
+# Copyright 2020, JBoss Inc., and individual contributors as indicated
+# by the @authors tag.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Runs the tool from the jar next to this script, with the class data sharing archive built by the cds profile
+# or by --create-cds-archive when there is one, which saves loading and verifying the classes of the tool on
+# every start. The archive is only used by the JVM which created it and for the jar at the path it was created
+# with; otherwise the JVM ignores it and starts as usual. Run with --create-cds-archive to create it again for the JVM and path in use.
+#
+# Environment:
+#   JAVA_HOME        the JVM to run the tool with, otherwise the java on the PATH
+#   JAVA_OPTS        further options for the JVM
+#   MANAGER_TOOL_CDS set to false to start without the archive
+
+DIR=$(cd "$(dirname "$0")" && pwd -P)
+JAR="$DIR/@project.build.finalName@.jar"
+JSA="$DIR/@project.build.finalName@.jsa"
+MAIN=org.jboss.eap.util.xp.patch.stream.tool.ManagerCreatorMain
+
+if [ -n "$JAVA_HOME" ]; then
+    JAVA="$JAVA_HOME/bin/java"
+else
+    JAVA=java
+fi
+
+if [ "$1" = "--create-cds-archive" ]; then
+    CLASSLIST="$DIR/@project.build.finalName@.classlist"
+    "$JAVA" -XX:DumpLoadedClassList="$CLASSLIST" -cp "$JAR" org.jboss.eap.util.xp.patch.stream.tool.CdsTraining || exit 1
+    rm -f "$JSA"
+    exec "$JAVA" -Xshare:dump -XX:SharedClassListFile="$CLASSLIST" -XX:SharedArchiveFile="$JSA" -cp "$JAR"
+fi
+
+CDS_OPTS=
+if [ "$MANAGER_TOOL_CDS" != "false" ] && [ -f "$JSA" ]; then
+    CDS_OPTS="-XX:SharedArchiveFile=$JSA -Xshare:auto"
+fi
+
+# JAVA_OPTS and CDS_OPTS are split into their options on purpose
+exec "$JAVA" $CDS_OPTS $JAVA_OPTS -cp "$JAR" $MAIN "$@"
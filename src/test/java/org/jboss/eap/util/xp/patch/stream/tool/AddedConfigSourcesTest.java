@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AddedConfigSourcesTest {
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("config-sources-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testFilesDirectoriesAndGlobs() throws Exception {
+        Path single = config("single/standalone-single.xml");
+        Path a = config("tree/a/standalone-a.xml");
+        Path b = config("tree/b/c/standalone-b.xml");
+        Files.write(dir.resolve("tree/readme.txt"), new byte[0]);
+        Path globbed = config("globbed/x/standalone-ha.xml");
+        config("globbed/x/other-ha.xml");
+
+        List<Path> configs = AddedConfigSources.resolve(dir, "single/standalone-single.xml, tree,globbed/**/standalone-*.xml", "--added-configs");
+        Assert.assertEquals(List.of(single, a, b, globbed), configs);
+    }
+
+    @Test
+    public void testIdenticalConfigsAreAddedOnce() throws Exception {
+        Path first = config("first/standalone-ha.xml");
+        config("second/standalone-ha.xml");
+        List<Path> configs = AddedConfigSources.resolve(dir, "first,second,first/standalone-ha.xml", "--added-configs");
+        Assert.assertEquals(List.of(first), configs);
+    }
+
+    @Test
+    public void testDifferentConfigsWithTheSameNameAreRejected() throws Exception {
+        config("first/standalone-ha.xml");
+        Path second = config("second/standalone-ha.xml");
+        Files.write(second, "<server xmlns=\"urn:jboss:domain:19.0\"/>".getBytes(StandardCharsets.UTF_8));
+        try {
+            AddedConfigSources.resolve(dir, "first,second", "--added-configs");
+            Assert.fail("The configs have the same name");
+        } catch (ManagerToolException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().endsWith("have the same name but different content"));
+        }
+    }
+
+    @Test
+    public void testSeparateSourcesAreDeduplicatedTogether() throws Exception {
+        config("first/standalone-ha.xml");
+        Path second = config("second/standalone-ha.xml");
+        Files.write(second, "<server xmlns=\"urn:jboss:domain:19.0\"/>".getBytes(StandardCharsets.UTF_8));
+        try {
+            new ManagerBuilder()
+                    .managerCore(dir.resolve("core.jar").toString())
+                    .addedConfigs(dir.resolve("first").toString())
+                    .addedConfigs(dir.resolve("second").toString())
+                    .creator();
+            Assert.fail("The configs have the same name");
+        } catch (ManagerToolException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().endsWith("have the same name but different content"));
+        }
+    }
+
+    @Test
+    public void testLinkLoopsAreNotFollowed() throws Exception {
+        Path config = config("tree/sub/standalone-ha.xml");
+        Files.createSymbolicLink(dir.resolve("tree/sub/loop"), dir.resolve("tree"));
+        Path linked = config("linked/standalone-linked.xml");
+        Files.createSymbolicLink(dir.resolve("tree/link"), dir.resolve("linked"));
+
+        List<Path> configs = AddedConfigSources.resolve(dir, "tree", "--added-configs");
+        Assert.assertEquals(List.of(dir.resolve("tree/link/standalone-linked.xml"), config), configs);
+        Assert.assertTrue(Files.isSameFile(linked, configs.get(0)));
+    }
+
+    @Test
+    public void testMissingSources() throws Exception {
+        Files.createDirectories(dir.resolve("empty"));
+        for (String source : new String[] {"missing.xml", "empty", "empty/*.xml"}) {
+            try {
+                AddedConfigSources.resolve(dir, source, "--added-configs");
+                Assert.fail(source + " has no configs");
+            } catch (ManagerToolException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("--added-configs"));
+            }
+        }
+    }
+
+    private Path config(String name) throws Exception {
+        Path file = dir.resolve(name);
+        Files.createDirectories(file.getParent());
+        return TestFiles.createConfig(file);
+    }
+}
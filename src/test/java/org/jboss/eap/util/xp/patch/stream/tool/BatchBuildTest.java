@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchBuildTest {
+    private Path dir;
+    private Path core;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("batch-test");
+        core = TestFiles.createCore(dir.resolve("core.jar"), 100, false, 11);
+        Files.createDirectories(dir.resolve("configs"));
+        TestFiles.createConfig(dir.resolve("configs/standalone-a.xml"));
+        TestFiles.createConfig(dir.resolve("configs/standalone-b.xml"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testEachVariantHasItsConfigs() throws Exception {
+        ManagerResult result = build(false);
+        Assert.assertEquals(Arrays.asList(dir.resolve("out/a/" + ManagerCreator.MANAGER_JAR_NAME), dir.resolve("out/ab/" + ManagerCreator.MANAGER_JAR_NAME)),
+                result.getManagers());
+
+        Map<String, byte[]> coreEntries = TestFiles.contents(core);
+        Map<String, byte[]> a = TestFiles.contents(result.getManagers().get(0));
+        Map<String, byte[]> ab = TestFiles.contents(result.getManagers().get(1));
+        Assert.assertTrue(a.containsKey(ManagerCreator.ADDED_CONFIGS_DIR + "standalone-a.xml"));
+        Assert.assertFalse(a.containsKey(ManagerCreator.ADDED_CONFIGS_DIR + "standalone-b.xml"));
+        Assert.assertTrue(ab.containsKey(ManagerCreator.ADDED_CONFIGS_DIR + "standalone-a.xml"));
+        Assert.assertTrue(ab.containsKey(ManagerCreator.ADDED_CONFIGS_DIR + "standalone-b.xml"));
+        for (Map.Entry<String, byte[]> entry : coreEntries.entrySet()) {
+            if (!entry.getKey().endsWith("/") && !entry.getKey().equals(ManagerCreator.MANIFEST_NAME)) {
+                Assert.assertArrayEquals(entry.getKey(), entry.getValue(), a.get(entry.getKey()));
+                Assert.assertArrayEquals(entry.getKey(), entry.getValue(), ab.get(entry.getKey()));
+            }
+        }
+        for (Path manager : result.getManagers()) {
+            Assert.assertEquals(Digests.sha256(manager), result.getSha256(manager));
+        }
+    }
+
+    @Test
+    public void testVariantsAreRestoredFromTheArtifactStore() throws Exception {
+        ManagerResult first = build(true);
+        byte[] a = Files.readAllBytes(first.getManagers().get(0));
+        Files.delete(first.getManagers().get(0));
+        ManagerResult second = build(true);
+        Assert.assertArrayEquals(a, Files.readAllBytes(second.getManagers().get(0)));
+    }
+
+    @Test
+    public void testVariantsCannotShareAnOutputDir() throws Exception {
+        Path descriptor = Files.write(dir.resolve("batch.properties"), ("variants=a,b\n"
+                + "a.output-dir=out\n"
+                + "b.output-dir=out/\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            new ManagerBuilder().managerCore(core.toString()).batch(descriptor).build();
+            Assert.fail("Both variants are written to the same directory");
+        } catch (ManagerToolException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("same output-dir"));
+        }
+    }
+
+    private ManagerResult build(boolean store) throws Exception {
+        Path descriptor = Files.write(dir.resolve("batch.properties"), ("variants=a,ab\n"
+                + "a.added-configs=configs/standalone-a.xml\n"
+                + "a.output-dir=out/a\n"
+                + "ab.added-configs=configs\n"
+                + "ab.output-dir=out/ab\n").getBytes(StandardCharsets.UTF_8));
+        ManagerBuilder builder = new ManagerBuilder()
+                .managerCore(core.toString())
+                .batch(descriptor);
+        if (store) {
+            builder.artifactStore(dir.resolve("store"));
+        }
+        return builder.build();
+    }
+}
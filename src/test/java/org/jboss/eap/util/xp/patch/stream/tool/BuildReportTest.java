@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BuildReportTest {
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("report-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testPhasesOfTheSameNameAreAddedUp() throws Exception {
+        Path json = dir.resolve("report.json");
+        BuildReport report = new BuildReport(false, json);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try (BuildReport.Phase phase = report.start(BuildReport.ZIP)) {
+                    phase.read(1000).written(250).entries(10);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        try (BuildReport.Phase phase = report.start(BuildReport.VERIFY)) {
+            phase.read(1000).written(4000).entries(40);
+        }
+        report.finish();
+
+        Assert.assertEquals(Arrays.asList(BuildReport.ZIP, BuildReport.VERIFY), new ArrayList<>(report.phaseMillis().keySet()));
+        String content = new String(Files.readAllBytes(json), StandardCharsets.UTF_8);
+        Assert.assertTrue(content, content.contains("\"success\": true"));
+        Assert.assertTrue(content, content.contains("{\"name\": \"zip\", \"timeMillis\": "));
+        Assert.assertTrue(content, content.contains("\"bytesRead\": 4000, \"bytesWritten\": 1000, \"entries\": 40, \"compressionRatio\": 0.2500"));
+        // Only the phases which compress or decompress have a ratio
+        Assert.assertTrue(content, content.contains("\"bytesRead\": 1000, \"bytesWritten\": 4000, \"entries\": 40"));
+        Assert.assertFalse(content, content.contains("\"compressionRatio\": 4.0000"));
+    }
+
+    @Test
+    public void testFailedBuildIsReported() throws Exception {
+        Path json = dir.resolve("report.json");
+        BuildReport report = new BuildReport(false, json);
+        report.start(BuildReport.DOWNLOAD).close();
+        report.failed();
+        report.finish();
+        Assert.assertTrue(new String(Files.readAllBytes(json), StandardCharsets.UTF_8).contains("\"success\": false"));
+    }
+
+    @Test
+    public void testBuildReportsItsPhases() throws Exception {
+        Path core = TestFiles.createCore(dir.resolve("core.jar"), 50, false, 12);
+        Path json = dir.resolve("report.json");
+        new ManagerBuilder()
+                .managerCore(core.toString())
+                .addedConfigs(TestFiles.createConfig(dir.resolve("standalone-test.xml")).toString())
+                .outputDir(dir.resolve("output"))
+                .staging("disk")
+                .reportFile(json)
+                .build();
+        String content = new String(Files.readAllBytes(json), StandardCharsets.UTF_8);
+        for (String phase : new String[] {BuildReport.UNZIP, BuildReport.VALIDATE_CONFIGS, BuildReport.MANIFEST, BuildReport.COPY_CONFIGS, BuildReport.ZIP, BuildReport.VERIFY}) {
+            Assert.assertTrue(phase + " in " + content, content.contains("{\"name\": \"" + phase + "\""));
+        }
+        Assert.assertTrue(content, content.contains("\"success\": true"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigCreatorTest {
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("config-creator-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testVersionsAndRanges() throws Exception {
+        Assert.assertEquals(List.of("2.0.0.GA", "2.0.3.GA", "2.0.4.GA", "2.0.5.GA", "3.0.1.GA"),
+                new ArrayList<>(ConfigCreator.parseVersions("2.0.0.GA,2.0.3.GA..2.0.5.GA,3.0.1.GA")));
+        Assert.assertEquals(List.of("2.0.7.GA"), new ArrayList<>(ConfigCreator.parseVersions("2.0.7.GA..2.0.7.GA")));
+        // Overlapping versions are only created once
+        Assert.assertEquals(List.of("2.0.1.GA", "2.0.2.GA", "2.0.3.GA"),
+                new ArrayList<>(ConfigCreator.parseVersions("2.0.1.GA..2.0.2.GA,2.0.2.GA..2.0.3.GA")));
+    }
+
+    @Test
+    public void testInvalidVersionsAndRanges() {
+        String[] invalid = {
+                "2.0.1", "2.0.1.Final", "2.0.GA", "", "2.0.3.GA..", "..2.0.3.GA",
+                "2.0.5.GA..2.0.3.GA", "2.0.1.GA..3.0.1.GA", "2.0.1.GA..2.1.1.GA",
+                "2.0.99999999999.GA", "2.0.1.GA..2.0.99999999999.GA", "99999999999.0.0.GA"
+        };
+        for (String versions : invalid) {
+            try {
+                ConfigCreator.parseVersions(versions);
+                Assert.fail(versions + " is not valid");
+            } catch (ManagerToolException expected) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testCreatesARange() throws Exception {
+        List<Path> configs = ConfigCreator.generate(ManagerCreatorMain.CREATE_CONFIG, "2.0.0.GA..2.0.2.GA", dir.toString());
+        List<Path> expected = new ArrayList<>();
+        for (int micro = 0; micro <= 2; micro++) {
+            expected.add(dir.resolve("patch-config-2.0." + micro + ".xml"));
+        }
+        Assert.assertEquals(expected, configs);
+        for (Path config : configs) {
+            Assert.assertTrue(config.toString(), Files.size(config) > 0);
+        }
+    }
+}
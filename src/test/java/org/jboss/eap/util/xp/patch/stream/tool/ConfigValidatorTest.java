@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigValidatorTest {
+    private final BuildReport report = new BuildReport(false, null);
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("validator-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testValidConfigs() throws Exception {
+        Path first = TestFiles.createConfig(dir.resolve("standalone-first.xml"));
+        Path second = TestFiles.createConfig(dir.resolve("standalone-second.xml"));
+        try (ConfigValidator validator = ConfigValidator.start(List.of(first, second, first), 2, report)) {
+            validator.await();
+            validator.check();
+        }
+    }
+
+    @Test
+    public void testMalformedConfigReportsTheLocation() throws Exception {
+        Path config = write("standalone-broken.xml", "<?xml version=\"1.0\"?>\n<server xmlns=\"urn:jboss:domain:19.0\">\n  <profile>\n</server>\n");
+        String message = awaitInvalid(config);
+        Assert.assertTrue(message, message.startsWith(config + ":4:3: invalid server configuration: "));
+    }
+
+    @Test
+    public void testWrongRootElementReportsTheLocation() throws Exception {
+        Path config = write("standalone-host.xml", "<?xml version=\"1.0\"?>\n\n<host xmlns=\"urn:jboss:domain:19.0\"/>\n");
+        String message = awaitInvalid(config);
+        Assert.assertTrue(message, message.startsWith(config + ":3:"));
+        Assert.assertTrue(message, message.endsWith("the root element is <host>, not <server>"));
+    }
+
+    @Test
+    public void testWrongNamespace() throws Exception {
+        Path config = write("standalone-other.xml", "<server xmlns=\"urn:example\"/>");
+        String message = awaitInvalid(config);
+        Assert.assertTrue(message, message.endsWith("the namespace of <server> is urn:example, not urn:jboss:domain:*"));
+    }
+
+    @Test
+    public void testCheckFailsWithoutWaitingForTheOtherConfigs() throws Exception {
+        Path config = write("standalone-broken.xml", "<server");
+        try (ConfigValidator validator = ConfigValidator.start(List.of(config), 1, report)) {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (System.currentTimeMillis() < deadline) {
+                validator.check();
+                Thread.sleep(10);
+            }
+            Assert.fail("The invalid config was not reported");
+        } catch (ConfigValidator.InvalidConfigException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith(config + ":1:"));
+        }
+    }
+
+    @Test
+    public void testBuildFailsOnInvalidConfig() throws Exception {
+        Path core = TestFiles.createCore(dir.resolve("core.jar"), 100, false, 17);
+        Path config = write("standalone-broken.xml", "<server");
+        Path output = dir.resolve("output");
+        try {
+            new ManagerBuilder()
+                    .managerCore(core.toString())
+                    .addedConfigs(config.toString())
+                    .streaming(false)
+                    .outputDir(output)
+                    .build();
+            Assert.fail(config + " is not valid");
+        } catch (ConfigValidator.InvalidConfigException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith(config + ":1:"));
+        }
+        String[] written = output.toFile().list();
+        Assert.assertTrue(written == null || written.length == 0);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String awaitInvalid(Path config) throws Exception {
+        Path valid = TestFiles.createConfig(dir.resolve("standalone-valid.xml"));
+        try (ConfigValidator validator = ConfigValidator.start(List.of(valid, config), 2, report)) {
+            validator.await();
+            Assert.fail(config + " is not valid");
+            return null;
+        } catch (ConfigValidator.InvalidConfigException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JanitorTest {
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("janitor-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testDiscardDeletesTree() throws Exception {
+        Path tree = dir.resolve("tree");
+        for (int i = 0; i < 200; i++) {
+            Path file = tree.resolve("sub" + (i % 3)).resolve("file" + i);
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[i]);
+        }
+        Janitor.discard(tree).get(30, TimeUnit.SECONDS);
+        Assert.assertFalse(Files.exists(tree));
+    }
+
+    @Test
+    public void testSweepOncePerDirectory() throws Exception {
+        long deadPid = deadPid();
+        Path abandoned = Files.createDirectories(dir.resolve(Janitor.STAGING_PREFIX + deadPid + "-1"));
+        Files.write(abandoned.resolve("file"), new byte[10]);
+        age(abandoned, 2);
+        // Could be a running build in another pid namespace
+        Path recent = Files.createDirectories(dir.resolve(Janitor.STAGING_PREFIX + deadPid + "-2"));
+        Path running = Files.createDirectories(dir.resolve(Janitor.prefix(Janitor.STAGING_PREFIX) + "1"));
+        age(running, 2);
+        Path unrelated = Files.createDirectories(dir.resolve("unrelated"));
+        age(unrelated, 2);
+
+        Janitor.sweep(dir);
+        awaitDeleted(abandoned);
+        Assert.assertFalse(Files.exists(abandoned));
+        Assert.assertTrue(Files.exists(recent));
+        Assert.assertTrue(Files.exists(running));
+        Assert.assertTrue(Files.exists(unrelated));
+
+        Path later = Files.createDirectories(dir.resolve(Janitor.STAGING_PREFIX + deadPid + "-3"));
+        age(later, 2);
+        Janitor.sweep(dir);
+        Thread.sleep(200);
+        Assert.assertTrue(Files.exists(later));
+    }
+
+    @Test
+    public void testSweepPartialDownloads() throws Exception {
+        String sha = Digests.toHex(new byte[32]);
+        Path stale = partial(Janitor.DOWNLOAD_PREFIX + "-" + sha + Janitor.PARTIAL_SUFFIX, 25);
+        Path staleProgress = partial(stale.getFileName() + Janitor.PROGRESS_SUFFIX, 25);
+        Path staleLock = partial(stale.getFileName() + Janitor.LOCK_SUFFIX, 25);
+        // Could still be resumed
+        Path resumable = partial(Janitor.DOWNLOAD_PREFIX + "-" + sha.replace('0', '1') + Janitor.PARTIAL_SUFFIX, 2);
+        Path locked = partial(Janitor.DOWNLOAD_PREFIX + "-" + sha.replace('0', '2') + Janitor.PARTIAL_SUFFIX, 25);
+        Path lockedLock = partial(locked.getFileName() + Janitor.LOCK_SUFFIX, 25);
+        Path abandoned = partial(Janitor.DOWNLOAD_PREFIX + deadPid() + "-1" + Janitor.PARTIAL_SUFFIX, 2);
+
+        try (FileChannel channel = FileChannel.open(lockedLock, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            Janitor.sweep(dir);
+            awaitDeleted(abandoned);
+            awaitDeleted(staleLock);
+        }
+        Assert.assertFalse(Files.exists(abandoned));
+        Assert.assertFalse(Files.exists(stale));
+        Assert.assertFalse(Files.exists(staleProgress));
+        Assert.assertFalse(Files.exists(staleLock));
+        Assert.assertTrue(Files.exists(resumable));
+        Assert.assertTrue(Files.exists(locked));
+        Assert.assertTrue(Files.exists(lockedLock));
+    }
+
+    private Path partial(String name, int hours) throws Exception {
+        Path file = Files.write(dir.resolve(name), new byte[10]);
+        age(file, hours);
+        return file;
+    }
+
+    private static void age(Path path, int hours) throws Exception {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(hours)));
+    }
+
+    private static void awaitDeleted(Path path) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (Files.exists(path) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long deadPid() throws Exception {
+        Process process = new ProcessBuilder(ProcessHandle.current().info().command().orElse("java"), "-version").redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        process.waitFor();
+        return process.pid();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagerArtifactStoreTest {
+    private Path dir;
+    private Path core;
+    private Path config;
+    private Path store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("store-test");
+        core = TestFiles.createCore(dir.resolve("core.jar"), 50, false, 3);
+        config = TestFiles.createConfig(dir.resolve("standalone-test.xml"));
+        store = dir.resolve("store");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testRestoredManagerIsACopy() throws Exception {
+        Path first = build("first", false);
+        byte[] built = Files.readAllBytes(first);
+        Path stored = storedManager();
+        Assert.assertFalse(Files.isSameFile(first, stored));
+        if (stored.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Assert.assertFalse(Files.getPosixFilePermissions(stored).contains(PosixFilePermission.OWNER_WRITE));
+        }
+
+        Path second = build("second", false);
+        Assert.assertArrayEquals(built, Files.readAllBytes(second));
+        Assert.assertFalse(Files.isSameFile(second, stored));
+        Assert.assertEquals(Digests.sha256(second) + "  " + second.getFileName() + "\n",
+                new String(Files.readAllBytes(second.resolveSibling(second.getFileName() + ".sha256")), StandardCharsets.UTF_8));
+
+        // Changing an output in place must not change what later builds get
+        Files.write(second, new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+        Path third = build("third", false);
+        Assert.assertArrayEquals(built, Files.readAllBytes(third));
+    }
+
+    @Test
+    public void testStreamedAndStagedManagersAreStoredApart() throws Exception {
+        build("staged", false);
+        build("streamed", true);
+        try (Stream<Path> files = Files.list(store)) {
+            Assert.assertEquals(2, files.filter(p -> p.toString().endsWith(".jar")).count());
+        }
+        Assert.assertNotEquals(
+                ManagerArtifactStore.key("0", Collections.singletonList(config), false, null, CompressionPolicy.parse(null, 0, null)),
+                ManagerArtifactStore.key("0", Collections.singletonList(config), true, null, CompressionPolicy.parse(null, 0, null)));
+    }
+
+    private Path build(String name, boolean streaming) throws Exception {
+        ManagerResult result = new ManagerBuilder()
+                .managerCore(core.toString())
+                .addedConfigs(config.toString())
+                .outputDir(dir.resolve(name))
+                .streaming(streaming)
+                .artifactStore(store)
+                .build();
+        return result.getManagers().get(0);
+    }
+
+    private Path storedManager() throws Exception {
+        try (Stream<Path> files = Files.list(store)) {
+            return files.filter(p -> p.toString().endsWith(".jar")).collect(Collectors.toList()).get(0);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagerCoreCacheTest {
+    private final Random random = new Random(4);
+    private Path dir;
+    private TestHttpServer server;
+    private ManagerCoreCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("cache-test");
+        server = new TestHttpServer(TestFiles.bytes(random, 100_000));
+        cache = new ManagerCoreCache(dir, ManagerCoreCache.DEFAULT_MAX_SIZE, new RangedDownloader(1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testUnchangedCoreIsRevalidated() throws Exception {
+        byte[] content = TestFiles.bytes(random, 100_000);
+        server.setContent(content);
+        Path first = cache.get(server.url());
+        Assert.assertArrayEquals(content, Files.readAllBytes(first));
+
+        server.clearRequests();
+        Path second = cache.get(server.url());
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(Collections.singletonList("304 -"), server.requests());
+    }
+
+    @Test
+    public void testChangedCoreIsReadFromTheRevalidationResponse() throws Exception {
+        Path first = cache.get(server.url());
+        byte[] changed = TestFiles.bytes(random, 120_000);
+        server.setContent(changed);
+
+        server.clearRequests();
+        Path second = cache.get(server.url());
+        Assert.assertNotEquals(first, second);
+        Assert.assertArrayEquals(changed, Files.readAllBytes(second));
+        Assert.assertEquals(Collections.singletonList("200 -"), server.requests());
+        Assert.assertEquals(Digests.sha256(second) + ".jar", second.getFileName().toString());
+    }
+
+    @Test
+    public void testTruncatedBlobIsDownloadedAgain() throws Exception {
+        Path blob = cache.get(server.url());
+        byte[] content = Files.readAllBytes(blob);
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.WRITE)) {
+            channel.truncate(content.length / 2);
+        }
+
+        server.clearRequests();
+        Assert.assertEquals(blob, cache.get(server.url()));
+        Assert.assertArrayEquals(content, Files.readAllBytes(blob));
+        Assert.assertEquals(Arrays.asList("206 bytes=0-0", "200 -"), server.requests());
+    }
+}
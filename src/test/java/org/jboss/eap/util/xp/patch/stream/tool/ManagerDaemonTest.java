@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagerDaemonTest {
+    private Path dir;
+    private String userHome;
+    private ManagerDaemon daemon;
+    private String token;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("daemon-test");
+        // The daemon writes its token under the home directory
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", dir.toString());
+        daemon = new ManagerDaemon(0);
+        daemon.start();
+        token = new String(Files.readAllBytes(daemon.getTokenFile()), StandardCharsets.US_ASCII);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (daemon != null) {
+            daemon.stop();
+        }
+        System.setProperty("user.home", userHome);
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        Path core = TestFiles.createCore(dir.resolve("core.jar"), 20, false, 1);
+        Path config = TestFiles.createConfig(dir.resolve("standalone-test.xml"));
+        Path output = dir.resolve("output");
+        Response response = post("/build", token,
+                ManagerCreatorMain.MANAGER_CORE + "=" + core + "\n"
+                        + ManagerCreatorMain.ADDED_CONFIGS + "=" + config + "\n"
+                        + ManagerCreatorMain.OUTPUT_DIR + "=" + output + "\n");
+        Assert.assertEquals(response.body, 200, response.status);
+        Assert.assertTrue(Files.exists(output.resolve(ManagerCreator.MANAGER_JAR_NAME)));
+
+        Response stats = get("/stats", token);
+        Assert.assertEquals(200, stats.status);
+        Assert.assertTrue(stats.body, stats.body.contains("requests=1\n"));
+    }
+
+    @Test
+    public void testProcessWideOptionsAreRefused() throws Exception {
+        for (String option : new String[] {"--daemon", "--daemon=0", "--help", "-h", "--jfr=" + dir.resolve("build.jfr")}) {
+            Response response = post("/build", token, ManagerCreatorMain.MANAGER_CORE + "=core.jar\n" + option + "\n");
+            Assert.assertEquals(response.body, 400, response.status);
+            Assert.assertTrue(response.body, response.body.startsWith(option + " "));
+        }
+        Assert.assertFalse(Files.exists(dir.resolve("build.jfr")));
+        // Nothing was started on the build threads
+        Assert.assertTrue(get("/stats", token).body.contains("requests=0\n"));
+    }
+
+    @Test
+    public void testRequestsNeedTheToken() throws Exception {
+        Assert.assertEquals(401, post("/build", null, ManagerCreatorMain.MANAGER_CORE + "=core.jar\n").status);
+        Assert.assertEquals(401, get("/stats", "not-the-token").status);
+    }
+
+    @Test
+    public void testInvalidArgumentsAreABadRequest() throws Exception {
+        Response response = post("/build", token, "--no-such-option\n");
+        Assert.assertEquals(400, response.status);
+        Assert.assertTrue(response.body, response.body.contains("Unknown argument: --no-such-option"));
+    }
+
+    private Response get(String path, String token) throws IOException {
+        return send(path, token, null);
+    }
+
+    private Response post(String path, String token, String body) throws IOException {
+        return send(path, token, body);
+    }
+
+    private Response send(String path, String token, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + daemon.getPort() + path).openConnection();
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        if (body != null) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, len);
+                }
+            }
+        }
+        return new Response(status, new String(content.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
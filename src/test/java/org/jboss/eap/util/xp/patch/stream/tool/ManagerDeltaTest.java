@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagerDeltaTest {
+    private final BufferPool pool = new BufferPool(64 * 1024, 16);
+    private final BuildReport report = new BuildReport(false, null);
+    private Path dir;
+    private Path baseline;
+    private Path manager;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("delta-test");
+        // The same seed gives the same first entries, so the manager only adds entries and changes the large ones
+        baseline = TestFiles.createCore(dir.resolve("baseline.jar"), 100, true, 8);
+        manager = TestFiles.createCore(dir.resolve("manager.jar"), 120, true, 8);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testApplyRebuildsManager() throws Exception {
+        Path delta = dir.resolve(ManagerDelta.DELTA_JAR_NAME);
+        ManagerDelta.create(baseline, manager, delta, pool, report);
+        Assert.assertTrue(Files.size(delta) < Files.size(manager));
+        Assert.assertEquals(Digests.sha256(delta), Files.readAllLines(delta.resolveSibling(delta.getFileName() + ".sha256")).get(0).split(" ")[0]);
+
+        Path rebuilt = dir.resolve("rebuilt.jar");
+        Digests.Sidecars sidecars = new Digests.Sidecars();
+        ManagerDelta.apply(baseline, delta, rebuilt, pool, report, sidecars);
+        assertSameEntries(manager, rebuilt);
+        sidecars.write(rebuilt);
+        Assert.assertEquals(Digests.sha256(rebuilt), Files.readAllLines(rebuilt.resolveSibling(rebuilt.getFileName() + ".sha256")).get(0).split(" ")[0]);
+    }
+
+    @Test
+    public void testApplyRejectsOtherBaseline() throws Exception {
+        Path delta = dir.resolve(ManagerDelta.DELTA_JAR_NAME);
+        ManagerDelta.create(baseline, manager, delta, pool, report);
+        Path other = TestFiles.createCore(dir.resolve("other.jar"), 100, true, 9);
+        Path rebuilt = dir.resolve("rebuilt.jar");
+        try {
+            ManagerDelta.apply(other, delta, rebuilt, pool, report, new Digests.Sidecars());
+            Assert.fail("A delta applied to another baseline should fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("from the baseline the delta was created against"));
+        }
+        Assert.assertFalse(Files.exists(rebuilt));
+    }
+
+    @Test
+    public void testApplyRejectsManager() throws Exception {
+        try {
+            ManagerDelta.apply(baseline, manager, dir.resolve("rebuilt.jar"), pool, report, new Digests.Sidecars());
+            Assert.fail("A manager is not a delta");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("is not a manager delta"));
+        }
+    }
+
+    private static void assertSameEntries(Path expected, Path actual) throws IOException {
+        try (ZipFile expectedZip = new ZipFile(expected.toFile());
+             ZipFile actualZip = new ZipFile(actual.toFile())) {
+            Assert.assertEquals(expectedZip.size(), actualZip.size());
+            for (ZipEntry entry : Collections.list(expectedZip.entries())) {
+                ZipEntry other = actualZip.getEntry(entry.getName());
+                Assert.assertNotNull(entry.getName(), other);
+                try (InputStream in = expectedZip.getInputStream(entry);
+                     InputStream otherIn = actualZip.getInputStream(other)) {
+                    Assert.assertArrayEquals(entry.getName(), in.readAllBytes(), otherIn.readAllBytes());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ManagerVerifierTest {
+    private final BufferPool pool = new BufferPool(64 * 1024, 16);
+    private final BuildReport report = new BuildReport(false, null);
+    private Path dir;
+    private Path config;
+    private Path manager;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("verifier-test");
+        Path core = TestFiles.createCore(dir.resolve("core.jar"), 100, false, 13);
+        config = TestFiles.createConfig(dir.resolve("standalone-test.xml"));
+        manager = new ManagerBuilder()
+                .managerCore(core.toString())
+                .addedConfigs(config.toString())
+                .outputDir(dir.resolve("output"))
+                .build()
+                .getManagers().get(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testBuiltManagerIsValid() throws Exception {
+        ManagerVerifier.verify(manager, Collections.singletonList(config), 4, pool, report);
+    }
+
+    @Test
+    public void testCorruptEntryIsFound() throws Exception {
+        try (RawZipFile zip = RawZipFile.open(manager)) {
+            RawZipFile.Entry entry = zip.entries().get(zip.entries().size() / 2);
+            long offset = zip.getDataOffset(entry) + entry.compressedSize / 2;
+            try (FileChannel channel = FileChannel.open(manager, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer b = ByteBuffer.allocate(1);
+                channel.read(b, offset);
+                b.put(0, (byte) ~b.get(0));
+                channel.write(b.flip(), offset);
+            }
+        }
+        assertInvalid(Collections.singletonList(config), null);
+    }
+
+    @Test
+    public void testMissingAddedConfigIsFound() throws Exception {
+        Path other = TestFiles.createConfig(dir.resolve("standalone-other.xml"));
+        assertInvalid(List.of(config, other), "has no " + ManagerCreator.ADDED_CONFIGS_DIR + "standalone-other.xml");
+    }
+
+    @Test
+    public void testManifestWithoutLayersIsFound() throws Exception {
+        Path zip = dir.resolve("no-layers.jar");
+        try (RawZipWriter writer = new RawZipWriter(FileChannel.open(zip, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), null, pool)) {
+            writer.write(ManagerCreator.MANIFEST_NAME, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        manager = zip;
+        assertInvalid(null, "has no " + ManagerCreator.LAYERS_MANIFEST_KEY);
+    }
+
+    private void assertInvalid(List<Path> configs, String message) throws Exception {
+        try {
+            ManagerVerifier.verify(manager, configs, 4, pool, report);
+            Assert.fail(manager + " is not valid");
+        } catch (ZipException e) {
+            if (message != null) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+            }
+        } catch (IOException e) {
+            Assert.assertNull(e.toString(), message);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Covers the operations which {@link StagingArea} and the unzipping and zipping of a staged core use, on both the
+ * heap and the off-heap file systems.
+ */
+public class MemoryFileSystemTest {
+    private static final boolean[] DIRECT = {false, true};
+
+    @Test
+    public void testFilesGrowingAcrossBlocks() throws Exception {
+        for (boolean direct : DIRECT) {
+            try (MemoryFileSystem fileSystem = new MemoryFileSystem(direct)) {
+                Path dir = Files.createDirectory(fileSystem.getPath("/staging"));
+                Random random = new Random(1);
+                for (int size : new int[]{0, 1, 100, 64 * 1024 - 1, 64 * 1024, 64 * 1024 + 1, 300 * 1000}) {
+                    byte[] data = TestFiles.bytes(random, size);
+                    Path file = dir.resolve("file-" + size);
+                    // Written in small pieces, so that the blocks grow many times
+                    try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        for (int offset = 0; offset < size; offset += 777) {
+                            channel.write(ByteBuffer.wrap(data, offset, Math.min(777, size - offset)));
+                        }
+                    }
+                    Assert.assertEquals(size, Files.size(file));
+                    Assert.assertArrayEquals(data, Files.readAllBytes(file));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWritesPastTheEndAndTruncation() throws Exception {
+        for (boolean direct : DIRECT) {
+            try (MemoryFileSystem fileSystem = new MemoryFileSystem(direct)) {
+                Path file = fileSystem.getPath("/sparse");
+                try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+                    channel.position(200 * 1000).write(ByteBuffer.wrap(new byte[]{4}));
+                    Assert.assertEquals(200 * 1000 + 1, channel.size());
+
+                    channel.truncate(2);
+                    channel.position(10).write(ByteBuffer.wrap(new byte[]{5}));
+                }
+                byte[] expected = new byte[11];
+                expected[0] = 1;
+                expected[1] = 2;
+                expected[10] = 5;
+                // The truncated bytes read as zeros once the file grows again
+                Assert.assertArrayEquals(expected, Files.readAllBytes(file));
+                // Truncated when opened again for writing
+                Files.newByteChannel(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING).close();
+                Assert.assertEquals(0, Files.size(file));
+            }
+        }
+    }
+
+    @Test
+    public void testStagingOperations() throws Exception {
+        Path dir = Files.createTempDirectory("memory-test");
+        try (StagingArea area = StagingArea.memory(false)) {
+            Path staging = area.createDirectory();
+            Assert.assertNotEquals(staging, area.createDirectory());
+            Assert.assertTrue(Files.isDirectory(staging));
+
+            Path manifest = staging.resolve("META-INF/MANIFEST.MF");
+            Files.createDirectories(manifest.getParent());
+            Files.createDirectories(manifest.getParent());
+            try (OutputStream out = Files.newOutputStream(manifest)) {
+                out.write("Manifest-Version: 1.0\r\n".getBytes());
+            }
+            try (InputStream in = Files.newInputStream(manifest)) {
+                Assert.assertEquals('M', in.read());
+            }
+            Files.delete(manifest);
+            Assert.assertFalse(Files.exists(manifest));
+
+            // The added configs are copied in from the default file system
+            Path config = TestFiles.createConfig(dir.resolve("standalone-test.xml"));
+            Path copy = staging.resolve("added-configs").resolve(config.getFileName().toString());
+            Files.createDirectories(copy.getParent());
+            Files.copy(config, copy);
+            Assert.assertArrayEquals(Files.readAllBytes(config), Files.readAllBytes(copy));
+            Assert.assertEquals(Files.size(config), Files.size(copy));
+            Assert.assertTrue(Files.getLastModifiedTime(copy).compareTo(FileTime.fromMillis(0)) > 0);
+
+            Files.write(staging.resolve("b-a.txt"), new byte[3]);
+            Files.createDirectories(staging.resolve("a/b"));
+            Files.write(staging.resolve("a/b/c.txt"), new byte[5]);
+            List<String> walked = new ArrayList<>();
+            Files.walkFileTree(staging, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    walked.add(staging.relativize(file) + ":" + attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Assert.assertEquals(Arrays.asList("a/b/c.txt:5", "added-configs/standalone-test.xml:" + Files.size(config), "b-a.txt:3"), walked);
+
+            try {
+                Files.delete(staging);
+                Assert.fail();
+            } catch (DirectoryNotEmptyException expected) {
+            }
+            try {
+                Files.newByteChannel(staging.resolve("missing/file"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                Assert.fail();
+            } catch (NoSuchFileException expected) {
+            }
+        } finally {
+            TestFiles.delete(dir);
+        }
+    }
+
+    @Test
+    public void testUnsupportedOperations() throws Exception {
+        MemoryFileSystem fileSystem = new MemoryFileSystem(false);
+        Path file = Files.write(fileSystem.getPath("/file.xml"), new byte[1]);
+        for (Operation operation : new Operation[]{
+                () -> fileSystem.getPathMatcher("glob:*"),
+                () -> file.toUri(),
+                () -> file.startsWith(file.getParent()),
+                () -> fileSystem.newWatchService(),
+                () -> Files.copy(file, fileSystem.getPath("/copy.xml")),
+                () -> Files.move(file, fileSystem.getPath("/moved.xml")),
+                () -> Files.setAttribute(file, "lastModifiedTime", FileTime.fromMillis(0))
+        }) {
+            try {
+                operation.run();
+                Assert.fail();
+            } catch (UnsupportedOperationException expected) {
+            }
+        }
+        try {
+            file.resolve(Paths.get("other"));
+            Assert.fail();
+        } catch (ProviderMismatchException expected) {
+        }
+
+        fileSystem.close();
+        try {
+            Files.readAllBytes(file);
+            Assert.fail();
+        } catch (ClosedFileSystemException expected) {
+        }
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
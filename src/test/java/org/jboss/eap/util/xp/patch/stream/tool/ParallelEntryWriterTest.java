@@ -0,0 +1,133 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelEntryWriterTest {
+    private static final long MB = 1024 * 1024;
+
+    private final Random random = new Random(9);
+    private final BufferPool pool = new BufferPool(64 * 1024, 16);
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("parallel-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testEntriesAreWrittenInSubmissionOrder() throws Exception {
+        Path zip = dir.resolve("out.zip");
+        List<byte[]> contents = new ArrayList<>();
+        try (RawZipWriter writer = new RawZipWriter(open(zip), null, pool);
+             ParallelEntryWriter parallel = new ParallelEntryWriter(writer, 4)) {
+            for (int i = 0; i < 40; i++) {
+                String name = "entry" + i + ".txt";
+                byte[] data = TestFiles.text(random, 1000 + i);
+                contents.add(data);
+                // The first entries of each round take the longest
+                long delay = 10 - i % 10;
+                parallel.submit(() -> {
+                    Thread.sleep(delay);
+                    return RawZipWriter.CompressedEntry.deflate(name, data, data.length, RawZipWriter.toDosTime(0));
+                });
+                if (i == 20) {
+                    byte[] large = TestFiles.text(random, 10_000);
+                    parallel.writeInOrder(w -> w.write("large.txt", large));
+                }
+            }
+            parallel.flush();
+        }
+        List<String> names = new ArrayList<>();
+        try (RawZipFile in = RawZipFile.open(zip)) {
+            for (RawZipFile.Entry entry : in.entries()) {
+                names.add(entry.getName());
+                if (!entry.getName().equals("large.txt")) {
+                    int i = Integer.parseInt(entry.getName().replaceAll("\\D", ""));
+                    Assert.assertArrayEquals(contents.get(i), in.read(entry));
+                }
+            }
+        }
+        Assert.assertEquals(41, names.size());
+        Assert.assertEquals("entry20.txt", names.get(20));
+        Assert.assertEquals("large.txt", names.get(21));
+        Assert.assertEquals("entry21.txt", names.get(22));
+    }
+
+    @Test
+    public void testFailedEntryFailsTheWrite() throws Exception {
+        try (RawZipWriter writer = new RawZipWriter(open(dir.resolve("out.zip")), null, pool);
+             ParallelEntryWriter parallel = new ParallelEntryWriter(writer, 2)) {
+            parallel.submit(() -> {
+                throw new IOException("Cannot read entry");
+            });
+            parallel.flush();
+            Assert.fail("The entry could not be compressed");
+        } catch (IOException e) {
+            Assert.assertEquals("Cannot read entry", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testManagerHasTheCoreEntriesWhateverThreads() throws Exception {
+        Path core = TestFiles.createCore(dir.resolve("core.jar"), 200, true, 10);
+        Map<String, byte[]> expected = TestFiles.contents(core);
+        for (int threads : new int[] {1, 8}) {
+            // Little memory, so that the large entries are written straight between the parallel ones
+            Path manager = new ManagerBuilder()
+                    .managerCore(core.toString())
+                    .outputDir(dir.resolve("threads-" + threads))
+                    .staging("disk")
+                    .threads(threads)
+                    .maxMemory(16 * MB)
+                    .build()
+                    .getManagers().get(0);
+            Map<String, byte[]> actual = TestFiles.contents(manager);
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                if (!entry.getKey().endsWith("/") && !entry.getKey().equals(ManagerCreator.MANIFEST_NAME)) {
+                    Assert.assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
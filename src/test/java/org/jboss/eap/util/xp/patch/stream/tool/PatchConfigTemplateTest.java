@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the compiled template against the line by line replacement it replaced.
+ */
+public class PatchConfigTemplateTest {
+    private static final String[] VALUES = {"2.0.14.GA", "2.0.15", "jboss-eap-xp-2.0"};
+
+    @Test
+    public void testBundledTemplateRendersLikeLineReplacement() throws Exception {
+        String template;
+        try (InputStream in = PatchConfigTemplate.class.getClassLoader().getResourceAsStream(PatchConfigTemplate.RESOURCE)) {
+            template = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Assert.assertTrue(template.contains("${applies.to.version}"));
+        Assert.assertEquals(replaceLines(template), render(PatchConfigTemplate.bundled()));
+    }
+
+    @Test
+    public void testLineEndingsAndOtherPlaceholders() throws Exception {
+        String template = "<a v=\"${applies.to.version}\">${unknown}\r\n"
+                + "${expansion.pack.version}${xp.patch.stream.name}\r"
+                + "$${expansion.pack.version}${";
+        Assert.assertEquals(replaceLines(template), render(PatchConfigTemplate.compile(template)));
+        Assert.assertEquals("<a v=\"2.0.14.GA\">${unknown}\n2.0.15jboss-eap-xp-2.0\n$2.0.15${\n", render(PatchConfigTemplate.compile(template)));
+    }
+
+    private static String render(PatchConfigTemplate template) {
+        return StandardCharsets.UTF_8.decode(template.render(VALUES)).toString();
+    }
+
+    /**
+     * How the template used to be rendered.
+     */
+    private static String replaceLines(String template) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new StringReader(template));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.replace("${applies.to.version}", VALUES[PatchConfigTemplate.APPLIES_TO_VERSION]);
+            line = line.replace("${expansion.pack.version}", VALUES[PatchConfigTemplate.EXPANSION_PACK_VERSION]);
+            line = line.replace("${xp.patch.stream.name}", VALUES[PatchConfigTemplate.PATCH_STREAM_NAME]);
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
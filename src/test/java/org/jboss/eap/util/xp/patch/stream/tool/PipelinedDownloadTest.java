@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedDownloadTest {
+    private static final long MB = 1024 * 1024;
+
+    private Path dir;
+    private Path config;
+    private TestHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("pipelined-test");
+        config = TestFiles.createConfig(dir.resolve("standalone-test.xml"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testSameEntriesAsStreamedManager() throws Exception {
+        Path core = serve(TestFiles.createCore(dir.resolve("core.jar"), 200, false, 5));
+        Path pipelined = build("pipelined", true, null, 256 * MB);
+        Assert.assertEquals(entries(build("streamed", false, core.toString(), 256 * MB)), entries(pipelined));
+        Assert.assertEquals(1, server.requests().size());
+    }
+
+    @Test
+    public void testLargeEntryWithDataDescriptorFallsBackToTheDownloadedCore() throws Exception {
+        // The entries of a JarOutputStream are followed by data descriptors
+        Path core = serve(TestFiles.createCore(dir.resolve("core.jar"), 20, true, 6));
+        PrintStream err = System.err;
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        Path pipelined;
+        System.setErr(new PrintStream(messages, true, StandardCharsets.UTF_8));
+        try {
+            pipelined = build("pipelined", true, null, MB);
+        } finally {
+            System.setErr(err);
+        }
+        String printed = new String(messages.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertTrue(printed, printed.contains("large.txt is followed by a data descriptor"));
+        Assert.assertEquals(entries(build("streamed", false, core.toString(), MB)), entries(pipelined));
+        Assert.assertEquals(1, server.requests().size());
+    }
+
+    @Test
+    public void testWrongSha256FailsWithoutOutput() throws Exception {
+        serve(TestFiles.createCore(dir.resolve("core.jar"), 20, false, 7));
+        try {
+            new ManagerBuilder()
+                    .managerCore(server.url().toString())
+                    .managerCoreSha256(Digests.toHex(new byte[32]))
+                    .pipelined(true)
+                    .outputDir(dir.resolve("pipelined"))
+                    .build();
+            Assert.fail("The core does not have the expected SHA-256");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("SHA-256"));
+        }
+        Assert.assertFalse(Files.exists(dir.resolve("pipelined").resolve(ManagerCreator.MANAGER_JAR_NAME)));
+    }
+
+    @Test(timeout = 30_000)
+    public void testUnexpectedDownloadErrorEndsTheStream() throws Exception {
+        URL url = new URL(null, "test:core.jar", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                return new URLConnection(u) {
+                    @Override
+                    public void connect() {
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        return new InputStream() {
+                            private int read;
+
+                            @Override
+                            public int read() {
+                                if (read++ == 100_000) {
+                                    throw new IllegalStateException("Broken stream");
+                                }
+                                return 0;
+                            }
+                        };
+                    }
+                };
+            }
+        });
+        Path core = null;
+        try {
+            core = new PipelinedDownload(url, null, null).download(in -> {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // Read to the end, which never comes
+                }
+                return true;
+            });
+            Assert.fail("The download failed");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Broken stream"));
+        } finally {
+            if (core != null) {
+                Files.deleteIfExists(core);
+            }
+        }
+    }
+
+    private Path serve(Path core) throws IOException {
+        server = new TestHttpServer(Files.readAllBytes(core));
+        return core;
+    }
+
+    private Path build(String name, boolean pipelined, String core, long maxMemory) throws Exception {
+        ManagerResult result = new ManagerBuilder()
+                .managerCore(pipelined ? server.url().toString() : core)
+                .pipelined(pipelined)
+                .streaming(!pipelined)
+                .addedConfigs(config.toString())
+                .outputDir(dir.resolve(name))
+                .maxMemory(maxMemory)
+                .build();
+        return result.getManagers().get(0);
+    }
+
+    /**
+     * The names and CRCs of the entries, except for the manifest, whose attributes are written in any order.
+     */
+    private static Map<String, Long> entries(Path manager) throws IOException {
+        Map<String, Long> entries = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(manager.toFile())) {
+            Enumeration<? extends ZipEntry> e = zip.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                if (!entry.getName().equals(ManagerCreator.MANIFEST_NAME)) {
+                    entries.put(entry.getName(), entry.getCrc());
+                }
+            }
+        }
+        return entries;
+    }
+}
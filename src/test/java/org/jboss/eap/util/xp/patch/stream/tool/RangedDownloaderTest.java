@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RangedDownloaderTest {
+    private static final int CHUNK = 4 * 1024 * 1024;
+
+    private final Random random = new Random(5);
+    private Path dir;
+    private TestHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("download-test");
+        server = new TestHttpServer(TestFiles.bytes(random, 2 * CHUNK + 12345));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testDownloadsInRanges() throws Exception {
+        byte[] content = TestFiles.bytes(random, 2 * CHUNK + 1);
+        server.setContent(content);
+        Path target = dir.resolve("core.jar");
+        RangedDownloader.RemoteFile remote = new RangedDownloader(4).download(server.url(), dir, target);
+        Assert.assertArrayEquals(content, Files.readAllBytes(target));
+        Assert.assertEquals(content.length, remote.length);
+        Assert.assertTrue(remote.acceptsRanges);
+        Assert.assertTrue(server.requests().contains("206 bytes=" + 2 * CHUNK + "-" + 2 * CHUNK));
+    }
+
+    @Test
+    public void testKeepsTheWholeFileSentToTheProbe() throws Exception {
+        byte[] content = TestFiles.bytes(random, CHUNK + 1);
+        server.setContent(content);
+        server.ignoreRanges(true);
+        Path target = dir.resolve("core.jar");
+        RangedDownloader.RemoteFile remote = new RangedDownloader(4).download(server.url(), dir, target);
+        Assert.assertArrayEquals(content, Files.readAllBytes(target));
+        Assert.assertEquals(content.length, remote.length);
+        Assert.assertFalse(remote.acceptsRanges);
+        Assert.assertEquals(List.of("200 bytes=0-0"), server.requests());
+    }
+
+    @Test
+    public void testResumesFailedDownload() throws Exception {
+        byte[] content = TestFiles.bytes(random, 2 * CHUNK + 12345);
+        server.setContent(content);
+        Path target = dir.resolve("core.jar");
+        server.failRanges(start -> start == CHUNK);
+        try {
+            new RangedDownloader(2).download(server.url(), dir, target);
+            Assert.fail("The download should have failed");
+        } catch (IOException e) {
+            Assert.assertFalse(Files.exists(target));
+        }
+
+        server.failRanges(start -> false);
+        server.clearRequests();
+        new RangedDownloader(2).download(server.url(), dir, target);
+        Assert.assertArrayEquals(content, Files.readAllBytes(target));
+        List<String> requests = server.requests();
+        Assert.assertFalse(requests.toString(), requests.contains("206 bytes=0-" + (CHUNK - 1)));
+        Assert.assertTrue(requests.toString(), requests.contains("206 bytes=" + CHUNK + "-" + (2 * CHUNK - 1)));
+    }
+
+    @Test
+    public void testRestartsWhenTheFileChanged() throws Exception {
+        Path target = dir.resolve("core.jar");
+        server.failRanges(start -> start == CHUNK);
+        try {
+            new RangedDownloader(2).download(server.url(), dir, target);
+            Assert.fail("The download should have failed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        byte[] changed = TestFiles.bytes(random, 2 * CHUNK + 12345);
+        server.setContent(changed);
+        server.failRanges(start -> false);
+        server.clearRequests();
+        new RangedDownloader(2).download(server.url(), dir, target);
+        Assert.assertArrayEquals(changed, Files.readAllBytes(target));
+        Assert.assertTrue(server.requests().contains("206 bytes=0-" + (CHUNK - 1)));
+    }
+}
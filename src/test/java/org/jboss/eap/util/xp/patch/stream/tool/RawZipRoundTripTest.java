@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RawZipRoundTripTest {
+    private final Random random = new Random(6);
+    private final BufferPool pool = new BufferPool(64 * 1024, 16);
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("zip-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testEntriesWrittenEveryWayReadBack() throws Exception {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("deflated.txt", TestFiles.text(random, 100_000));
+        expected.put("empty.txt", new byte[0]);
+        expected.put("stored.bin", TestFiles.bytes(random, 200_000));
+        expected.put("streamed.txt", TestFiles.text(random, 300_000));
+        expected.put("streamed-stored.bin", TestFiles.bytes(random, 150_000));
+        Path zip = dir.resolve("out.zip");
+        long dosTime = RawZipWriter.toDosTime(System.currentTimeMillis());
+        try (RawZipWriter writer = new RawZipWriter(open(zip), null, pool)) {
+            writer.write("deflated.txt", expected.get("deflated.txt"));
+            writer.write("empty.txt", expected.get("empty.txt"));
+            byte[] stored = expected.get("stored.bin");
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            writer.write("stored.bin", RawZipFile.STORED, crc.getValue(), stored.length, stored, stored.length, dosTime);
+            try (SeekableByteChannel in = Files.newByteChannel(Files.write(dir.resolve("streamed.txt"), expected.get("streamed.txt")))) {
+                writer.writeDeflated("streamed.txt", in, dosTime, () -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+            }
+            try (SeekableByteChannel in = Files.newByteChannel(Files.write(dir.resolve("streamed-stored.bin"), expected.get("streamed-stored.bin")))) {
+                writer.writeStored("streamed-stored.bin", in, dosTime);
+            }
+        }
+
+        assertContent(zip, expected);
+        try (RawZipFile raw = RawZipFile.open(zip)) {
+            Assert.assertEquals(RawZipFile.DEFLATED, raw.getEntry("deflated.txt").method);
+            Assert.assertEquals(RawZipFile.STORED, raw.getEntry("stored.bin").method);
+            Assert.assertEquals(RawZipFile.DEFLATED, raw.getEntry("streamed.txt").method);
+            Assert.assertEquals(RawZipFile.STORED, raw.getEntry("streamed-stored.bin").method);
+            for (RawZipFile.Entry entry : raw.entries()) {
+                Assert.assertEquals(0, entry.flags & RawZipFile.FLAG_DATA_DESCRIPTOR);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                raw.extract(entry, Channels.newChannel(out), pool);
+                Assert.assertArrayEquals(entry.getName(), expected.get(entry.getName()), out.toByteArray());
+                Assert.assertArrayEquals(entry.getName(), expected.get(entry.getName()), raw.read(entry));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyKeepsCompressedData() throws Exception {
+        Path core = TestFiles.createCore(dir.resolve("core.jar"), 50, true, 7);
+        Path copy = dir.resolve("copy.jar");
+        try (RawZipFile source = RawZipFile.open(core);
+             RawZipWriter writer = new RawZipWriter(open(copy), null, pool)) {
+            for (RawZipFile.Entry entry : source.entries()) {
+                writer.copy(source, entry);
+            }
+        }
+
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(core.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    expected.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        assertContent(copy, expected);
+        try (RawZipFile source = RawZipFile.open(core);
+             RawZipFile target = RawZipFile.open(copy)) {
+            for (RawZipFile.Entry entry : source.entries()) {
+                RawZipFile.Entry copied = target.getEntry(entry.getName());
+                Assert.assertEquals(entry.compressedSize, copied.compressedSize);
+                Assert.assertEquals(entry.crc, copied.crc);
+                Assert.assertEquals(source.data(entry), target.data(copied));
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicateNamesAreRejected() throws Exception {
+        try (RawZipWriter writer = new RawZipWriter(open(dir.resolve("dup.zip")), null, pool)) {
+            writer.write("a.txt", new byte[]{1});
+            try {
+                writer.write("a.txt", new byte[]{2});
+                Assert.fail("The duplicate entry should have been rejected");
+            } catch (ZipException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static FileChannel open(Path path) throws Exception {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void assertContent(Path path, Map<String, byte[]> expected) throws Exception {
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            List<String> names = Collections.list(zip.entries()).stream().map(ZipEntry::getName).collect(Collectors.toList());
+            Assert.assertEquals(Arrays.asList(expected.keySet().toArray()), names);
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                try (InputStream in = zip.getInputStream(zip.getEntry(entry.getKey()))) {
+                    Assert.assertArrayEquals(entry.getKey(), entry.getValue(), in.readAllBytes());
+                }
+            }
+        }
+    }
+}
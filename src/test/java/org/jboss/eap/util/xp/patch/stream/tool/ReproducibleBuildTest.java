@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that reproducible managers are byte-identical whatever the threads and memory they are built with,
+ * which decide which entries are compressed in memory and which straight to the manager.
+ */
+public class ReproducibleBuildTest {
+    private static final long MB = 1024 * 1024;
+
+    private Path dir;
+    private Path core;
+    private Path config;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("reproducible-test");
+        core = TestFiles.createCore(dir.resolve("core.jar"), 200, true, 1);
+        config = TestFiles.createConfig(dir.resolve("standalone-test.xml"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testIdenticalWhateverThreadsAndMemory() throws Exception {
+        byte[] expected = build("disk", 1, 2048 * MB);
+        Assert.assertArrayEquals(expected, build("disk", 8, 2048 * MB));
+        Assert.assertArrayEquals(expected, build("disk", 1, 16 * MB));
+        Assert.assertArrayEquals(expected, build("disk", 8, 16 * MB));
+    }
+
+    @Test
+    public void testIdenticalWhateverStaging() throws Exception {
+        byte[] expected = build("disk", 4, 64 * MB);
+        Assert.assertArrayEquals(expected, build("memory", 4, 64 * MB));
+        Assert.assertArrayEquals(expected, build("off-heap", 4, 64 * MB));
+    }
+
+    private byte[] build(String staging, int threads, long maxMemory) throws Exception {
+        Path outputDir = dir.resolve(staging + "-" + threads + "-" + maxMemory);
+        ManagerResult result = new ManagerBuilder()
+                .managerCore(core.toString())
+                .addedConfigs(config.toString())
+                .outputDir(outputDir)
+                .staging(staging)
+                .threads(threads)
+                .maxMemory(maxMemory)
+                .reproducible(true)
+                .build();
+        Path manager = result.getManagers().get(0);
+        byte[] bytes = Files.readAllBytes(manager);
+        Assert.assertEquals(Digests.sha256(manager), result.getSha256(manager));
+        return bytes;
+    }
+}
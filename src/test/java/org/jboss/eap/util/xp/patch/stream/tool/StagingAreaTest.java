@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StagingAreaTest {
+    private Path dir;
+    private Path core;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("staging-test");
+        core = TestFiles.createCore(dir.resolve("core.jar"), 100, true, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testAutoComparesUnzippedSize() throws Exception {
+        long unzipped = 0;
+        try (RawZipFile zip = RawZipFile.open(core)) {
+            for (RawZipFile.Entry entry : zip.entries()) {
+                unzipped += entry.size;
+            }
+        }
+        long threshold = (Files.size(core) + unzipped) / 2;
+        Assert.assertTrue(Files.size(core) <= threshold);
+        try (StagingArea area = StagingArea.select(StagingArea.AUTO, null, core, threshold)) {
+            Assert.assertFalse(area.isMemory());
+        }
+        try (StagingArea area = StagingArea.select(StagingArea.AUTO, null, core, unzipped)) {
+            Assert.assertTrue(area.isMemory());
+        }
+    }
+
+    @Test
+    public void testUnknownOrUnreadableCoreIsStagedOnDisk() throws Exception {
+        Path notAZip = Files.write(dir.resolve("broken.jar"), new byte[]{1, 2, 3});
+        try (StagingArea area = StagingArea.select(StagingArea.AUTO, null, notAZip, Long.MAX_VALUE - 1)) {
+            Assert.assertFalse(area.isMemory());
+        }
+        try (StagingArea area = StagingArea.select(StagingArea.AUTO, null, null, Long.MAX_VALUE - 1)) {
+            Assert.assertFalse(area.isMemory());
+        }
+        try (StagingArea area = StagingArea.select(StagingArea.MEMORY, null, null, 0)) {
+            Assert.assertTrue(area.isMemory());
+            Assert.assertEquals(StagingArea.MEMORY, area.toString());
+        }
+        try (StagingArea area = StagingArea.select(StagingArea.OFF_HEAP, null, null, 0)) {
+            Assert.assertTrue(area.isMemory());
+            Assert.assertEquals(StagingArea.OFF_HEAP, area.toString());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.jar.Manifest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that streamed managers have the entries of staged ones, with the unchanged entries of the core copied
+ * without being compressed again.
+ */
+public class StreamingBuildTest {
+    private Path dir;
+    private Path core;
+    private Path config;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("streaming-test");
+        core = TestFiles.createCore(dir.resolve("core.jar"), 100, true, 8);
+        config = TestFiles.createConfig(dir.resolve("standalone-test.xml"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFiles.delete(dir);
+    }
+
+    @Test
+    public void testSameEntriesAsStagedManager() throws Exception {
+        Map<String, byte[]> streamed = TestFiles.contents(build("streamed", true));
+        Map<String, byte[]> staged = TestFiles.contents(build("staged", false));
+        Assert.assertEquals(staged.keySet(), streamed.keySet());
+        for (Map.Entry<String, byte[]> entry : staged.entrySet()) {
+            if (!entry.getKey().equals(ManagerCreator.MANIFEST_NAME)) {
+                Assert.assertArrayEquals(entry.getKey(), entry.getValue(), streamed.get(entry.getKey()));
+            }
+        }
+        Assert.assertArrayEquals(Files.readAllBytes(config), streamed.get(ManagerCreator.ADDED_CONFIGS_DIR + config.getFileName()));
+        Manifest manifest = new Manifest(new ByteArrayInputStream(streamed.get(ManagerCreator.MANIFEST_NAME)));
+        Assert.assertEquals(ManagerCreator.DEFAULT_LAYERS, manifest.getMainAttributes().getValue(ManagerCreator.LAYERS_MANIFEST_KEY));
+    }
+
+    @Test
+    public void testCoreEntriesAreCopiedCompressed() throws Exception {
+        Path manager = build("streamed", true);
+        int copied = 0;
+        try (RawZipFile in = RawZipFile.open(core);
+             RawZipFile out = RawZipFile.open(manager)) {
+            for (RawZipFile.Entry entry : in.entries()) {
+                if (entry.isDirectory() || entry.getName().equals(ManagerCreator.MANIFEST_NAME)) {
+                    continue;
+                }
+                RawZipFile.Entry written = out.getEntry(entry.getName());
+                Assert.assertNotNull(entry.getName(), written);
+                Assert.assertEquals(entry.getName(), bytes(in.data(entry)), bytes(out.data(written)));
+                copied++;
+            }
+        }
+        Assert.assertEquals(103, copied);
+    }
+
+    private Path build(String name, boolean streaming) throws Exception {
+        return new ManagerBuilder()
+                .managerCore(core.toString())
+                .addedConfigs(config.toString())
+                .outputDir(dir.resolve(name))
+                .streaming(streaming)
+                .build()
+                .getManagers().get(0);
+    }
+
+    private static ByteBuffer bytes(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate()).flip();
+        return copy;
+    }
+}
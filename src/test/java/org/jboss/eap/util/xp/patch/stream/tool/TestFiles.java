@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Generates the manager cores and configs the tests build managers from.
+ */
+final class TestFiles {
+    static final String CONFIG = "<?xml version=\"1.0\"?>\n<server xmlns=\"urn:jboss:domain:10.0\">\n  <profile/>\n</server>\n";
+
+    private static final String[] WORDS = {
+            "org", "jboss", "eap", "microprofile", "config", "Ljava/lang/String;", "<init>", "()V", "Code", "invokevirtual"
+    };
+
+    private TestFiles() {
+    }
+
+    /**
+     * Creates a core with small text entries and, if asked for, with entries large enough to be compressed
+     * straight to the manager: a text one, a random one, and one whose sample compresses but the rest does not.
+     */
+    static Path createCore(Path jar, int smallEntries, boolean largeEntries, long seed) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        Random random = new Random(seed);
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file, manifest)) {
+            for (int i = 0; i < smallEntries; i++) {
+                write(out, "modules/system/layers/base/org/test/p" + (i % 10) + "/main/Entry" + i + ".class", text(random, 500 + i * 7));
+            }
+            if (largeEntries) {
+                write(out, "modules/system/layers/base/org/test/main/large.txt", text(random, 3 * 1024 * 1024));
+                write(out, "modules/system/layers/base/org/test/main/large.jar", bytes(random, 1536 * 1024));
+                byte[] mixed = new byte[1024 * 1024];
+                System.arraycopy(text(random, 96 * 1024), 0, mixed, 0, 96 * 1024);
+                System.arraycopy(bytes(random, mixed.length - 96 * 1024), 0, mixed, 96 * 1024, mixed.length - 96 * 1024);
+                write(out, "modules/system/layers/base/org/test/main/mixed.bin", mixed);
+            }
+        }
+        return jar;
+    }
+
+    static Path createConfig(Path file) throws IOException {
+        return Files.write(file, CONFIG.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] text(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 32);
+        while (sb.length() < size) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append((char) ('a' + random.nextInt(26)));
+        }
+        sb.setLength(size);
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static byte[] bytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void write(JarOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+
+    /**
+     * The uncompressed content of every entry of a zip file, by name.
+     */
+    static Map<String, byte[]> contents(Path zip) throws IOException {
+        Map<String, byte[]> contents = new TreeMap<>();
+        try (ZipFile file = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> entries = file.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream in = file.getInputStream(entry)) {
+                    contents.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        return contents;
+    }
+
+    static void delete(Path path) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2020, JBoss Inc., and individual contributors as indicated
+ * by the @authors tag.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.eap.util.xp.patch.stream.tool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a single file on a loopback port like a repository would, with an {@code ETag}, conditional requests and
+ * ranges, and records the requests it receives.
+ */
+final class TestHttpServer implements AutoCloseable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final HttpServer server;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile byte[] content;
+    private volatile int version;
+    private volatile LongPredicate failRange = start -> false;
+    private volatile boolean ignoreRanges;
+
+    TestHttpServer(byte[] content) throws IOException {
+        this.content = content;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/core.jar", this::handle);
+        server.start();
+    }
+
+    URL url() throws MalformedURLException {
+        return new URL("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/core.jar");
+    }
+
+    void setContent(byte[] content) {
+        this.content = content;
+        version++;
+    }
+
+    /**
+     * Makes the range requests starting at the matching offsets fail with a server error.
+     */
+    void failRanges(LongPredicate failRange) {
+        this.failRange = failRange;
+    }
+
+    /**
+     * Makes the server answer every request with the whole file, like a server without range support.
+     */
+    void ignoreRanges(boolean ignoreRanges) {
+        this.ignoreRanges = ignoreRanges;
+    }
+
+    /**
+     * The requests received so far, each as {@code <status> <range or '-'>}.
+     */
+    List<String> requests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    void clearRequests() {
+        requests.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = content;
+        String etag = "\"v" + version + "\"";
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (!ignoreRanges) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                reply(exchange, 304, range, -1);
+                return;
+            }
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (!ignoreRanges && matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(etag))) {
+                long start = Long.parseLong(matcher.group(1));
+                int end = (int) Math.min(Long.parseLong(matcher.group(2)), body.length - 1);
+                if (failRange.test(start)) {
+                    reply(exchange, 500, range, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+                reply(exchange, 206, range, end - start + 1);
+                out.write(body, (int) start, (int) (end - start + 1));
+                return;
+            }
+            reply(exchange, 200, range, body.length);
+            out.write(body);
+        }
+    }
+
+    private void reply(HttpExchange exchange, int status, String range, long length) throws IOException {
+        requests.add(status + " " + (range == null ? "-" : range));
+        exchange.sendResponseHeaders(status, length);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}